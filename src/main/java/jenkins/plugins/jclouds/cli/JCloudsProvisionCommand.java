@@ -75,8 +75,8 @@ public class JCloudsProvisionCommand extends CLICommand {
             c = tpl.getCloud();
         }
         c.checkPermission(Cloud.PROVISION);
-        if (c.getRunningNodesCount() < c.instanceCap) {
-            final JCloudsSlave s = c.doProvisionFromTemplate(tpl);
+        final JCloudsSlave s = c.provisionWithinCap(tpl);
+        if (null != s) {
             final NodeMetadata nmd = s.getNodeMetaData();
             final Set<String> a = new HashSet<>();
             a.addAll(nmd.getPrivateAddresses());
@@ -19,13 +19,22 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.internal.PlaceholderTemplate;
 
 class Replacements {
 
+    /**
+     * An element with a sha256 attribute. If its content gets replaced, the hash does not match anymore.
+     */
+    private static final Pattern HASHED_ELEMENT =
+            Pattern.compile("^(\\s*<\\w+)\\s+sha256=\"[0-9a-fA-F]+\">([^<\\n]*)(<.*)$", Pattern.MULTILINE);
+
     private final List<Replacement> replacements;
 
     Replacements() {
@@ -51,15 +60,24 @@ class Replacements {
     }
 
     String replace(String xml) {
+        Map<String, String> map = new LinkedHashMap<>();
         for (Replacement r : replacements) {
-            Pattern p = Pattern.compile(
-                    String.format("^(\\s*<\\w+)\s+sha256=\"[0-9a-fA-F]+\">%s(<.*)$", Pattern.quote(r.getFrom())),
-                    Pattern.MULTILINE);
-            xml = p.matcher(xml)
-                    .replaceAll(String.format("$1>%s$2", Matcher.quoteReplacement(r.getTo())))
-                    .replace(r.getFrom(), r.getTo());
+            if (null != r.getFrom() && !r.getFrom().isEmpty()) {
+                map.putIfAbsent(r.getFrom(), null == r.getTo() ? "" : r.getTo());
+            }
+        }
+        if (map.isEmpty()) {
+            return xml;
+        }
+        Matcher m = HASHED_ELEMENT.matcher(xml);
+        StringBuilder sb = new StringBuilder(xml.length());
+        while (m.find()) {
+            if (map.containsKey(m.group(2))) {
+                m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + ">" + m.group(2) + m.group(3)));
+            }
         }
-        return xml;
+        m.appendTail(sb);
+        return PlaceholderTemplate.compileTokens(sb.toString(), map.keySet()).render(map);
     }
 
     @XStreamAlias("replacement")
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * Terminates the nodes of several agents of a cloud with a single provider call per action.
+ * <p>
+ * Nodes of templates with stopOnTerminate are suspended by one {@link ComputeService#suspendNodesMatching}
+ * and all others are destroyed by one {@link ComputeService#destroyNodesMatching}. The outcome for
+ * every single node is derived from the nodes matched by the provider call.
+ * If the cloud uses asynchronous termination, the calls are handed over to
+ * {@link JCloudsCloud#terminateAsync} and every node is reported as requested.
+ */
+final class BatchTermination {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchTermination.class.getName());
+
+    enum Outcome {
+        DESTROYED,
+        SUSPENDED,
+        ALREADY_GONE,
+        /**
+         * The request has been sent without waiting for its completion.
+         */
+        REQUESTED,
+        FAILED;
+
+        /**
+         * @return {@code true} if the node does not occupy any resources anymore.
+         */
+        boolean isSuccess() {
+            return this != FAILED;
+        }
+    }
+
+    private final ComputeService compute;
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, Throwable> causes = new ConcurrentHashMap<>();
+
+    BatchTermination(final ComputeService compute) {
+        this.compute = compute;
+    }
+
+    /**
+     * Terminates the nodes of the given computers and reports the outcome back to every computer.
+     * @param cloud The cloud, all computers belong to.
+     * @param computers The computers to terminate.
+     */
+    static void terminate(final JCloudsCloud cloud, final List<JCloudsComputer> computers) {
+        final Map<String, JCloudsComputer> byId = new LinkedHashMap<>();
+        final Set<String> toSuspend = new HashSet<>();
+        final Set<String> toDestroy = new HashSet<>();
+        final Map<String, String> nonces = new LinkedHashMap<>();
+        for (JCloudsComputer c : computers) {
+            final JCloudsSlave node = c.getNode();
+            if (null == node) {
+                continue;
+            }
+            final String id = node.getNodeId();
+            byId.put(id, c);
+            node.markTerminating();
+            if (node.isTerminated()) {
+                continue;
+            }
+            if (node.stopOnTerminate && !node.isPreempted()) {
+                toSuspend.add(id);
+                nonces.put(id, node.getJnlpProvisioningNonce());
+            } else {
+                toDestroy.add(id);
+            }
+        }
+        if (cloud.getAsyncTermination()) {
+            cloud.terminateAsync(toSuspend, toDestroy, nonces);
+            for (Map.Entry<String, JCloudsComputer> e : byId.entrySet()) {
+                final boolean requested = toSuspend.contains(e.getKey()) || toDestroy.contains(e.getKey());
+                e.getValue().terminated(requested ? Outcome.REQUESTED : Outcome.ALREADY_GONE, null);
+            }
+            return;
+        }
+        final BatchTermination bt = new BatchTermination(cloud.getCompute());
+        try {
+            bt.run(toSuspend, toDestroy);
+        } finally {
+            if (!toSuspend.isEmpty() || !toDestroy.isEmpty()) {
+                cloud.invalidateNodeInventory();
+            }
+        }
+        for (Map.Entry<String, JCloudsComputer> e : byId.entrySet()) {
+            final String id = e.getKey();
+            final Outcome o = bt.getOutcome(id);
+            if (Outcome.SUSPENDED == o) {
+                cloud.getSuspendedTier().suspended(id, nonces.get(id));
+            }
+            e.getValue().terminated(o, bt.getCause(id));
+        }
+    }
+
+    /**
+     * Suspends and destroys nodes.
+     * If the provider does not support suspending, the nodes to be suspended are destroyed instead.
+     * @param toSuspend The ids of the nodes to suspend.
+     * @param toDestroy The ids of the nodes to destroy.
+     */
+    void run(final Set<String> toSuspend, final Set<String> toDestroy) {
+        final Set<String> destroy = new HashSet<>(toDestroy);
+        if (!toSuspend.isEmpty()) {
+            if (!suspend(toSuspend)) {
+                destroy.addAll(toSuspend);
+            }
+        }
+        if (!destroy.isEmpty()) {
+            destroy(destroy);
+        }
+    }
+
+    /**
+     * Gets the outcome for a single node.
+     * @param id The id of the node.
+     * @return The outcome. Nodes which were not part of a provider call are reported as already gone.
+     */
+    Outcome getOutcome(final String id) {
+        return outcomes.getOrDefault(id, Outcome.ALREADY_GONE);
+    }
+
+    @CheckForNull
+    Throwable getCause(final String id) {
+        return causes.get(id);
+    }
+
+    private boolean suspend(final Set<String> ids) {
+        final Set<String> matched = ConcurrentHashMap.newKeySet();
+        LOGGER.info("Suspending nodes: " + ids);
+        try {
+            compute.suspendNodesMatching(input -> {
+                if (null != input
+                        && ids.contains(input.getId())
+                        && NodeMetadata.Status.RUNNING.equals(input.getStatus())) {
+                    matched.add(input.getId());
+                    return true;
+                }
+                return false;
+            });
+        } catch (UnsupportedOperationException e) {
+            LOGGER.warning("Suspend unsupported, destroying nodes " + ids + " instead: " + e);
+            return false;
+        } catch (RuntimeException e) {
+            failed(ids, e);
+            return true;
+        }
+        for (String id : ids) {
+            outcomes.put(id, matched.contains(id) ? Outcome.SUSPENDED : Outcome.ALREADY_GONE);
+        }
+        return true;
+    }
+
+    private void destroy(final Set<String> ids) {
+        LOGGER.info("Destroying nodes: " + ids);
+        final Set<String> destroyed = new HashSet<>();
+        try {
+            final Set<? extends NodeMetadata> gone =
+                    compute.destroyNodesMatching(input -> null != input && ids.contains(input.getId()));
+            for (NodeMetadata nm : gone) {
+                destroyed.add(nm.getId());
+            }
+        } catch (RuntimeException e) {
+            failed(ids, e);
+            return;
+        }
+        for (String id : ids) {
+            outcomes.put(id, destroyed.contains(id) ? Outcome.DESTROYED : Outcome.ALREADY_GONE);
+        }
+    }
+
+    private void failed(final Set<String> ids, final RuntimeException e) {
+        LOGGER.warning("Failed to terminate nodes " + ids + ": " + e);
+        for (String id : ids) {
+            outcomes.put(id, Outcome.FAILED);
+            causes.put(id, e);
+        }
+    }
+}
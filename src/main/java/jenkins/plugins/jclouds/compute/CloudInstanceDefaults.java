@@ -21,4 +21,9 @@ package jenkins.plugins.jclouds.compute;
 final class CloudInstanceDefaults {
     public static final int DEFAULT_INSTANCE_RETENTION_TIME_IN_MINUTES = 30;
     public static final int DEFAULT_ERROR_RETENTION_TIME_IN_MINUTES = 0;
+    public static final int DEFAULT_NODE_INVENTORY_TTL_IN_SECONDS = 60;
+    public static final int DEFAULT_TEMPLATE_RESOLUTION_TTL_IN_MINUTES = 30;
+    public static final int DEFAULT_PROVIDER_CATALOG_TTL_IN_MINUTES = 10;
+    public static final int DEFAULT_PROVISIONING_CONCURRENCY = 20;
+    public static final int DEFAULT_FORECAST_LEAD_TIME_IN_MINUTES = 15;
 }
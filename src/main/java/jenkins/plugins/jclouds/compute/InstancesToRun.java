@@ -29,6 +29,7 @@ import jenkins.model.Jenkins;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.verb.POST;
 
@@ -41,6 +42,7 @@ public final class InstancesToRun extends AbstractDescribableImpl<InstancesToRun
     public final String manualTemplateName;
     public final int count;
     public final boolean shouldSuspend;
+    private int maxReplacements;
 
     @DataBoundConstructor
     public InstancesToRun(
@@ -52,6 +54,20 @@ public final class InstancesToRun extends AbstractDescribableImpl<InstancesToRun
         this.shouldSuspend = shouldSuspend;
     }
 
+    public int getMaxReplacements() {
+        return maxReplacements;
+    }
+
+    /**
+     * Sets the number of failed instances which may be replaced by new ones.
+     * If zero, all instances are terminated as soon as a single one fails.
+     * @param value The number of replacements.
+     */
+    @DataBoundSetter
+    public void setMaxReplacements(int value) {
+        maxReplacements = Math.max(0, value);
+    }
+
     public String getActualTemplateName() {
         if (isUsingManualTemplateName()) {
             return manualTemplateName;
@@ -123,6 +139,10 @@ public final class InstancesToRun extends AbstractDescribableImpl<InstancesToRun
             return FormValidation.validatePositiveInteger(value);
         }
 
+        public FormValidation doCheckMaxReplacements(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
         @Override
         public String getDisplayName() {
             return "";
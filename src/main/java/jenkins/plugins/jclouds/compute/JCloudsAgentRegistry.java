@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.Extension;
+import hudson.model.Node;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.model.NodeListener;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * Registry of all jclouds agents, indexed by node name, provider node id and hostname.
+ * <p>
+ * The registry is built lazily from the list of nodes and maintained by node lifecycle events afterwards.
+ * This allows the webhooks and the cleanup thread to find an agent without iterating over all computers
+ * and without fetching node metadata from the provider.
+ */
+@Extension
+public final class JCloudsAgentRegistry extends NodeListener {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsAgentRegistry.class.getName());
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, JCloudsSlave> BY_NAME = new ConcurrentHashMap<>();
+    private static final Map<String, JCloudsSlave> BY_NODE_ID = new ConcurrentHashMap<>();
+    private static final Map<String, JCloudsSlave> BY_HOSTNAME = new ConcurrentHashMap<>();
+    private static volatile boolean indexed = false;
+
+    @Override
+    protected void onCreated(Node node) {
+        if (node instanceof JCloudsSlave) {
+            synchronized (LOCK) {
+                add((JCloudsSlave) node);
+            }
+        }
+    }
+
+    @Override
+    protected void onUpdated(Node oldOne, Node newOne) {
+        synchronized (LOCK) {
+            if (oldOne instanceof JCloudsSlave) {
+                remove((JCloudsSlave) oldOne);
+            }
+            if (newOne instanceof JCloudsSlave) {
+                add((JCloudsSlave) newOne);
+            }
+        }
+    }
+
+    @Override
+    protected void onDeleted(Node node) {
+        if (node instanceof JCloudsSlave) {
+            synchronized (LOCK) {
+                remove((JCloudsSlave) node);
+            }
+        }
+    }
+
+    /**
+     * Looks up an agent by its node name.
+     * @param name The name of the node.
+     * @return The agent or {@code null} if no such agent exists.
+     */
+    public static JCloudsSlave getByName(final String name) {
+        if (null == name) {
+            return null;
+        }
+        ensureIndexed();
+        final JCloudsSlave ret = BY_NAME.get(name);
+        if (null != ret && isCurrent(ret)) {
+            return ret;
+        }
+        // Nodes might have been replaced without notifying the listeners (e.g. on reload).
+        final Node n = Jenkins.get().getNode(name);
+        if (n instanceof JCloudsSlave) {
+            synchronized (LOCK) {
+                if (null != ret) {
+                    remove(ret);
+                }
+                add((JCloudsSlave) n);
+            }
+            return (JCloudsSlave) n;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up an agent by the id of its provider node.
+     * @param nodeId The provider specific id of the node.
+     * @return The agent or {@code null} if no such agent exists.
+     */
+    public static JCloudsSlave getByNodeId(final String nodeId) {
+        if (null == nodeId) {
+            return null;
+        }
+        ensureIndexed();
+        final JCloudsSlave ret = BY_NODE_ID.get(nodeId);
+        if (null != ret && isCurrent(ret)) {
+            return ret;
+        }
+        // Nodes might have been replaced without notifying the listeners (e.g. on reload).
+        reindex();
+        final JCloudsSlave fresh = BY_NODE_ID.get(nodeId);
+        return null != fresh && isCurrent(fresh) ? fresh : null;
+    }
+
+    /**
+     * Looks up an agent by its hostname as reported by the provider.
+     * Agents created by an older version of this plugin don't know their hostname,
+     * so if the lookup fails, those agents are checked by fetching their metadata.
+     * @param hostName The hostname of the node.
+     * @return The agent or {@code null} if no such agent exists.
+     */
+    public static JCloudsSlave getByHostName(final String hostName) {
+        if (null == hostName) {
+            return null;
+        }
+        ensureIndexed();
+        final JCloudsSlave ret = BY_HOSTNAME.get(hostName);
+        if (null != ret && isCurrent(ret)) {
+            return ret;
+        }
+        // Nodes might have been replaced without notifying the listeners (e.g. on reload).
+        reindex();
+        final JCloudsSlave fresh = BY_HOSTNAME.get(hostName);
+        if (null != fresh && isCurrent(fresh)) {
+            return fresh;
+        }
+        for (final JCloudsSlave slave : BY_NAME.values()) {
+            if (null == slave.getHostName()) {
+                try {
+                    final NodeMetadata nmd = slave.getNodeMetaData();
+                    if (null != nmd && hostName.equals(nmd.getHostname())) {
+                        slave.setHostName(hostName);
+                        synchronized (LOCK) {
+                            BY_HOSTNAME.put(hostName, slave);
+                        }
+                        return slave;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.fine(String.format(
+                            "Unable to fetch metadata of %s: %s", slave.getNodeName(), e.getMessage()));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves all registered agents.
+     * Since nodes might have been replaced without notifying the listeners (e.g. on reload),
+     * the agents are taken from the current list of nodes and the indexes are rebuilt if they are stale.
+     * @return An unmodifiable snapshot of all agents.
+     */
+    public static Collection<JCloudsSlave> getAll() {
+        final List<JCloudsSlave> ret = new ArrayList<>();
+        boolean stale = !indexed;
+        for (final Node n : Jenkins.get().getNodes()) {
+            if (n instanceof JCloudsSlave) {
+                ret.add((JCloudsSlave) n);
+                stale |= BY_NAME.get(n.getNodeName()) != n;
+            }
+        }
+        if (stale || BY_NAME.size() != ret.size()) {
+            rebuild(ret);
+        }
+        return Collections.unmodifiableList(ret);
+    }
+
+    private static boolean isCurrent(final JCloudsSlave slave) {
+        return Jenkins.get().getNode(slave.getNodeName()) == slave;
+    }
+
+    private static void ensureIndexed() {
+        if (!indexed) {
+            reindex();
+        }
+    }
+
+    private static void reindex() {
+        final List<JCloudsSlave> agents = new ArrayList<>();
+        for (final Node n : Jenkins.get().getNodes()) {
+            if (n instanceof JCloudsSlave) {
+                agents.add((JCloudsSlave) n);
+            }
+        }
+        rebuild(agents);
+    }
+
+    private static void rebuild(final Collection<JCloudsSlave> agents) {
+        synchronized (LOCK) {
+            BY_NAME.clear();
+            BY_NODE_ID.clear();
+            BY_HOSTNAME.clear();
+            for (final JCloudsSlave slave : agents) {
+                add(slave);
+            }
+            indexed = true;
+            LOGGER.fine(String.format("Indexed %d jclouds agents", BY_NAME.size()));
+        }
+    }
+
+    /**
+     * Adds an agent to all indexes. Must be called while holding {@link #LOCK}.
+     */
+    private static void add(final JCloudsSlave slave) {
+        BY_NAME.put(slave.getNodeName(), slave);
+        final String nodeId = slave.getNodeId();
+        if (null != nodeId) {
+            BY_NODE_ID.put(nodeId, slave);
+        }
+        final String hostName = slave.getHostName();
+        if (null != hostName) {
+            BY_HOSTNAME.put(hostName, slave);
+        }
+    }
+
+    /**
+     * Removes an agent from all indexes. Must be called while holding {@link #LOCK}.
+     */
+    private static void remove(final JCloudsSlave slave) {
+        BY_NAME.remove(slave.getNodeName(), slave);
+        final String nodeId = slave.getNodeId();
+        if (null != nodeId) {
+            BY_NODE_ID.remove(nodeId, slave);
+        }
+        final String hostName = slave.getHostName();
+        if (null != hostName) {
+            BY_HOSTNAME.remove(hostName, slave);
+        }
+    }
+}
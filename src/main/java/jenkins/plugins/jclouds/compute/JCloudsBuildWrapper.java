@@ -20,13 +20,11 @@ import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.MoreExecutors;
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractProject;
-import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.slaves.Cloud;
@@ -40,6 +38,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
@@ -59,6 +58,8 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOGGER = Logger.getLogger(JCloudsBuildWrapper.class.getName());
+
     private static final String DEFAULT_ENVVARNAME = "JCLOUDS_IPS";
     private static final String DEFAULT_INDEXNAME = "JCLOUDS_SUPPLEMENTAL_INDEX";
 
@@ -168,10 +169,7 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
                         String.format("The cloud named %s does not provide a template named %s.", cn, tpln));
             }
         }
-        final String failedCloud = validateInstanceCaps();
-        if (null != failedCloud) {
-            throw new AbortException(String.format("Instance cap for cloud %s reached.", failedCloud));
-        }
+        final Map<String, Integer> reservations = reserveInstances();
 
         Iterable<NodePlan> nodePlans = Iterables.transform(instancesToRun, new Function<InstancesToRun, NodePlan>() {
 
@@ -180,7 +178,13 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
                 String templateName = initialEnvironment.expand(instance.getActualTemplateName());
                 Supplier<JCloudsNodeMetadata> nodeSupplier =
                         JCloudsCloud.getByName(cloudName).getTemplate(templateName);
-                return new NodePlan(cloudName, templateName, instance.count, instance.shouldSuspend, nodeSupplier);
+                return new NodePlan(
+                        cloudName,
+                        templateName,
+                        instance.count,
+                        instance.shouldSuspend,
+                        nodeSupplier,
+                        instance.getMaxReplacements());
             }
         });
 
@@ -188,10 +192,18 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
         final TerminateNodes terminateNodes = new TerminateNodes();
 
         ProvisionPlannedInstancesAndDestroyAllOnError provisioner = new ProvisionPlannedInstancesAndDestroyAllOnError(
-                MoreExecutors.listeningDecorator(Computer.threadPoolForRemoting), logger, terminateNodes);
-
-        // Start supplemental nodes. This blocks until all nodes are started or an error occurs.
-        final Iterable<RunningNode> runningNodes = provisioner.apply(nodePlans);
+                cloudName -> JCloudsCloud.getByName(cloudName).getProvisioningExecutor().getService(),
+                cloudName -> JCloudsCloud.getByName(cloudName).getCircuitBreaker(),
+                logger,
+                terminateNodes);
+
+        // Start supplemental nodes. This blocks until all nodes are started or failed, or the build is aborted.
+        Iterable<RunningNode> runningNodes = null;
+        try {
+            runningNodes = provisioner.provision(nodePlans);
+        } finally {
+            settleReservations(reservations, runningNodes);
+        }
         if (Iterables.size(runningNodes) > 0) {
             // register nodes for termination if build gets aborted
             JCloudsCloud.registerSupplementalCleanup(build, runningNodes);
@@ -207,28 +219,30 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
             JCloudsCloud.publishMetadata(runningNodes, metaData, getIndexNameWithDefault());
             final Set<String> cloudsToPossiblyAbortWaiting = new HashSet<>();
             // Optionally, wait for phone-home, blocks until all nodes have reported back availability or timeout.
-            try {
-                final ConcurrentMap<JCloudsCloud, List<PhoneHomeMonitor>> waitParams =
-                        waitPhoneHomeSetup(runningNodes, listener.getLogger());
-                if (!waitParams.isEmpty()) {
+            final List<CompletableFuture<Void>> waits = new ArrayList<>();
+            final ConcurrentMap<JCloudsCloud, List<PhoneHomeMonitor>> waitParams =
+                    waitPhoneHomeSetup(runningNodes, listener.getLogger(), waits);
+            if (!waitParams.isEmpty()) {
+                for (JCloudsCloud c : waitParams.keySet()) {
+                    cloudsToPossiblyAbortWaiting.add(c.getName());
+                }
+                try {
+                    PhoneHomeMonitor.await(CompletableFuture.allOf(waits.toArray(new CompletableFuture<?>[0])));
+                } catch (InterruptedException x) {
+                    // abort all phone-home monitors that are still waiting
+                    for (List<PhoneHomeMonitor> phms : waitParams.values()) {
+                        for (PhoneHomeMonitor phm : phms) {
+                            phm.ring();
+                        }
+                    }
+                    throw new AbortException("Wait for phone-home aborted");
+                } finally {
                     for (Map.Entry<JCloudsCloud, List<PhoneHomeMonitor>> entry : waitParams.entrySet()) {
-                        cloudsToPossiblyAbortWaiting.add(entry.getKey().getName());
-                        try {
-                            for (PhoneHomeMonitor phm : entry.getValue()) {
-                                phm.join();
-                                entry.getKey().unregisterPhoneHomeMonitor(phm);
-                            }
-                        } catch (InterruptedException x) {
-                            // abort all phone-home monitors that are still waiting
-                            for (PhoneHomeMonitor phm : entry.getValue()) {
-                                phm.ring();
-                            }
-                            throw x;
+                        for (PhoneHomeMonitor phm : entry.getValue()) {
+                            entry.getKey().unregisterPhoneHomeMonitor(phm);
                         }
                     }
                 }
-            } catch (InterruptedException x) {
-                throw new AbortException("Wait for phone-home aborted");
             }
 
             List<String> ips = getInstanceIPs(runningNodes, listener.getLogger());
@@ -240,17 +254,13 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
         }
     }
 
-    private boolean isBeyondInstanceCap(final String cloudName, int numOfNewInstances) {
-        final Jenkins.CloudList cl = Jenkins.get().clouds;
-        final Cloud c = cl.getByName(cloudName);
-        if (null != c && c instanceof JCloudsCloud) {
-            JCloudsCloud jc = (JCloudsCloud) c;
-            return jc.getRunningNodesCount() + numOfNewInstances >= jc.instanceCap;
-        }
-        return false;
-    }
-
-    private String validateInstanceCaps() throws IOException {
+    /**
+     * Reserves the instances to run in the reservation ledgers of their clouds.
+     * Either all instances are reserved or none.
+     * @return The number of reserved instances per cloud.
+     * @throws AbortException if the instance cap of a cloud would be exceeded.
+     */
+    private Map<String, Integer> reserveInstances() throws AbortException {
         Map<String, Integer> startPerCloud = new HashMap<>();
         for (final InstancesToRun inst : instancesToRun) {
             Integer old = startPerCloud.put(inst.cloudName, Integer.valueOf(inst.count));
@@ -258,17 +268,44 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
                 startPerCloud.put(inst.cloudName, old + Integer.valueOf(inst.count));
             }
         }
+        final Map<String, Integer> ret = new HashMap<>();
         for (final Map.Entry<String, Integer> entry : startPerCloud.entrySet()) {
             final String cname = entry.getKey();
-            if (isBeyondInstanceCap(cname, entry.getValue().intValue())) {
-                return cname;
+            if (!JCloudsCloud.getByName(cname).reserveInstances(entry.getValue().intValue())) {
+                settleReservations(ret, null);
+                throw new AbortException(String.format("Instance cap for cloud %s reached.", cname));
+            }
+            ret.put(cname, entry.getValue());
+        }
+        return ret;
+    }
+
+    /**
+     * Commits the reservations of started nodes and releases the remaining ones.
+     * @param reservations The number of reserved instances per cloud.
+     * @param runningNodes The nodes which have been started or {@code null} if none.
+     */
+    private static void settleReservations(
+            final Map<String, Integer> reservations, final Iterable<RunningNode> runningNodes) {
+        final Map<String, Integer> started = new HashMap<>();
+        if (null != runningNodes) {
+            for (RunningNode rn : runningNodes) {
+                started.merge(rn.getCloudName(), 1, Integer::sum);
+            }
+        }
+        for (final Map.Entry<String, Integer> entry : reservations.entrySet()) {
+            final JCloudsCloud c = JCloudsCloud.getByName(entry.getKey());
+            if (null != c) {
+                final int reserved = entry.getValue().intValue();
+                final int n = Math.min(reserved, started.getOrDefault(entry.getKey(), 0));
+                c.getReservationLedger().commit(n);
+                c.getReservationLedger().release(reserved - n);
             }
         }
-        return null;
     }
 
     private ConcurrentMap<JCloudsCloud, List<PhoneHomeMonitor>> waitPhoneHomeSetup(
-            final Iterable<RunningNode> runningNodes, PrintStream logger) {
+            final Iterable<RunningNode> runningNodes, PrintStream logger, List<CompletableFuture<Void>> waits) {
         ConcurrentMap<JCloudsCloud, List<PhoneHomeMonitor>> ret = new ConcurrentHashMap<>();
         ConcurrentMap<JCloudsCloud, ConcurrentMap<Integer, List<String>>> cloudWaitMap = new ConcurrentHashMap<>();
         for (RunningNode rn : runningNodes) {
@@ -290,7 +327,11 @@ public class JCloudsBuildWrapper extends SimpleBuildWrapper implements Serializa
             for (Map.Entry<Integer, List<String>> entry : cwMap.getValue().entrySet()) {
                 final PhoneHomeMonitor phm =
                         new PhoneHomeMonitor(true, entry.getKey().intValue());
-                phm.waitForPhoneHomeMultiple(entry.getValue(), logger);
+                // A timeout does not fail the build, so we just log it.
+                waits.add(phm.whenPhonedHomeMultiple(entry.getValue(), logger).exceptionally(x -> {
+                    LOGGER.info(x.toString());
+                    return null;
+                }));
                 cwMap.getKey().registerPhoneHomeMonitor(phm);
                 List<PhoneHomeMonitor> phmList = ret.getOrDefault(cwMap.getKey(), new ArrayList<>());
                 phmList.add(phm);
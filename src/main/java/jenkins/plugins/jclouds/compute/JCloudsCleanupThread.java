@@ -24,7 +24,12 @@ import hudson.Extension;
 import hudson.model.AsyncPeriodicWork;
 import hudson.model.Computer;
 import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
@@ -60,17 +65,20 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
     protected void execute(TaskListener listener) {
         final ImmutableList.Builder<ListenableFuture<?>> deletedNodesBuilder =
                 ImmutableList.<ListenableFuture<?>>builder();
-        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Computer.threadPoolForRemoting);
-        final ImmutableList.Builder<JCloudsComputer> computersToDeleteBuilder =
-                ImmutableList.<JCloudsComputer>builder();
+        final ListeningExecutorService fallback = MoreExecutors.listeningDecorator(Computer.threadPoolForRemoting);
+        final Map<JCloudsCloud, List<JCloudsComputer>> batches = new LinkedHashMap<>();
 
-        for (final Computer c : Jenkins.get().getComputers()) {
-            if (JCloudsComputer.class.isInstance(c)) {
-                final JCloudsComputer comp = (JCloudsComputer) c;
-                final JCloudsSlave node = comp.getNode();
-                if (null != node && node.isPendingDelete()) {
-                    computersToDeleteBuilder.add(comp);
-                    ListenableFuture<?> f = executor.submit(new Runnable() {
+        for (final JCloudsSlave node : JCloudsAgentRegistry.getAll()) {
+            if (node.isPendingDelete()) {
+                final Computer c = node.toComputer();
+                if (c instanceof JCloudsComputer) {
+                    final JCloudsComputer comp = (JCloudsComputer) c;
+                    final Cloud cloud = Jenkins.get().clouds.getByName(node.getCloudName());
+                    if (cloud instanceof JCloudsCloud) {
+                        batches.computeIfAbsent((JCloudsCloud) cloud, k -> new ArrayList<>()).add(comp);
+                        continue;
+                    }
+                    ListenableFuture<?> f = fallback.submit(new Runnable() {
                         public void run() {
                             LOGGER.log(Level.INFO, "Deleting pending node " + comp.getName());
                             try {
@@ -91,17 +99,27 @@ public final class JCloudsCleanupThread extends AsyncPeriodicWork {
             }
         }
 
+        for (final Map.Entry<JCloudsCloud, List<JCloudsComputer>> e : batches.entrySet()) {
+            final JCloudsCloud cloud = e.getKey();
+            final List<JCloudsComputer> computers = e.getValue();
+            LOGGER.info(String.format("Deleting %d pending nodes of cloud %s", computers.size(), cloud.name));
+            final ListeningExecutorService executor = cloud.getProvisioningExecutor().getService();
+            deletedNodesBuilder.add(executor.submit(() -> BatchTermination.terminate(cloud, computers)));
+        }
+
         Futures.getUnchecked(Futures.successfulAsList(deletedNodesBuilder.build()));
 
-        for (JCloudsComputer c : computersToDeleteBuilder.build()) {
-            try {
-                c.deleteSlave();
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Failed to disconnect and delete " + c.getName() + ": " + e.getMessage());
-            } catch (InterruptedException e) {
-                LOGGER.log(Level.WARNING, "Failed to disconnect and delete " + c.getName() + ": " + e.getMessage());
+        JCloudsCloud.cleanupSupplementalNodes();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof JCloudsCloud) {
+                try {
+                    ((JCloudsCloud) cloud).getSuspendedTier().expire();
+                } catch (RuntimeException e) {
+                    LOGGER.log(
+                            Level.WARNING,
+                            "Failed to clean up suspended nodes of " + cloud.name + ": " + e.getMessage());
+                }
             }
         }
-        JCloudsCloud.cleanupSupplementalNodes();
     }
 }
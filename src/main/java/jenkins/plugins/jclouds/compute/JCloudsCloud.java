@@ -29,8 +29,16 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Module;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.Functions;
@@ -67,23 +75,38 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import jenkins.model.Jenkins;
-import jenkins.plugins.jclouds.cli.CliMessages;
+import jenkins.plugins.jclouds.compute.ProvisioningProgress.Step;
+import jenkins.plugins.jclouds.compute.internal.ApiRateLimiter;
+import jenkins.plugins.jclouds.compute.internal.CircuitBreaker;
+import jenkins.plugins.jclouds.compute.internal.JCloudsNodeMetadata;
+import jenkins.plugins.jclouds.compute.internal.NodeBatch;
+import jenkins.plugins.jclouds.compute.internal.NodeInventory;
+import jenkins.plugins.jclouds.compute.internal.PendingTerminations;
+import jenkins.plugins.jclouds.compute.internal.ProviderCatalog;
+import jenkins.plugins.jclouds.compute.internal.ProvisioningExecutor;
+import jenkins.plugins.jclouds.compute.internal.ReservationLedger;
+import jenkins.plugins.jclouds.compute.internal.RetryPolicy;
 import jenkins.plugins.jclouds.compute.internal.RunningNode;
+import jenkins.plugins.jclouds.compute.internal.SpilloverStats;
+import jenkins.plugins.jclouds.compute.internal.TemplatePool;
 import jenkins.plugins.jclouds.internal.CredentialsHelper;
 import jenkins.plugins.jclouds.internal.LocationHelper;
 import jenkins.plugins.jclouds.internal.SSHPublicKeyExtractor;
@@ -95,11 +118,12 @@ import org.jclouds.apis.Apis;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.config.ComputeServiceProperties;
-import org.jclouds.compute.domain.ComputeMetadata;
 import org.jclouds.compute.domain.Hardware;
 import org.jclouds.compute.domain.Image;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.options.TemplateOptions;
+import org.jclouds.digitalocean2.DigitalOcean2Api;
+import org.jclouds.digitalocean2.domain.Key;
 import org.jclouds.domain.Location;
 import org.jclouds.location.reference.LocationConstants;
 import org.jclouds.logging.jdk.config.JDKLoggingModule;
@@ -112,6 +136,7 @@ import org.kohsuke.accmod.restrictions.DoNotUse;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest2;
@@ -127,6 +152,39 @@ public class JCloudsCloud extends Cloud {
 
     static final Logger LOGGER = Logger.getLogger(JCloudsCloud.class.getName());
 
+    /**
+     * The reservation ledger is reconciled in the background only if it has been used within this period.
+     */
+    private static final long LEDGER_IDLE_PERIOD = 10 * 60 * 1000L;
+
+    /**
+     * Templates of a pool are cooled down after this many consecutive provisioning failures.
+     */
+    private static final int POOL_FAILURE_THRESHOLD = 3;
+
+    private static final long POOL_COOLDOWN = 5 * 60 * 1000L;
+    private static final long POOL_MAX_COOLDOWN = 60 * 60 * 1000L;
+
+    /**
+     * Provisioning is paused after this many consecutive provider errors which are not capacity related.
+     */
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+
+    private static final long BREAKER_OPEN_PERIOD = 60 * 1000L;
+    private static final long BREAKER_MAX_OPEN_PERIOD = 15 * 60 * 1000L;
+
+    /**
+     * Asynchronous termination requests are sent at most this many times before a node is reported as leaked.
+     */
+    private static final int TERMINATION_MAX_ATTEMPTS = 5;
+
+    private static final long TERMINATION_CONFIRM_TIMEOUT = 2 * 60 * 1000L;
+
+    /**
+     * The number of termination requests, which are sent concurrently. Every request covers a batch of nodes.
+     */
+    private static final int TERMINATION_CONCURRENCY = 2;
+
     /** @deprecated Not used anymore, but retained for backward compatibility during deserialization. */
     @Deprecated
     private final transient String identity;
@@ -143,8 +201,6 @@ public class JCloudsCloud extends Cloud {
     @Deprecated
     private final transient String publicKey; // NOPMD - unused private member
 
-    private transient AtomicInteger pendingNodes;
-
     public final String endPointUrl;
     public final String profile;
     private final int retentionTime;
@@ -160,7 +216,29 @@ public class JCloudsCloud extends Cloud {
     private String cloudCredentialsId;
     private String groupPrefix;
     private final boolean trustAll;
+    private boolean batchProvisioning;
+    private boolean asyncTermination;
+    private int nodeInventoryTtl;
+    private int suspendedRetentionTime;
+    private int provisioningConcurrency;
+    private boolean provisioningVirtualThreads;
+    private int apiReadRate;
+    private int apiMutateRate;
+    private String spilloverCloud;
     private transient List<PhoneHomeMonitor> phms;
+    private transient volatile NodeInventory nodeInventory;
+    private transient volatile WarmPool warmPool;
+    private transient volatile SuspendedTier suspendedTier;
+    private transient volatile ProviderCatalog providerCatalog;
+    private transient volatile TemplateIndex templateIndex;
+    private transient volatile ProvisioningExecutor provisioningExecutor;
+    private transient volatile ProvisioningExecutor terminationExecutor;
+    private transient volatile ApiRateLimiter apiRateLimiter;
+    private transient volatile ReservationLedger reservationLedger;
+    private transient volatile TemplatePool<JCloudsSlaveTemplate> templatePool;
+    private transient volatile SpilloverStats spilloverStats;
+    private transient volatile CircuitBreaker circuitBreaker;
+    private transient volatile PendingTerminations pendingTerminations;
 
     static List<String> getCloudNames() {
         List<String> cloudNames = new ArrayList<String>();
@@ -188,6 +266,188 @@ public class JCloudsCloud extends Cloud {
         return trustAll;
     }
 
+    public boolean getBatchProvisioning() {
+        return batchProvisioning;
+    }
+
+    @DataBoundSetter
+    public void setBatchProvisioning(final boolean value) {
+        batchProvisioning = value;
+    }
+
+    public boolean getAsyncTermination() {
+        return asyncTermination;
+    }
+
+    @DataBoundSetter
+    public void setAsyncTermination(final boolean value) {
+        asyncTermination = value;
+    }
+
+    /**
+     * Get the time in minutes after which suspended nodes are destroyed.
+     * @return The suspended retention time in minutes. Zero means, suspended nodes are kept forever.
+     */
+    public int getSuspendedRetentionTime() {
+        return suspendedRetentionTime;
+    }
+
+    @DataBoundSetter
+    public void setSuspendedRetentionTime(final int value) {
+        suspendedRetentionTime = Math.max(0, value);
+    }
+
+    /**
+     * Get the time to live of the node inventory in seconds or default value from CloudInstanceDefaults if it is zero.
+     * @return The time to live in seconds.
+     * @see CloudInstanceDefaults#DEFAULT_NODE_INVENTORY_TTL_IN_SECONDS
+     */
+    public int getNodeInventoryTtl() {
+        return nodeInventoryTtl == 0 ? CloudInstanceDefaults.DEFAULT_NODE_INVENTORY_TTL_IN_SECONDS : nodeInventoryTtl;
+    }
+
+    @DataBoundSetter
+    public void setNodeInventoryTtl(final int value) {
+        nodeInventoryTtl = value;
+        NodeInventory inv = nodeInventory;
+        if (null != inv) {
+            inv.setTtl(getNodeInventoryTtl() * 1000L);
+        }
+    }
+
+    /**
+     * Get the maximum number of concurrent provisioning tasks or default value if it is zero.
+     * @return The maximum number of concurrent provisioning tasks.
+     * @see CloudInstanceDefaults#DEFAULT_PROVISIONING_CONCURRENCY
+     */
+    public int getProvisioningConcurrency() {
+        return provisioningConcurrency <= 0
+                ? CloudInstanceDefaults.DEFAULT_PROVISIONING_CONCURRENCY
+                : provisioningConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setProvisioningConcurrency(final int value) {
+        provisioningConcurrency = Math.max(0, value);
+        ProvisioningExecutor pe = provisioningExecutor;
+        if (null != pe) {
+            pe.setConcurrency(getProvisioningConcurrency());
+        }
+    }
+
+    public boolean getProvisioningVirtualThreads() {
+        return provisioningVirtualThreads;
+    }
+
+    @DataBoundSetter
+    public void setProvisioningVirtualThreads(final boolean value) {
+        provisioningVirtualThreads = value;
+    }
+
+    /**
+     * Get the maximum number of read calls to the provider per second.
+     * @return The maximum number of read calls per second. Zero (the default) or a negative value means unlimited.
+     */
+    public int getApiReadRate() {
+        return apiReadRate;
+    }
+
+    @DataBoundSetter
+    public void setApiReadRate(final int value) {
+        apiReadRate = value;
+        updateApiRateLimiter();
+    }
+
+    /**
+     * Get the maximum number of mutating calls to the provider per second.
+     * @return The maximum number of mutating calls per second. Zero (the default) or a negative value means unlimited.
+     */
+    public int getApiMutateRate() {
+        return apiMutateRate;
+    }
+
+    @DataBoundSetter
+    public void setApiMutateRate(final int value) {
+        apiMutateRate = value;
+        updateApiRateLimiter();
+    }
+
+    /**
+     * Get the name of the cloud which provisions the workload exceeding the instance cap of this cloud.
+     * @return The name of the spillover cloud or {@code null} if there is none.
+     */
+    public String getSpilloverCloud() {
+        return spilloverCloud;
+    }
+
+    @DataBoundSetter
+    public void setSpilloverCloud(final String value) {
+        spilloverCloud = Util.fixEmptyAndTrim(value);
+    }
+
+    /**
+     * Resolves the chain of spillover clouds in priority order. Clouds which do not exist anymore
+     * or appear a second time (a misconfigured cycle) end the chain.
+     * @return The spillover clouds, not including this cloud.
+     */
+    List<JCloudsCloud> getSpilloverChain() {
+        final List<JCloudsCloud> ret = new ArrayList<>();
+        final Set<String> visited = new HashSet<>();
+        visited.add(name);
+        for (String next = spilloverCloud; null != next && visited.add(next); ) {
+            final Cloud c = Jenkins.get().clouds.getByName(next);
+            if (!(c instanceof JCloudsCloud)) {
+                break;
+            }
+            ret.add((JCloudsCloud) c);
+            next = ((JCloudsCloud) c).spilloverCloud;
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the counters of workload routed to or from other clouds of the spillover chain.
+     * @return The spillover statistics.
+     */
+    public SpilloverStats getSpilloverStats() {
+        SpilloverStats ret = spilloverStats;
+        if (null == ret) {
+            synchronized (this) {
+                ret = spilloverStats;
+                if (null == ret) {
+                    ret = new SpilloverStats();
+                    spilloverStats = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void updateApiRateLimiter() {
+        ApiRateLimiter rl = apiRateLimiter;
+        if (null != rl) {
+            rl.setRates(getApiReadRate(), getApiMutateRate());
+        }
+    }
+
+    /**
+     * Retrieves the rate limiter, which is applied to all calls via {@link #getCompute()} and {@link #newApi(Class)}.
+     * @return The rate limiter of this cloud.
+     */
+    public ApiRateLimiter getApiRateLimiter() {
+        ApiRateLimiter ret = apiRateLimiter;
+        if (null == ret) {
+            synchronized (this) {
+                ret = apiRateLimiter;
+                if (null == ret) {
+                    ret = new ApiRateLimiter(getApiReadRate(), getApiMutateRate());
+                    apiRateLimiter = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
     public void setCloudCredentialsId(final String value) {
         cloudCredentialsId = value;
     }
@@ -297,9 +557,8 @@ public class JCloudsCloud extends Cloud {
         // Remove empty text/whitespace from the fields.
         locationId = Util.fixEmptyAndTrim(locationId);
         FormValidation result = FormValidation.error("Invalid Location Id, please check the value and try again.");
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            Set<? extends Location> locations = ctx.getComputeService().listAssignableLocations();
-            for (Location location : locations) {
+        try {
+            for (Location location : getProviderCatalog().get().getLocations()) {
                 if (!location.getId().equals(locationId)) {
                     if (location.getId().contains(locationId)) {
                         return FormValidation.warning("Sorry cannot find the location id, " + "Did you mean: "
@@ -328,18 +587,15 @@ public class JCloudsCloud extends Cloud {
         }
         // Remove empty text/whitespace from the fields.
         imageId = Util.fixEmptyAndTrim(imageId);
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            final Set<? extends Image> images = ctx.getComputeService().listImages();
-            if (images != null) {
-                for (final Image image : images) {
-                    if (!image.getId().equals(imageId)) {
-                        if (image.getId().contains(imageId)) {
-                            return FormValidation.warning("Sorry cannot find the image id, " + "Did you mean: "
-                                    + image.getId() + "?\n" + image);
-                        }
-                    } else {
-                        return FormValidation.ok("Image Id is valid.");
-                    }
+        try {
+            final ProviderCatalog.Snapshot catalog = getProviderCatalog().get();
+            if (null != catalog.getImage(imageId)) {
+                return FormValidation.ok("Image Id is valid.");
+            }
+            for (final Image image : catalog.getImages()) {
+                if (image.getId().contains(imageId)) {
+                    return FormValidation.warning(
+                            "Sorry cannot find the image id, " + "Did you mean: " + image.getId() + "?\n" + image);
                 }
             }
         } catch (Exception ex) {
@@ -362,9 +618,8 @@ public class JCloudsCloud extends Cloud {
             return FormValidation.error("Hardware Id should not be empty");
         }
         FormValidation result = FormValidation.error("Invalid Hardware Id, please check the value and try again.");
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            Set<? extends Hardware> hardwareProfiles = ctx.getComputeService().listHardwareProfiles();
-            for (Hardware hardware : hardwareProfiles) {
+        try {
+            for (Hardware hardware : getProviderCatalog().get().getHardware()) {
                 if (!hardware.getId().equals(hardwareId)) {
                     if (hardware.getId().contains(hardwareId)) {
                         return FormValidation.warning("Sorry cannot find the hardware id, " + "Did you mean: "
@@ -393,48 +648,38 @@ public class JCloudsCloud extends Cloud {
         if (isNullOrEmpty(imageNameRegex)) {
             return FormValidation.error("Image Name Regex should not be empty.");
         }
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            int matchcount = 0;
-            Pattern p = Pattern.compile(imageNameRegex);
-            try {
-                final Set<? extends Image> images = ctx.getComputeService().listImages();
-                if (images != null) {
-                    for (final Image image : images) {
-                        if (p.matcher(image.getName()).matches()) {
-                            matchcount++;
-                        }
-                    }
-                } else {
-                    return FormValidation.ok("No images available to check against.");
-                }
-            } catch (Exception ex) {
-                return FormValidation.error(
-                        "Unable to check the image name regex, please check if the credentials you provided are correct.",
-                        ex);
-            }
-            if (1 == matchcount) {
-                return FormValidation.ok("Image name regex matches exactly one image.");
-            }
-            if (1 < matchcount) {
-                return FormValidation.error(
-                        "Ambiguous image name regex matches multiple images, please check the value and try again.");
-            }
+        try {
+            Pattern.compile(imageNameRegex);
         } catch (PatternSyntaxException ex) {
             return FormValidation.error("Invalid image name regex syntax.");
         }
+        final int matchcount;
+        try {
+            final ProviderCatalog.Snapshot catalog = getProviderCatalog().get();
+            if (catalog.getImages().isEmpty()) {
+                return FormValidation.ok("No images available to check against.");
+            }
+            matchcount = catalog.findImages(imageNameRegex).size();
+        } catch (Exception ex) {
+            return FormValidation.error(
+                    "Unable to check the image name regex, please check if the credentials you provided are correct.",
+                    ex);
+        }
+        if (1 == matchcount) {
+            return FormValidation.ok("Image name regex matches exactly one image.");
+        }
+        if (1 < matchcount) {
+            return FormValidation.error(
+                    "Ambiguous image name regex matches multiple images, please check the value and try again.");
+        }
         return FormValidation.error("Image name regex does not match any image, please check the value and try again.");
     }
 
     // Delegated here from JCloudsSlaveTemplate
     void fillHardwareIdItems(ListBoxModel m) {
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            List<Hardware> hws = new ArrayList<>(ctx.getComputeService().listHardwareProfiles());
-            Collections.sort(hws, new Comparator<Hardware>() {
-                @Override
-                public int compare(Hardware a, Hardware b) {
-                    return a.getId().compareTo(b.getId());
-                }
-            });
+        try {
+            List<Hardware> hws = new ArrayList<>(getProviderCatalog().get().getHardware());
+            hws.sort(Comparator.comparing(Hardware::getId));
             for (Hardware hardware : hws) {
                 m.add(String.format("%s (%s)", hardware.getId(), hardware.getName()), hardware.getId());
             }
@@ -445,17 +690,195 @@ public class JCloudsCloud extends Cloud {
 
     // Delegated here from JCloudsSlaveTemplate
     void fillLocationIdItems(ListBoxModel m) {
-        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
-            LocationHelper.fillLocations(m, ctx.getComputeService().listAssignableLocations());
+        try {
+            LocationHelper.fillLocations(m, ImmutableSet.copyOf(getProviderCatalog().get().getLocations()));
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
         }
     }
 
-    private synchronized void initPendingNodes() {
-        if (null == pendingNodes) {
-            pendingNodes = new AtomicInteger(0);
+    /**
+     * Retrieves the ledger which keeps track of the instance cap of this cloud.
+     * All code paths which create nodes must reserve their slots here.
+     * @return The reservation ledger.
+     */
+    public ReservationLedger getReservationLedger() {
+        ReservationLedger ret = reservationLedger;
+        if (null == ret) {
+            synchronized (this) {
+                ret = reservationLedger;
+                if (null == ret) {
+                    ret = new ReservationLedger(instanceCap);
+                    reservationLedger = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the reservation ledger, reconciling it first, if it has not been reconciled recently.
+     * While provisioning is going on, the ledger is kept up to date by {@link JCloudsNodeInventoryRefresher},
+     * so usually no call to the provider is necessary.
+     */
+    private ReservationLedger getReconciledLedger() {
+        final ReservationLedger ret = getReservationLedger();
+        ret.setCap(instanceCap);
+        if (!ret.isReconciledWithin(getNodeInventoryTtl() * 1000L)) {
+            getRunningNodesCount();
+        }
+        return ret;
+    }
+
+    /**
+     * Reserves slots for new nodes, if all of them fit within the instance cap.
+     * Each reserved slot must be committed or released later.
+     * @param count The number of nodes to be provisioned.
+     * @return {@code true} if the slots have been reserved.
+     */
+    public boolean reserveInstances(final int count) {
+        return getReconciledLedger().tryReserve(count);
+    }
+
+    /**
+     * Reconciles the reservation ledger with the node inventory while provisioning is going on.
+     * Called periodically by {@link JCloudsNodeInventoryRefresher}.
+     */
+    void reconcileReservations() {
+        final ReservationLedger ledger = reservationLedger;
+        if (null != ledger && ledger.isActive(LEDGER_IDLE_PERIOD)) {
+            getRunningNodesCount();
+        }
+    }
+
+    /**
+     * Retrieves the circuit breaker, which pauses provisioning while the provider keeps failing.
+     * @return The circuit breaker.
+     */
+    CircuitBreaker getCircuitBreaker() {
+        CircuitBreaker ret = circuitBreaker;
+        if (null == ret) {
+            synchronized (this) {
+                ret = circuitBreaker;
+                if (null == ret) {
+                    ret = new CircuitBreaker(
+                            name, BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_PERIOD, BREAKER_MAX_OPEN_PERIOD);
+                    circuitBreaker = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the health and round robin state of the templates which share a label.
+     * @return The template pool.
+     */
+    TemplatePool<JCloudsSlaveTemplate> getTemplatePool() {
+        TemplatePool<JCloudsSlaveTemplate> ret = templatePool;
+        if (null == ret) {
+            synchronized (this) {
+                ret = templatePool;
+                if (null == ret) {
+                    ret = new TemplatePool<>(
+                            t -> t.name,
+                            JCloudsSlaveTemplate::getPoolWeight,
+                            JCloudsSlaveTemplate::getPoolPriority,
+                            POOL_FAILURE_THRESHOLD,
+                            POOL_COOLDOWN,
+                            POOL_MAX_COOLDOWN);
+                    templatePool = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the termination requests which still have to be confirmed.
+     * @return The pending terminations.
+     */
+    PendingTerminations getPendingTerminations() {
+        PendingTerminations ret = pendingTerminations;
+        if (null == ret) {
+            synchronized (this) {
+                ret = pendingTerminations;
+                if (null == ret) {
+                    ret = new PendingTerminations(TERMINATION_MAX_ATTEMPTS, TERMINATION_CONFIRM_TIMEOUT);
+                    pendingTerminations = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    SuspendedTier getSuspendedTier() {
+        SuspendedTier ret = suspendedTier;
+        if (null == ret) {
+            synchronized (this) {
+                ret = suspendedTier;
+                if (null == ret) {
+                    ret = new SuspendedTier(this);
+                    suspendedTier = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the executor for long running tasks of this cloud, like creating, launching or deleting nodes.
+     * @return The provisioning executor.
+     */
+    public ProvisioningExecutor getProvisioningExecutor() {
+        ProvisioningExecutor ret = provisioningExecutor;
+        if (null == ret) {
+            synchronized (this) {
+                ret = provisioningExecutor;
+                if (null == ret) {
+                    ret = new ProvisioningExecutor(
+                            "jclouds provisioning of " + name,
+                            getProvisioningConcurrency(),
+                            provisioningVirtualThreads);
+                    provisioningExecutor = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the executor for termination requests. It is separate from the provisioning executor,
+     * so that a large scale-down does not hold up provisioning, refilling the warm pool or handling preemptions.
+     * @return The termination executor.
+     */
+    ProvisioningExecutor getTerminationExecutor() {
+        ProvisioningExecutor ret = terminationExecutor;
+        if (null == ret) {
+            synchronized (this) {
+                ret = terminationExecutor;
+                if (null == ret) {
+                    ret = new ProvisioningExecutor(
+                            "jclouds termination of " + name, TERMINATION_CONCURRENCY, provisioningVirtualThreads);
+                    terminationExecutor = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    WarmPool getWarmPool() {
+        WarmPool ret = warmPool;
+        if (null == ret) {
+            synchronized (this) {
+                ret = warmPool;
+                if (null == ret) {
+                    ret = new WarmPool(this);
+                    warmPool = ret;
+                }
+            }
         }
+        return ret;
     }
 
     @DataBoundConstructor
@@ -494,28 +917,56 @@ public class JCloudsCloud extends Cloud {
         this.trustAll = trustAll;
         this.groupPrefix = groupPrefix;
         readResolve();
-        initPendingNodes();
     }
 
     protected Object readResolve() {
         for (JCloudsSlaveTemplate tpl : templates) {
             tpl.setCloud(this);
         }
+        reindexTemplates();
         return this;
     }
 
-    public void addTemplate(JCloudsSlaveTemplate tpl) {
+    public synchronized void addTemplate(JCloudsSlaveTemplate tpl) {
         tpl.setCloud(this);
         templates.add(tpl);
+        reindexTemplates();
     }
 
-    public void removeTemplate(JCloudsSlaveTemplate tpl) {
+    public synchronized void removeTemplate(JCloudsSlaveTemplate tpl) {
         templates.remove(tpl);
+        reindexTemplates();
     }
 
-    public void replaceTemplate(JCloudsSlaveTemplate from, JCloudsSlaveTemplate to) {
+    public synchronized void replaceTemplate(JCloudsSlaveTemplate from, JCloudsSlaveTemplate to) {
         to.setCloud(this);
         templates.replaceAll(t -> t.equals(from) ? to : t);
+        reindexTemplates();
+    }
+
+    /**
+     * Must be called after the list of templates has been modified.
+     */
+    private void reindexTemplates() {
+        templateIndex = new TemplateIndex(templates);
+        final TemplatePool<JCloudsSlaveTemplate> pool = templatePool;
+        if (null != pool) {
+            pool.retainAll(templateIndex.getNames());
+        }
+    }
+
+    private TemplateIndex getTemplateIndex() {
+        TemplateIndex ret = templateIndex;
+        if (null == ret) {
+            synchronized (this) {
+                ret = templateIndex;
+                if (null == ret) {
+                    ret = new TemplateIndex(templates);
+                    templateIndex = ret;
+                }
+            }
+        }
+        return ret;
     }
 
     /**
@@ -595,7 +1046,7 @@ public class JCloudsCloud extends Cloud {
         if (startTimeout > 0) {
             overrides.setProperty(ComputeServiceProperties.TIMEOUT_NODE_RUNNING, String.valueOf(startTimeout));
         }
-        return api(apitype, providerName, cloudCredentialsId, overrides);
+        return getApiRateLimiter().wrap(api(apitype, providerName, cloudCredentialsId, overrides), apitype);
     }
 
     private static ComputeServiceContext ctx(final String provider, final String credId, final Properties overrides) {
@@ -625,7 +1076,8 @@ public class JCloudsCloud extends Cloud {
         if (startTimeout > 0) {
             overrides.setProperty(ComputeServiceProperties.TIMEOUT_NODE_RUNNING, String.valueOf(startTimeout));
         }
-        return ctx(providerName, cloudCredentialsId, overrides).getComputeService();
+        return getApiRateLimiter()
+                .wrap(ctx(providerName, cloudCredentialsId, overrides).getComputeService(), ComputeService.class);
     }
 
     public ComputeService getCompute() {
@@ -635,11 +1087,19 @@ public class JCloudsCloud extends Cloud {
         return compute;
     }
 
+    /**
+     * Replaces the compute service of this cloud, e.g. by a stub.
+     * @param value The new compute service.
+     */
+    void setCompute(final ComputeService value) {
+        compute = value;
+    }
+
     public List<JCloudsSlaveTemplate> getTemplates() {
         return Collections.unmodifiableList(templates);
     }
 
-    public void setTemplates(List<JCloudsSlaveTemplate> newTemplates) {
+    public synchronized void setTemplates(List<JCloudsSlaveTemplate> newTemplates) {
         if (null != newTemplates) {
             for (JCloudsSlaveTemplate t : newTemplates) {
                 t.setCloud(this);
@@ -648,6 +1108,7 @@ public class JCloudsCloud extends Cloud {
         } else {
             templates = new CopyOnWriteArrayList<>();
         }
+        reindexTemplates();
     }
 
     /**
@@ -656,88 +1117,386 @@ public class JCloudsCloud extends Cloud {
     @Override
     public Collection<NodeProvisioner.PlannedNode> provision(Cloud.CloudState state, int excessWorkload) {
         final Label label = state.getLabel();
-        final JCloudsSlaveTemplate tpl = getTemplate(label);
-        List<PlannedNode> plannedNodeList = new ArrayList<PlannedNode>();
-
-        while (excessWorkload > 0
+        JCloudsPredictiveProvisioner.recordDemand(this, getTemplate(label), excessWorkload);
+        List<PlannedNode> plannedNodeList = provisionLocal(label, excessWorkload);
+        final int remaining = excessWorkload - countExecutors(plannedNodeList);
+        if (0 < remaining
+                && null != spilloverCloud
                 && !Jenkins.get().isQuietingDown()
                 && !Jenkins.get().isTerminating()) {
+            plannedNodeList.addAll(spillOver(label, remaining));
+        }
+        return plannedNodeList;
+    }
 
-            initPendingNodes();
-            if ((getRunningNodesCount() + plannedNodeList.size() + pendingNodes.intValue()) >= instanceCap) {
+    /**
+     * Routes workload, which exceeds the instance cap of this cloud, along the spillover chain.
+     * Each cloud of the chain takes as much as its own instance cap permits, using its own
+     * templates which match the label.
+     */
+    private List<PlannedNode> spillOver(final Label label, final int workload) {
+        final List<PlannedNode> ret = new ArrayList<>();
+        int remaining = workload;
+        for (JCloudsCloud c : getSpilloverChain()) {
+            if (0 >= remaining) {
+                break;
+            }
+            if (!c.canProvision(label)) {
+                continue;
+            }
+            final List<PlannedNode> nodes = c.provisionLocal(label, remaining);
+            final int executors = countExecutors(nodes);
+            if (0 < executors) {
                 LOGGER.info(String.format(
-                        "Instance cap of %s reached while adding capacity for label %s",
-                        getName(), (label != null) ? label.toString() : "null"));
-                break; // maxed out
+                        "Cloud %s takes %d executors for label %s which exceed the instance cap of cloud %s",
+                        c.name, executors, (label != null) ? label.toString() : "null", name));
+                getSpilloverStats().routedOut(executors);
+                c.getSpilloverStats().acceptedIn(executors);
+                ret.addAll(nodes);
+                remaining -= executors;
             }
+        }
+        if (0 < remaining) {
+            getSpilloverStats().unplaced(remaining);
+        }
+        return ret;
+    }
 
-            final ProvisioningActivity.Id provisioningId = new ProvisioningActivity.Id(this.name, tpl.name);
+    private static int countExecutors(final Collection<PlannedNode> nodes) {
+        int ret = 0;
+        for (PlannedNode n : nodes) {
+            ret += n.numExecutors;
+        }
+        return ret;
+    }
 
-            plannedNodeList.add(new TrackedPlannedNode(
-                    provisioningId, tpl.getNumExecutors(), Computer.threadPoolForRemoting.submit(new Callable<Node>() {
-                        public Node call() throws Exception {
-                            // TODO: record the output somewhere
-                            JCloudsSlave jcloudsSlave;
-                            pendingNodes.incrementAndGet();
-                            try {
-                                jcloudsSlave = tpl.provisionSlave(StreamTaskListener.fromStdout(), provisioningId);
-                            } finally {
-                                pendingNodes.decrementAndGet();
-                            }
-                            Jenkins.get().addNode(jcloudsSlave);
-
-                            /* Cloud instances may have a long init script. If we declare the provisioning complete by returning
-                            without the connect operation, NodeProvisioner may decide that it still wants one more instance,
-                            because it sees that (1) all the slaves are offline (because it's still being launched) and (2)
-                            there's no capacity provisioned yet. Deferring the completion of provisioning until the launch goes
-                            successful prevents this problem.  */
-                            ensureLaunched(jcloudsSlave);
-                            return jcloudsSlave;
-                        }
-                    })));
+    /**
+     * Plans nodes from the templates of this cloud, within its instance cap.
+     */
+    private List<PlannedNode> provisionLocal(final Label label, int excessWorkload) {
+        final List<JCloudsSlaveTemplate> pool = getTemplateIndex().getPool(label);
+        List<PlannedNode> plannedNodeList = new ArrayList<PlannedNode>();
+        if (pool.isEmpty()) {
+            return plannedNodeList;
+        }
+        final String poolKey = getPoolKey(label);
+        final List<JCloudsSlaveTemplate> picks = new ArrayList<>();
+
+        while (excessWorkload > 0
+                && !Jenkins.get().isQuietingDown()
+                && !Jenkins.get().isTerminating()) {
+            final JCloudsSlaveTemplate tpl = getFallbackIfCooling(getTemplatePool().select(poolKey, pool), label);
+            picks.add(tpl);
             excessWorkload -= tpl.getNumExecutors();
         }
+        final int wanted = picks.size();
+        // Every planned node owns one reserved slot, which it commits or releases when done.
+        final int count = 0 < wanted ? getReconciledLedger().reserveUpTo(wanted) : 0;
+        if (count < wanted) {
+            LOGGER.info(String.format(
+                    "Instance cap of %s reached while adding capacity for label %s",
+                    getName(), (label != null) ? label.toString() : "null"));
+        }
+        final Map<JCloudsSlaveTemplate, Integer> counts = new LinkedHashMap<>();
+        for (JCloudsSlaveTemplate tpl : picks.subList(0, count)) {
+            counts.merge(tpl, 1, Integer::sum);
+        }
+
+        for (Map.Entry<JCloudsSlaveTemplate, Integer> e : counts.entrySet()) {
+            plannedNodeList.addAll(planNodes(pool, poolKey, e.getKey(), e.getValue()));
+        }
         return plannedNodeList;
     }
 
-    private void ensureLaunched(JCloudsSlave jcloudsSlave) throws InterruptedException, ExecutionException {
-        jcloudsSlave.waitForPhoneHome(null);
-        Integer launchTimeoutSec = 5 * 60;
-        Computer computer = jcloudsSlave.toComputer();
-        long startMoment = System.currentTimeMillis();
-        while (null != computer && computer.isOffline()) {
-            if (computer.getOfflineCauseReason().equals(CliMessages.ONE_OFF_CAUSE.getText())) {
+    private List<PlannedNode> planNodes(
+            final List<JCloudsSlaveTemplate> pool,
+            final String poolKey,
+            final JCloudsSlaveTemplate tpl,
+            final int total) {
+        List<PlannedNode> ret = new ArrayList<>();
+        int count = total;
+
+        // Idle agents of the warm pool have already been used by the queue,
+        // so if we get here, the pool has to be refilled.
+        if (0 < getWarmPool().getTarget(tpl)) {
+            getWarmPool().requestRefill();
+        }
+
+        // Resuming a suspended node is much faster than creating a new one.
+        while (tpl.stopOnTerminate && 0 < count) {
+            final SuspendedTier.Entry suspended = getSuspendedTier().claim(tpl);
+            if (null == suspended) {
                 break;
             }
+            ret.add(planResumedNode(pool, poolKey, tpl, suspended));
+            count--;
+        }
+
+        // With JNLP provisioning, every node needs its own nonce in the user data,
+        // so those can not be created by a single call.
+        if (batchProvisioning && 1 < count && !tpl.getJnlpProvision()) {
+            ret.addAll(planNodeBatch(tpl, count));
+        } else {
+            for (int i = 0; i < count; i++) {
+                ret.add(planNode(pool, poolKey, tpl));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Replaces a template, which is cooling down (e.g. after a preemption), by its fallback template.
+     */
+    private JCloudsSlaveTemplate getFallbackIfCooling(final JCloudsSlaveTemplate tpl, final Label label) {
+        if (null == tpl.getPreemptionFallback() || getTemplatePool().isAvailable(tpl)) {
+            return tpl;
+        }
+        final JCloudsSlaveTemplate fallback = getTemplate(tpl.getPreemptionFallback());
+        // A fallback that can not run the requested workload is useless.
+        if (null == fallback || (null != label && !label.matches(fallback.getLabelSet()))) {
+            return tpl;
+        }
+        return fallback;
+    }
+
+    private static String getPoolKey(final Label label) {
+        return null == label ? "" : label.getExpression();
+    }
+
+    private PlannedNode planNode(
+            final List<JCloudsSlaveTemplate> pool, final String poolKey, final JCloudsSlaveTemplate tpl) {
+        final ProvisioningActivity.Id provisioningId = new ProvisioningActivity.Id(this.name, tpl.name);
+        final ListeningExecutorService executor = getProvisioningExecutor().getService();
+        ProvisioningProgress.start(provisioningId).record(Step.TEMPLATE_RESOLVED, tpl.name);
+
+        ListenableFuture<JCloudsSlave> f = executor.submit(new Callable<JCloudsSlave>() {
+            public JCloudsSlave call() throws Exception {
+                JCloudsSlave jcloudsSlave;
+                try {
+                    jcloudsSlave = provisionFromPool(pool, poolKey, tpl, provisioningId);
+                } catch (Exception e) {
+                    getReservationLedger().release(1);
+                    throw e;
+                }
+                getReservationLedger().commit(1);
+                return addNode(jcloudsSlave);
+            }
+        });
+        return new TrackedPlannedNode(provisioningId, tpl.getNumExecutors(), whenLaunched(provisioningId, f, tpl));
+    }
+
+    /**
+     * Provisions a node from the given template. If the provider reports insufficient capacity,
+     * the node is provisioned from the next available template of the pool instead.
+     * Only templates with the same number of executors are considered, because the
+     * planned node has already been accounted for with that number.
+     */
+    private JCloudsSlave provisionFromPool(
+            final List<JCloudsSlaveTemplate> pool,
+            final String poolKey,
+            final JCloudsSlaveTemplate first,
+            final ProvisioningActivity.Id provisioningId)
+            throws Exception {
+        final TemplatePool<JCloudsSlaveTemplate> tp = getTemplatePool();
+        final List<JCloudsSlaveTemplate> remaining = new ArrayList<>(pool);
+        JCloudsSlaveTemplate tpl = first;
+        while (true) {
+            remaining.remove(tpl);
             try {
-                LOGGER.info(String.format("Agent %s not connected yet", jcloudsSlave.getDisplayName()));
-                computer.connect(false).get();
-                Thread.sleep(5000l);
-            } catch (InterruptedException | ExecutionException e) {
-                String msg = e.getMessage();
-                if (null != msg && msg.contains("NULL agent")) {
-                    throw new ExecutionException(new Throwable(msg));
+                final JCloudsSlaveTemplate t = tpl;
+                ProvisioningProgress.record(provisioningId, Step.CREATE_REQUESTED, t.name);
+                final JCloudsNodeMetadata nmd = RetryPolicy.DEFAULT.call(
+                        t::get, getCircuitBreaker(), "Creating a node from template " + t.name);
+                tp.succeeded(tpl);
+                ProvisioningProgress.record(provisioningId, Step.RUNNING, nmd.getId());
+                return tpl.provisionSlave(StreamTaskListener.fromStdout(), provisioningId, nmd);
+            } catch (CircuitBreaker.OpenException e) {
+                throw e;
+            } catch (Exception e) {
+                final boolean capacity = TemplatePool.isCapacityError(e);
+                if (tp.failed(tpl, capacity)) {
+                    LOGGER.warning(String.format(
+                            "Template %s of cloud %s is cooling down after provisioning failed: %s",
+                            tpl.name, name, e.getMessage()));
                 }
-                LOGGER.warning(String.format("Error while launching %s: %s", jcloudsSlave.getDisplayName(), e));
+                final int executors = tpl.getNumExecutors();
+                remaining.removeIf(t -> t.getNumExecutors() != executors || !tp.isAvailable(t));
+                if (!capacity || remaining.isEmpty()) {
+                    throw e;
+                }
+                final JCloudsSlaveTemplate next = tp.select(poolKey, remaining);
+                LOGGER.info(String.format(
+                        "Insufficient capacity for template %s of cloud %s, failing over to template %s",
+                        tpl.name, name, next.name));
+                tpl = next;
             }
+        }
+    }
 
-            if ((System.currentTimeMillis() - startMoment) > 1000l * launchTimeoutSec) {
-                String msg = String.format(
-                        "Failed to connect to %s within %d sec.", jcloudsSlave.getDisplayName(), launchTimeoutSec);
-                LOGGER.warning(msg);
-                throw new ExecutionException(new Throwable(msg));
+    private PlannedNode planResumedNode(
+            final List<JCloudsSlaveTemplate> pool,
+            final String poolKey,
+            final JCloudsSlaveTemplate tpl,
+            final SuspendedTier.Entry suspended) {
+        final ProvisioningActivity.Id provisioningId = new ProvisioningActivity.Id(this.name, tpl.name);
+        final ListeningExecutorService executor = getProvisioningExecutor().getService();
+
+        ProvisioningProgress.start(provisioningId)
+                .record(Step.TEMPLATE_RESOLVED, String.format("%s, resuming node %s", tpl.name, suspended.nodeId));
+
+        ListenableFuture<JCloudsSlave> f = executor.submit(new Callable<JCloudsSlave>() {
+            public JCloudsSlave call() throws Exception {
+                final JCloudsNodeMetadata nmd;
+                try {
+                    nmd = tpl.resumeNode(suspended.nodeId, suspended.nonce);
+                    getSuspendedTier().resumed(suspended);
+                } catch (RuntimeException e) {
+                    LOGGER.warning(String.format(
+                            "Resuming node %s failed, creating a new one: %s", suspended.nodeId, e.getMessage()));
+                    getSuspendedTier().release(suspended);
+                    final JCloudsSlave jcloudsSlave;
+                    try {
+                        jcloudsSlave = provisionFromPool(pool, poolKey, tpl, provisioningId);
+                    } catch (Exception x) {
+                        getReservationLedger().release(1);
+                        throw x;
+                    }
+                    getReservationLedger().commit(1);
+                    return addNode(jcloudsSlave);
+                }
+                getReservationLedger().commit(1);
+                ProvisioningProgress.record(provisioningId, Step.RUNNING, nmd.getId());
+                return addNode(tpl.provisionSlave(StreamTaskListener.fromStdout(), provisioningId, nmd));
             }
+        });
+        return new TrackedPlannedNode(provisioningId, tpl.getNumExecutors(), whenLaunched(provisioningId, f, tpl));
+    }
+
+    /**
+     * Plans multiple nodes which are created by a single call to the cloud provider.
+     * Every planned node claims its own node from the shared batch, so if the provider
+     * creates only some of the nodes, just the remaining planned nodes fail.
+     */
+    private List<PlannedNode> planNodeBatch(final JCloudsSlaveTemplate tpl, final int count) {
+        final ListeningExecutorService executor = getProvisioningExecutor().getService();
+        final List<ProvisioningActivity.Id> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final ProvisioningActivity.Id provisioningId = new ProvisioningActivity.Id(this.name, tpl.name);
+            ProvisioningProgress.start(provisioningId).record(Step.TEMPLATE_RESOLVED, tpl.name);
+            ids.add(provisioningId);
+        }
+        final ListenableFuture<NodeBatch> batch = executor.submit(new Callable<NodeBatch>() {
+            public NodeBatch call() throws Exception {
+                NodeBatch ret = null;
+                for (ProvisioningActivity.Id id : ids) {
+                    ProvisioningProgress.record(
+                            id, Step.CREATE_REQUESTED, String.format("%s, batch of %d", tpl.name, count));
+                }
+                try {
+                    ret = RetryPolicy.DEFAULT.call(
+                            () -> tpl.createNodes(count),
+                            getCircuitBreaker(),
+                            "Creating " + count + " nodes from template " + tpl.name);
+                    getTemplatePool().succeeded(tpl);
+                    return ret;
+                } catch (CircuitBreaker.OpenException e) {
+                    throw e;
+                } catch (Exception e) {
+                    getTemplatePool().failed(tpl, TemplatePool.isCapacityError(e));
+                    throw e;
+                } finally {
+                    final int created = null == ret ? 0 : ret.getNodes().size();
+                    getReservationLedger().commit(created);
+                    getReservationLedger().release(count - created);
+                }
+            }
+        });
+
+        List<PlannedNode> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final ProvisioningActivity.Id provisioningId = ids.get(i);
+            ListenableFuture<JCloudsSlave> f = Futures.transformAsync(
+                    batch,
+                    new AsyncFunction<NodeBatch, JCloudsSlave>() {
+                        public ListenableFuture<JCloudsSlave> apply(NodeBatch b) throws Exception {
+                            final JCloudsNodeMetadata nmd = b.get(index);
+                            ProvisioningProgress.record(provisioningId, Step.RUNNING, nmd.getId());
+                            JCloudsSlave jcloudsSlave =
+                                    tpl.provisionSlave(StreamTaskListener.fromStdout(), provisioningId, nmd);
+                            return Futures.immediateFuture(addNode(jcloudsSlave));
+                        }
+                    },
+                    executor);
+            ret.add(new TrackedPlannedNode(
+                    provisioningId, tpl.getNumExecutors(), whenLaunched(provisioningId, f, tpl)));
         }
+        return ret;
+    }
+
+    private static JCloudsSlave addNode(final JCloudsSlave jcloudsSlave) throws IOException {
+        Jenkins.get().addNode(jcloudsSlave);
+        return jcloudsSlave;
+    }
+
+    /**
+     * Defers the completion of provisioning until the agent has phoned home and is online.
+     * Both waits are event driven, so no thread is blocked in the meantime.
+     * @see JCloudsLaunchMonitor
+     */
+    private static ListenableFuture<Node> whenLaunched(
+            final ProvisioningActivity.Id provisioningId,
+            final ListenableFuture<JCloudsSlave> f,
+            final JCloudsSlaveTemplate tpl) {
+        final ListenableFuture<JCloudsSlave> phonedHome =
+                Futures.transformAsync(f, JCloudsCloud::whenPhonedHome, MoreExecutors.directExecutor());
+        final ListenableFuture<Node> ret = Futures.transformAsync(
+                phonedHome,
+                s -> {
+                    if (tpl.waitPhoneHome) {
+                        ProvisioningProgress.record(provisioningId, Step.PHONED_HOME, s.getNodeName());
+                    }
+                    return JCloudsLaunchMonitor.whenOnline(s, tpl.getLaunchTimeout());
+                },
+                MoreExecutors.directExecutor());
+        Futures.addCallback(
+                ret,
+                new FutureCallback<Node>() {
+                    public void onSuccess(Node n) {
+                        ProvisioningProgress.record(provisioningId, Step.ONLINE, n.getNodeName());
+                    }
+
+                    public void onFailure(Throwable t) {
+                        ProvisioningProgress.record(provisioningId, Step.FAILED, t.getMessage());
+                    }
+                },
+                MoreExecutors.directExecutor());
+        return ret;
+    }
+
+    private static ListenableFuture<JCloudsSlave> whenPhonedHome(final JCloudsSlave jcloudsSlave) {
+        final SettableFuture<JCloudsSlave> ret = SettableFuture.create();
+        jcloudsSlave.whenPhonedHome(null).whenComplete((v, t) -> {
+            if (null == t) {
+                ret.set(jcloudsSlave);
+            } else {
+                ret.setException(t instanceof CompletionException && null != t.getCause() ? t.getCause() : t);
+            }
+        });
+        return ret;
     }
 
     @Override
     public boolean canProvision(final Cloud.CloudState state) {
-        return getTemplate(state.getLabel()) != null;
+        return canProvision(state.getLabel());
+    }
+
+    private boolean canProvision(final Label label) {
+        return getTemplate(label) != null && !getCircuitBreaker().isOpen();
     }
 
     public JCloudsSlaveTemplate getTemplate(String name) {
-        for (JCloudsSlaveTemplate t : templates) if (t.name.equals(name)) return t;
-        return null;
+        return getTemplateIndex().get(name);
     }
 
     /**
@@ -746,8 +1505,7 @@ public class JCloudsCloud extends Cloud {
      * @return The slave template or {@code null} if the specified label did not match.
      */
     JCloudsSlaveTemplate getTemplate(Label label) {
-        for (JCloudsSlaveTemplate t : templates) if (label == null || label.matches(t.getLabelSet())) return t;
-        return null;
+        return getTemplateIndex().get(label);
     }
 
     @Restricted(NoExternalUse.class) // jelly
@@ -847,6 +1605,37 @@ public class JCloudsCloud extends Cloud {
         // cloud configuration does not contain templates anymore, so just keep existing ones.
         var newInstance = (JCloudsCloud) super.reconfigure(req, form);
         newInstance.setTemplates(templates);
+        // Nodes which are still being provisioned keep their reservations.
+        final ReservationLedger ledger = getReservationLedger();
+        ledger.setCap(newInstance.instanceCap);
+        newInstance.reservationLedger = ledger;
+        newInstance.templatePool = templatePool;
+        newInstance.spilloverStats = spilloverStats;
+        newInstance.circuitBreaker = circuitBreaker;
+        newInstance.pendingTerminations = pendingTerminations;
+        // Claimed nodes and nonces of suspended nodes must survive, or nodes get resumed twice or never.
+        final SuspendedTier st = suspendedTier;
+        if (null != st) {
+            st.setCloud(newInstance);
+            newInstance.suspendedTier = st;
+        }
+        // Agents still being provisioned for the warm pool and the forecasts must be known, or duplicates are started.
+        final WarmPool wp = warmPool;
+        if (null != wp) {
+            wp.setCloud(newInstance);
+            newInstance.warmPool = wp;
+        }
+        // The executors are not shut down, because continuations of in-flight work are still scheduled on them.
+        // If the kind of threads did not change, they are reused. Otherwise their threads terminate after being idle.
+        final ProvisioningExecutor pe = provisioningExecutor;
+        if (null != pe && provisioningVirtualThreads == newInstance.provisioningVirtualThreads) {
+            pe.setConcurrency(newInstance.getProvisioningConcurrency());
+            newInstance.provisioningExecutor = pe;
+        }
+        final ProvisioningExecutor te = terminationExecutor;
+        if (null != te && provisioningVirtualThreads == newInstance.provisioningVirtualThreads) {
+            newInstance.terminationExecutor = te;
+        }
         return newInstance;
     }
 
@@ -864,6 +1653,32 @@ public class JCloudsCloud extends Cloud {
         return node;
     }
 
+    /**
+     * Provisions a new node from supplied template, if the instance cap permits.
+     *
+     * @param t The template to be used.
+     * @return The new node or {@code null} if the instance cap has been reached.
+     * @throws IOException if an error occurs.
+     */
+    @CheckForNull
+    public JCloudsSlave provisionWithinCap(final JCloudsSlaveTemplate t) throws IOException {
+        if (!reserveInstances(1)) {
+            return null;
+        }
+        boolean created = false;
+        try {
+            JCloudsSlave node = doProvisionFromTemplate(t);
+            created = true;
+            return node;
+        } finally {
+            if (created) {
+                getReservationLedger().commit(1);
+            } else {
+                getReservationLedger().release(1);
+            }
+        }
+    }
+
     /**
      * Provisions a new node manually (by clicking a button in the computer list).
      *
@@ -888,15 +1703,9 @@ public class JCloudsCloud extends Cloud {
             return;
         }
 
-        initPendingNodes();
-        if (getRunningNodesCount() + pendingNodes.intValue() < instanceCap) {
-            try {
-                pendingNodes.incrementAndGet();
-                JCloudsSlave node = doProvisionFromTemplate(t);
-                rsp.sendRedirect2(req.getContextPath() + "/computer/" + node.getNodeName());
-            } finally {
-                pendingNodes.decrementAndGet();
-            }
+        JCloudsSlave node = provisionWithinCap(t);
+        if (null != node) {
+            rsp.sendRedirect2(req.getContextPath() + "/computer/" + node.getNodeName());
         } else {
             sendError(String.format("Instance cap of %s reached", getName()), req, rsp);
         }
@@ -904,24 +1713,223 @@ public class JCloudsCloud extends Cloud {
 
     /**
      * Determine how many nodes are currently running for this cloud.
+     * The result is based on the cached node inventory, so the provider is queried
+     * only if the inventory has expired or was invalidated.
+     * As a side effect, the reservation ledger is reconciled with the inventory.
      * @return number of running nodes.
      */
     public int getRunningNodesCount() {
+        final NodeInventory.Snapshot snapshot = getNodeInventory().get();
         int nodeCount = 0;
+        for (String group : snapshot.getGroups()) {
+            if (getTemplate(group) != null) {
+                nodeCount += snapshot.getActiveCount(group);
+            }
+        }
+        getReservationLedger().reconcile(nodeCount, snapshot.getTimestamp());
+        return nodeCount;
+    }
 
-        for (ComputeMetadata cm : getCompute().listNodes()) {
-            if (NodeMetadata.class.isInstance(cm)) {
-                NodeMetadata nm = (NodeMetadata) cm;
-                String nodeGroup = removeGroupPrefix(nm.getGroup());
+    /**
+     * Retrieves the inventory of nodes of this cloud, indexed by template name.
+     * @return The node inventory.
+     */
+    public NodeInventory getNodeInventory() {
+        NodeInventory ret = nodeInventory;
+        if (null == ret) {
+            synchronized (this) {
+                ret = nodeInventory;
+                if (null == ret) {
+                    ret = new NodeInventory(
+                            () -> getCompute().listNodes(), this::removeGroupPrefix, getNodeInventoryTtl() * 1000L);
+                    nodeInventory = ret;
+                }
+            }
+        }
+        return ret;
+    }
 
-                if (getTemplate(nodeGroup) != null
-                        && !nm.getStatus().equals(NodeMetadata.Status.SUSPENDED)
-                        && !nm.getStatus().equals(NodeMetadata.Status.TERMINATED)) {
-                    nodeCount++;
+    /**
+     * Retrieves the cached catalog of images, hardware profiles and locations of this cloud.
+     * @return The provider catalog.
+     */
+    public ProviderCatalog getProviderCatalog() {
+        ProviderCatalog ret = providerCatalog;
+        if (null == ret) {
+            synchronized (this) {
+                ret = providerCatalog;
+                if (null == ret) {
+                    ret = new ProviderCatalog(
+                            this::loadProviderCatalog,
+                            Computer.threadPoolForRemoting,
+                            CloudInstanceDefaults.DEFAULT_PROVIDER_CATALOG_TTL_IN_MINUTES * 60 * 1000L);
+                    providerCatalog = ret;
                 }
             }
         }
-        return nodeCount;
+        return ret;
+    }
+
+    private ProviderCatalog.Snapshot loadProviderCatalog() {
+        // Always use a fresh context, because jclouds caches images for a long time.
+        // See: https://issues.apache.org/jira/browse/JCLOUDS-570
+        try (ComputeServiceContext ctx = ctx(providerName, cloudCredentialsId, endPointUrl, zones, trustAll)) {
+            final ComputeService cs = getApiRateLimiter().wrap(ctx.getComputeService(), ComputeService.class);
+            final Map<String, Integer> keys = new HashMap<>();
+            if ("digitalocean2".equals(providerName)) {
+                try (DigitalOcean2Api do2api = newApi(DigitalOcean2Api.class)) {
+                    for (Key k : do2api.keyApi().list().concat()) {
+                        keys.put(k.name(), k.id());
+                    }
+                } catch (IOException x) {
+                    throw new IllegalArgumentException("Could not fetch list of keys", x);
+                }
+            }
+            return new ProviderCatalog.Snapshot(
+                    cs.listImages(),
+                    cs.listHardwareProfiles(),
+                    cs.listAssignableLocations(),
+                    keys,
+                    System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Must be called after nodes of this cloud have been created, suspended, resumed or destroyed.
+     */
+    public void invalidateNodeInventory() {
+        NodeInventory inv = nodeInventory;
+        if (null != inv) {
+            inv.invalidate();
+        }
+    }
+
+    /**
+     * Sends the requests for suspending and destroying nodes without waiting for their completion.
+     * The requests are executed by the provisioning executor and {@link JCloudsTerminationVerifier}
+     * confirms in the background that the nodes are gone, sending failed requests again and
+     * reporting nodes which could not be terminated.
+     *
+     * @param toSuspend The ids of the nodes to suspend.
+     * @param toDestroy The ids of the nodes to destroy.
+     * @return A future which completes when the requests have been carried out and fails if any of them failed.
+     */
+    public ListenableFuture<?> terminateAsync(final Collection<String> toSuspend, final Collection<String> toDestroy) {
+        return terminateAsync(toSuspend, toDestroy, Collections.emptyMap());
+    }
+
+    /**
+     * Like {@link #terminateAsync(Collection, Collection)}, but records suspended agent nodes in the suspended tier.
+     * @param nonces The JNLP provisioning nonces of the nodes to suspend, which belong to agents.
+     */
+    ListenableFuture<?> terminateAsync(
+            final Collection<String> toSuspend, final Collection<String> toDestroy, final Map<String, String> nonces) {
+        final long now = System.currentTimeMillis();
+        final PendingTerminations pt = getPendingTerminations();
+        final List<String> suspend = pt.requested(toSuspend, PendingTerminations.Action.SUSPEND, nonces, now);
+        final List<String> destroy = pt.requested(toDestroy, PendingTerminations.Action.DESTROY, now);
+        if (!suspend.isEmpty() || !destroy.isEmpty()) {
+            JCloudsTerminationVerifier.persist();
+        }
+        return sendTermination(suspend, destroy);
+    }
+
+    /**
+     * Sends the requests for nodes, which have been registered in the pending terminations.
+     * The nonces of suspended nodes are taken from there, so that they are known even if a request is sent again.
+     */
+    private ListenableFuture<?> sendTermination(final List<String> toSuspend, final List<String> toDestroy) {
+        if (toSuspend.isEmpty() && toDestroy.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        final PendingTerminations pt = getPendingTerminations();
+        final Iterable<String> ids = Iterables.concat(toSuspend, toDestroy);
+        final ListenableFuture<BatchTermination> f;
+        try {
+            f = getTerminationExecutor().getService().submit(() -> {
+                final BatchTermination bt = new BatchTermination(getCompute());
+                try {
+                    bt.run(ImmutableSet.copyOf(toSuspend), ImmutableSet.copyOf(toDestroy));
+                } finally {
+                    invalidateNodeInventory();
+                }
+                return bt;
+            });
+        } catch (RejectedExecutionException e) {
+            // Otherwise, the requests would be considered in progress forever and never be sent again.
+            LOGGER.warning(String.format("Failed to terminate nodes %s: %s", ids, e.getMessage()));
+            final long now = System.currentTimeMillis();
+            for (String id : ids) {
+                pt.completed(id, false, now);
+            }
+            return Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(
+                f,
+                new FutureCallback<BatchTermination>() {
+                    @Override
+                    public void onSuccess(BatchTermination bt) {
+                        final long now = System.currentTimeMillis();
+                        for (String id : ids) {
+                            final BatchTermination.Outcome o = bt.getOutcome(id);
+                            final String nonce = pt.getNonce(id);
+                            if (BatchTermination.Outcome.SUSPENDED == o && null != nonce) {
+                                getSuspendedTier().suspended(id, nonce);
+                            }
+                            pt.completed(id, o.isSuccess(), now);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        LOGGER.warning(String.format("Failed to terminate nodes %s: %s", ids, t.getMessage()));
+                        final long now = System.currentTimeMillis();
+                        for (String id : ids) {
+                            pt.completed(id, false, now);
+                        }
+                    }
+                },
+                MoreExecutors.directExecutor());
+        return Futures.transform(
+                f,
+                bt -> {
+                    for (String id : ids) {
+                        if (!bt.getOutcome(id).isSuccess()) {
+                            throw new IllegalStateException("Failed to terminate node " + id, bt.getCause(id));
+                        }
+                    }
+                    return null;
+                },
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Confirms pending asynchronous terminations against the node inventory and sends
+     * the requests of unconfirmed nodes again.
+     * @return A future which completes when the requests, which have been sent again, have been carried out.
+     */
+    ListenableFuture<?> verifyTerminations() {
+        final PendingTerminations pt = pendingTerminations;
+        if (null == pt || pt.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        final NodeInventory.Snapshot snapshot = getNodeInventory().get();
+        final PendingTerminations.Verification v = pt.verify(snapshot::getNode, System.currentTimeMillis());
+        if (!v.getConfirmed().isEmpty()) {
+            LOGGER.fine(String.format("Confirmed termination of nodes %s in cloud %s", v.getConfirmed(), name));
+        }
+        for (PendingTerminations.Entry e : v.getLeaked()) {
+            LOGGER.warning(String.format(
+                    "Node %s in cloud %s could not be terminated after %d attempts and has leaked.",
+                    e.getNodeId(), name, e.getAttempts()));
+        }
+        if (!v.getToSuspend().isEmpty() || !v.getToDestroy().isEmpty()) {
+            LOGGER.info(String.format(
+                    "Retrying termination of nodes %s in cloud %s",
+                    Iterables.concat(v.getToSuspend(), v.getToDestroy()), name));
+            return sendTermination(v.getToSuspend(), v.getToDestroy());
+        }
+        return Futures.immediateFuture(null);
     }
 
     void registerPhoneHomeMonitor(final PhoneHomeMonitor monitor) {
@@ -1114,6 +2122,34 @@ public class JCloudsCloud extends Cloud {
             return FormValidation.validateRequired(value);
         }
 
+        @POST
+        public ListBoxModel doFillSpilloverCloudItems(@QueryParameter String initialName) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            ListBoxModel m = new ListBoxModel();
+            m.add("- none -", "");
+            for (String n : getCloudNames()) {
+                if (!n.equals(initialName)) {
+                    m.add(n, n);
+                }
+            }
+            return m;
+        }
+
+        @POST
+        public FormValidation doCheckSpilloverCloud(@QueryParameter String initialName, @QueryParameter String value) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            Cloud c = null == value ? null : Jenkins.get().clouds.getByName(value);
+            if (c instanceof JCloudsCloud && null != initialName) {
+                for (JCloudsCloud next : ((JCloudsCloud) c).getSpilloverChain()) {
+                    if (initialName.equals(next.name)) {
+                        return FormValidation.warning(
+                                "The spillover clouds form a cycle, which ends before this cloud is reached again");
+                    }
+                }
+            }
+            return FormValidation.ok();
+        }
+
         @POST
         public FormValidation doCheckProviderName(@QueryParameter String value) {
             return FormValidation.validateRequired(value);
@@ -1255,6 +2291,7 @@ public class JCloudsCloud extends Cloud {
                                         return null != input && input.getId().equals(rn.getNodeId());
                                     }
                                 });
+                                c.invalidateNodeInventory();
                                 continue;
                             } catch (UnsupportedOperationException e) {
                                 LOGGER.warning("Suspend unsupported on cloud: " + c.name);
@@ -1266,6 +2303,7 @@ public class JCloudsCloud extends Cloud {
                                 return null != input && input.getId().equals(rn.getNodeId());
                             }
                         });
+                        c.invalidateNodeInventory();
                     }
                 }
                 supplementalsToCheck.remove(entry.getKey());
@@ -155,6 +155,37 @@ public class JCloudsComputer extends AbstractCloudComputer<JCloudsSlave> impleme
         }
     }
 
+    /**
+     * Receives the outcome of a batched termination by {@link JCloudsCleanupThread}.
+     * If the node is gone, the agent is removed. Otherwise it stays pending delete
+     * and the termination is retried at the next run of the cleanup thread.
+     *
+     * @param outcome The outcome for the node of this computer.
+     * @param cause The cause of a failure or {@code null}.
+     */
+    void terminated(final BatchTermination.Outcome outcome, @CheckForNull final Throwable cause) {
+        final JCloudsSlave node = getNode();
+        if (null == node) {
+            return;
+        }
+        if (!outcome.isSuccess()) {
+            LOGGER.warning(String.format(
+                    "Failed to terminate node %s of agent %s: %s",
+                    node.getNodeId(), getName(), null == cause ? "unknown" : cause.getMessage()));
+            return;
+        }
+        LOGGER.info(String.format("Node %s of agent %s: %s", node.getNodeId(), getName(), outcome));
+        node.setTerminated();
+        try {
+            node.terminate();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to disconnect and delete " + getName() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Failed to disconnect and delete " + getName() + ": " + e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private Set<String> getIpAddresses(final boolean wantPublic) {
         final JCloudsSlave node = getNode();
         if (null != node) {
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.cli.CliMessages;
+import jenkins.util.Timer;
+
+/**
+ * Completes the provisioning of agents when they come online.
+ * <p>
+ * Cloud instances may have a long init script. If we declare the provisioning complete
+ * without waiting for the agent to connect, NodeProvisioner may decide that it still wants
+ * one more instance, because it sees that (1) all the agents are offline (because they are still
+ * being launched) and (2) there's no capacity provisioned yet. Deferring the completion of
+ * provisioning until the launch was successful prevents this problem.
+ * Instead of polling, this listener reacts on the agent's launch events, so no thread is
+ * blocked while waiting. Failed launches are retried until the template's launch timeout expires.
+ */
+@Extension
+public final class JCloudsLaunchMonitor extends ComputerListener {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsLaunchMonitor.class.getName());
+
+    /**
+     * Delay in seconds before a failed launch is retried.
+     */
+    private static final int RECONNECT_DELAY = 5;
+
+    private static final ConcurrentMap<String, Launch> LAUNCHES = new ConcurrentHashMap<>();
+
+    private static final class Launch {
+        private final JCloudsSlave slave;
+        private final SettableFuture<Node> future = SettableFuture.create();
+        private volatile ScheduledFuture<?> timeout;
+
+        Launch(JCloudsSlave slave) {
+            this.slave = slave;
+        }
+    }
+
+    /**
+     * Waits asynchronously until an agent is online.
+     * @param slave The agent, which must already have been added to Jenkins.
+     * @param timeout The launch timeout in seconds.
+     * @return A future, which completes with the agent, as soon as it is online.
+     */
+    static ListenableFuture<Node> whenOnline(final JCloudsSlave slave, final int timeout) {
+        final String name = slave.getNodeName();
+        final Launch launch = new Launch(slave);
+        LAUNCHES.put(name, launch);
+        final String msg = String.format("Failed to connect to %s within %d sec.", slave.getDisplayName(), timeout);
+        launch.timeout = Timer.get().schedule(() -> fail(name, msg), timeout, TimeUnit.SECONDS);
+        // The agent might have come online before we registered.
+        final Computer computer = slave.toComputer();
+        if (null == computer || computer.isOnline() || isOneOff(computer.getOfflineCauseReason())) {
+            complete(name);
+        } else if (!computer.isConnecting()) {
+            LOGGER.info(String.format("Agent %s not connected yet", slave.getDisplayName()));
+            computer.connect(false);
+        }
+        return launch.future;
+    }
+
+    private static boolean isOneOff(final String reason) {
+        return CliMessages.ONE_OFF_CAUSE.getText().equals(reason);
+    }
+
+    private static void complete(final String name) {
+        final Launch launch = LAUNCHES.remove(name);
+        if (null != launch) {
+            cancelTimeout(launch);
+            launch.future.set(launch.slave);
+        }
+    }
+
+    private static void fail(final String name, final String msg) {
+        final Launch launch = LAUNCHES.remove(name);
+        if (null != launch) {
+            LOGGER.warning(msg);
+            cancelTimeout(launch);
+            launch.future.setException(new IOException(msg));
+        }
+    }
+
+    private static void cancelTimeout(final Launch launch) {
+        final ScheduledFuture<?> t = launch.timeout;
+        if (null != t) {
+            t.cancel(false);
+        }
+    }
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        complete(c.getName());
+    }
+
+    @Override
+    public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+        if (null != cause && isOneOff(cause.toString())) {
+            complete(c.getName());
+        }
+    }
+
+    @Override
+    public void onLaunchFailure(Computer c, TaskListener listener) {
+        final String name = c.getName();
+        final Launch launch = LAUNCHES.get(name);
+        if (null != launch) {
+            LOGGER.warning(String.format("Error while launching %s, retrying", launch.slave.getDisplayName()));
+            Timer.get().schedule(() -> reconnect(name, launch), RECONNECT_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void reconnect(final String name, final Launch launch) {
+        // The agent might have been removed or launched in the meantime.
+        final Computer computer = Jenkins.get().getComputer(name);
+        if (null != computer && LAUNCHES.get(name) == launch && computer.isOffline()) {
+            computer.connect(false);
+        }
+    }
+}
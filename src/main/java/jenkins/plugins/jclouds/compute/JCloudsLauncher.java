@@ -82,6 +82,7 @@ public class JCloudsLauncher extends ComputerLauncher {
                 throw new IOException("goto sleep");
             }
             invokeSSHLauncher(address, slave.getCredentialsId(), slave.getJvmOptions(), computer, listener);
+            ProvisioningProgress.record(slave.getId(), ProvisioningProgress.Step.SSH_REACHABLE, address);
 
         } else {
             LOGGER.severe("Could not launch NULL agent.");
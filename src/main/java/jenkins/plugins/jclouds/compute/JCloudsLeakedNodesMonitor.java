@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+import hudson.slaves.Cloud;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.internal.PendingTerminations;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.verb.POST;
+
+/**
+ * Reports nodes which could not be terminated asynchronously and still occupy resources at the provider.
+ */
+@Extension
+public final class JCloudsLeakedNodesMonitor extends AdministrativeMonitor {
+
+    @Override
+    public String getDisplayName() {
+        return "JClouds leaked nodes";
+    }
+
+    @Override
+    public boolean isActivated() {
+        return !getLeakedNodes().isEmpty();
+    }
+
+    /**
+     * @return A description of every leaked node.
+     */
+    public List<String> getLeakedNodes() {
+        final List<String> ret = new ArrayList<>();
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                final JCloudsCloud jc = (JCloudsCloud) c;
+                for (PendingTerminations.Entry e : jc.getPendingTerminations().getLeaked()) {
+                    ret.add(String.format(
+                            "%s: %s (%s failed after %d attempts)",
+                            jc.name, e.getNodeId(), e.getAction().name().toLowerCase(Locale.ENGLISH), e.getAttempts()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Forgets the leaked nodes after an administrator has taken care of them.
+     */
+    @POST
+    public HttpResponse doForget() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                ((JCloudsCloud) c).getPendingTerminations().forgetLeaked();
+            }
+        }
+        JCloudsTerminationVerifier.persist();
+        return HttpResponses.redirectViaContextPath("/manage");
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Label;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.queue.QueueListener;
+import hudson.slaves.Cloud;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.internal.DemandHistory;
+
+/**
+ * Provisions agents ahead of predicted demand.
+ * <p>
+ * For templates with predictive provisioning enabled, the demand is sampled once per minute. A sample
+ * is the larger of the number of queue arrivals and the excess workload the NodeProvisioner asked for.
+ * The samples are fed into a {@link DemandHistory}, which is persisted in the Jenkins home directory.
+ * The demand predicted for the near future is handed to the warm pool of the cloud, which then
+ * provisions the missing idle agents within the instance cap.
+ */
+@Extension
+public final class JCloudsPredictiveProvisioner extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsPredictiveProvisioner.class.getName());
+
+    private static final String HISTORY_FILE = "jclouds-demand-history.xml";
+
+    /**
+     * How far ahead the demand is predicted. Should roughly match the time needed to boot an agent.
+     */
+    private static final long LEAD_TIME = CloudInstanceDefaults.DEFAULT_FORECAST_LEAD_TIME_IN_MINUTES * 60 * 1000L;
+
+    private static final ConcurrentMap<String, Integer> ARRIVALS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Integer> REQUESTS = new ConcurrentHashMap<>();
+
+    private DemandHistory history;
+
+    public JCloudsPredictiveProvisioner() {
+        super("JClouds predictive provisioning");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINE;
+    }
+
+    private static String keyOf(final JCloudsCloud cloud, final JCloudsSlaveTemplate tpl) {
+        return cloud.name + "/" + tpl.name;
+    }
+
+    /**
+     * Records the excess workload, the NodeProvisioner has asked a cloud for.
+     * @param cloud The cloud which has been asked.
+     * @param tpl The template which matches the requested label.
+     * @param executors The number of executors requested.
+     */
+    static void recordDemand(final JCloudsCloud cloud, final JCloudsSlaveTemplate tpl, final int executors) {
+        if (null != tpl && tpl.isPredictiveProvisioning() && 0 < executors) {
+            REQUESTS.merge(keyOf(cloud, tpl), executors, Math::max);
+        }
+    }
+
+    private static int take(final ConcurrentMap<String, Integer> samples, final String key) {
+        final Integer ret = samples.remove(key);
+        return null == ret ? 0 : ret.intValue();
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        final long now = System.currentTimeMillis();
+        final DemandHistory h = getHistory();
+        final Set<String> keys = new HashSet<>();
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                final JCloudsCloud cloud = (JCloudsCloud) c;
+                for (JCloudsSlaveTemplate tpl : cloud.getTemplates()) {
+                    if (!tpl.isPredictiveProvisioning()) {
+                        cloud.getWarmPool().setForecast(tpl, 0);
+                        continue;
+                    }
+                    final String key = keyOf(cloud, tpl);
+                    keys.add(key);
+                    h.record(key, Math.max(take(ARRIVALS, key), take(REQUESTS, key)), now);
+                    final double predicted = h.forecast(key, now + LEAD_TIME);
+                    final int count = (int) Math.ceil(predicted / Math.max(1, tpl.getNumExecutors()));
+                    LOGGER.fine(String.format(
+                            "Predicted demand for %s: %.2f executors, %d agents", key, predicted, count));
+                    cloud.getWarmPool().setForecast(tpl, count);
+                    if (0 < count) {
+                        try {
+                            cloud.getWarmPool().refill();
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "Failed to provision ahead of demand for " + key, e);
+                        }
+                    }
+                }
+            }
+        }
+        ARRIVALS.keySet().retainAll(keys);
+        REQUESTS.keySet().retainAll(keys);
+        if (h.retainAll(keys) || !keys.isEmpty()) {
+            saveHistory(h);
+        }
+    }
+
+    private static XmlFile getHistoryFile() {
+        return new XmlFile(new File(Jenkins.get().getRootDir(), HISTORY_FILE));
+    }
+
+    private synchronized DemandHistory getHistory() {
+        if (null == history) {
+            final XmlFile xf = getHistoryFile();
+            if (xf.exists()) {
+                try {
+                    history = (DemandHistory) xf.read();
+                } catch (IOException | ClassCastException x) {
+                    LOGGER.warning(String.format("Failed to read %s: %s", xf.getFile(), x.getMessage()));
+                }
+            }
+            if (null == history) {
+                history = new DemandHistory();
+            }
+        }
+        return history;
+    }
+
+    private static void saveHistory(final DemandHistory h) {
+        final XmlFile xf = getHistoryFile();
+        try {
+            xf.write(h);
+        } catch (IOException x) {
+            LOGGER.warning(String.format("Failed to persist %s: %s", xf.getFile(), x.getMessage()));
+        }
+    }
+
+    /**
+     * Counts the queue arrivals for templates with predictive provisioning enabled.
+     */
+    @Extension
+    public static final class QueueDemandListener extends QueueListener {
+
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            final Label label = wi.getAssignedLabel();
+            if (null == label) {
+                return;
+            }
+            for (Cloud c : Jenkins.get().clouds) {
+                if (c instanceof JCloudsCloud) {
+                    final JCloudsCloud cloud = (JCloudsCloud) c;
+                    final JCloudsSlaveTemplate tpl = cloud.getTemplate(label);
+                    if (null != tpl && tpl.isPredictiveProvisioning()) {
+                        ARRIVALS.merge(keyOf(cloud, tpl), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Job;
+import hudson.model.ParametersAction;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.labels.LabelAtom;
+import hudson.slaves.OfflineCause;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.CauseOfInterruption;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.cli.Messages;
+import jenkins.plugins.jclouds.compute.internal.NodeInventory;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * Detects and handles preempted agents of preemptible templates.
+ * <p>
+ * A preemption is noticed either by the periodic status sweep of {@link JCloudsNodeInventoryRefresher},
+ * or by the agent itself, calling the phone home webhook with the parameter {@code event=preempted}
+ * (e.g. from a shutdown script). Because the webhook is unauthenticated, such a notice is confirmed
+ * with the provider first.
+ * <p>
+ * A preempted agent is taken offline right away. Builds running on it are aborted and scheduled again,
+ * its template is cooled down in the template pool of the cloud, so that replacements are provisioned
+ * from other templates or the configured fallback template, and finally the agent is removed.
+ */
+public final class JCloudsPreemptionHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsPreemptionHandler.class.getName());
+
+    private JCloudsPreemptionHandler() {}
+
+    /**
+     * Handles a preemption notice sent by an agent.
+     * @param hostName The hostname of the agent.
+     * @return {@code true} if the hostname belongs to an agent of a preemptible template.
+     */
+    public static boolean notifyPreempted(final String hostName) {
+        final JCloudsSlave slave = JCloudsAgentRegistry.getByHostName(hostName);
+        final JCloudsCloud cloud = null == slave ? null : JCloudsCloud.getByName(slave.getCloudName());
+        if (null == cloud || !isPreemptible(cloud, slave)) {
+            return false;
+        }
+        cloud.getProvisioningExecutor().getService().execute(() -> confirm(cloud, slave));
+        return true;
+    }
+
+    private static void confirm(final JCloudsCloud cloud, final JCloudsSlave slave) {
+        try {
+            final NodeMetadata nm = cloud.getCompute().getNodeMetadata(slave.getNodeId());
+            if (null == nm || NodeMetadata.Status.RUNNING != nm.getStatus()) {
+                handle(cloud, slave, "reported by the agent");
+            } else {
+                LOGGER.warning(String.format(
+                        "Ignoring preemption notice of agent %s, because its node is still running",
+                        slave.getNodeName()));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to confirm preemption of agent " + slave.getNodeName(), e);
+        }
+    }
+
+    /**
+     * Checks the status of all agents of preemptible templates of a cloud.
+     * Uses the node inventory, so usually no extra call to the provider is necessary.
+     * @param cloud The cloud to check.
+     */
+    static void sweep(final JCloudsCloud cloud) {
+        final List<JCloudsSlave> candidates = new ArrayList<>();
+        for (JCloudsSlave slave : JCloudsAgentRegistry.getAll()) {
+            if (cloud.name.equals(slave.getCloudName())
+                    && !slave.isPendingDelete()
+                    && !slave.isPreempted()
+                    && !slave.isTerminating()
+                    && isPreemptible(cloud, slave)) {
+                candidates.add(slave);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        final NodeInventory.Snapshot snapshot = cloud.getNodeInventory().get();
+        for (JCloudsSlave slave : candidates) {
+            final NodeMetadata nm = snapshot.getNode(slave.getNodeId());
+            if (null != nm && !NodeInventory.Snapshot.isActive(nm) && !slave.isTerminating()) {
+                handle(cloud, slave, "detected by status sweep");
+            }
+        }
+    }
+
+    private static boolean isPreemptible(final JCloudsCloud cloud, final JCloudsSlave slave) {
+        final JCloudsSlaveTemplate tpl = cloud.getTemplate(slave.getTemplateName());
+        return null != tpl && tpl.isPreemptible;
+    }
+
+    static void handle(final JCloudsCloud cloud, final JCloudsSlave slave, final String how) {
+        if (!slave.markPreempted()) {
+            return;
+        }
+        LOGGER.warning(String.format("Agent %s has been preempted (%s)", slave.getNodeName(), how));
+        final Computer c = slave.toComputer();
+        if (null != c) {
+            c.setTemporaryOfflineCause(OfflineCause.create(Messages._PREEMPTED_CAUSE()));
+            requeue(c, slave.getNodeName());
+        }
+        final JCloudsSlaveTemplate tpl = cloud.getTemplate(slave.getTemplateName());
+        if (null != tpl) {
+            cloud.getTemplatePool().failed(tpl, true);
+            // Let NodeProvisioner plan the replacements right now instead of at its next regular review.
+            Jenkins.get().unlabeledNodeProvisioner.suggestReviewNow();
+            for (LabelAtom l : tpl.getLabelSet()) {
+                l.nodeProvisioner.suggestReviewNow();
+            }
+        }
+        cloud.getProvisioningExecutor().getService().execute(() -> remove(slave));
+    }
+
+    /**
+     * Aborts all builds running on a computer. Builds of jobs are scheduled again, keeping their parameters.
+     * Pipelines notice the removal of the agent by themselves and may retry their node block.
+     */
+    private static void requeue(final Computer c, final String nodeName) {
+        for (Executor e : c.getAllExecutors()) {
+            final Queue.Executable exe = e.getCurrentExecutable();
+            if (null == exe) {
+                continue;
+            }
+            if (exe instanceof Run) {
+                final Run<?, ?> r = (Run<?, ?>) exe;
+                final Job<?, ?> job = r.getParent();
+                e.interrupt(Result.ABORTED, new PreemptedInterruption(nodeName));
+                if (job instanceof Queue.Task) {
+                    final List<Action> actions = new ArrayList<>();
+                    actions.add(new CauseAction(new PreemptedCause(nodeName, r.getFullDisplayName())));
+                    final ParametersAction pa = r.getAction(ParametersAction.class);
+                    if (null != pa) {
+                        actions.add(pa);
+                    }
+                    Jenkins.get().getQueue().schedule2((Queue.Task) job, 0, actions);
+                    LOGGER.info(
+                            String.format("Scheduled %s again after preemption of %s", job.getFullName(), nodeName));
+                }
+            }
+        }
+    }
+
+    private static void remove(final JCloudsSlave slave) {
+        try {
+            // Also removes the agent from Jenkins.
+            slave.terminate();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to remove preempted agent " + slave.getNodeName(), e);
+        }
+    }
+
+    /**
+     * The cause of a build which has been scheduled again, because its agent was preempted.
+     */
+    public static final class PreemptedCause extends Cause {
+        private final String nodeName;
+        private final String run;
+
+        public PreemptedCause(final String nodeName, final String run) {
+            this.nodeName = nodeName;
+            this.run = run;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return String.format("Restarted %s after agent %s was preempted", run, nodeName);
+        }
+    }
+
+    /**
+     * The cause of the abortion of a build, whose agent was preempted.
+     */
+    public static final class PreemptedInterruption extends CauseOfInterruption {
+        private static final long serialVersionUID = 1L;
+
+        private final String nodeName;
+
+        public PreemptedInterruption(final String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return String.format("Agent %s was preempted by the cloud provider", nodeName);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package jenkins.plugins.jclouds.compute;
 import hudson.model.Descriptor;
 import hudson.slaves.OfflineCause;
 import hudson.slaves.RetentionStrategy;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
@@ -79,11 +80,11 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
                             final int retentionTime = c.getRetentionTime();
                             if (retentionTime > -1) {
                                 final long idleMilliseconds = System.currentTimeMillis() - c.getIdleStartMilliseconds();
-                                if (idleMilliseconds > TimeUnit.MINUTES.toMillis(retentionTime)) {
+                                if (idleMilliseconds > TimeUnit.MINUTES.toMillis(retentionTime)
+                                        && releaseFromWarmPool(node)) {
                                     LOGGER.info(String.format(
                                             "Retention time of %d min for %s has expired.",
                                             retentionTime, c.getName()));
-                                    node.setPendingDelete(true);
                                     fastTerminate(c);
                                 }
                             }
@@ -97,6 +98,19 @@ public class JCloudsRetentionStrategy extends RetentionStrategy<JCloudsComputer>
         return 1;
     }
 
+    /**
+     * Marks an agent whose retention time has expired for deletion, unless it is needed for the warm pool.
+     * @return {@code true} if the agent has been marked for deletion.
+     */
+    private static boolean releaseFromWarmPool(final JCloudsSlave node) {
+        final JCloudsCloud cloud = JCloudsCloud.getByName(node.getCloudName());
+        if (null == cloud) {
+            node.setPendingDelete(true);
+            return true;
+        }
+        return !cloud.getWarmPool().release(Collections.singletonList(node)).isEmpty();
+    }
+
     /**
      * Try to connect to it ASAP.
      */
@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -65,6 +66,7 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
     public final boolean stopOnTerminate;
     private final String cloudName;
     private String nodeId;
+    private String hostName;
     private boolean pendingDelete;
     private boolean waitPhoneHome;
     private Integer overrideRetentionTime;
@@ -81,6 +83,9 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
     private String jnlpProvisioningNonce;
 
     private transient PhoneHomeMonitor phm;
+    private transient volatile boolean preempted;
+    private transient volatile boolean terminating;
+    private transient volatile boolean terminated;
 
     @DataBoundConstructor
     @SuppressWarnings("rawtypes")
@@ -212,6 +217,7 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
                 jnlpProvisioningNonce);
         this.nodeMetaData = metadata;
         this.nodeId = nodeMetaData.getId();
+        this.hostName = nodeMetaData.getHostname();
     }
 
     public JCloudsSlave(
@@ -437,6 +443,31 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         return cloudName;
     }
 
+    /**
+     * Get the id of the node in the cloud.
+     *
+     * @return nodeId
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Get the hostname of the node, as reported by the provider.
+     *
+     * @return The hostname or {@code null} if unknown.
+     */
+    public String getHostName() {
+        if (null == hostName && null != nodeMetaData) {
+            hostName = nodeMetaData.getHostname();
+        }
+        return hostName;
+    }
+
+    void setHostName(final String value) {
+        hostName = value;
+    }
+
     public boolean isPendingDelete() {
         return pendingDelete;
     }
@@ -495,6 +526,56 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
         return provisioningId;
     }
 
+    /**
+     * Get the name of the template this agent was provisioned from.
+     *
+     * @return The template name or {@code null} if unknown.
+     */
+    @CheckForNull
+    public String getTemplateName() {
+        return null == provisioningId ? null : provisioningId.getTemplateName();
+    }
+
+    /**
+     * Marks this agent as preempted by the cloud provider. Its node is destroyed on termination,
+     * even if the template would suspend it.
+     * @return {@code true} if the agent was not marked before.
+     */
+    synchronized boolean markPreempted() {
+        if (preempted) {
+            return false;
+        }
+        preempted = true;
+        return true;
+    }
+
+    public boolean isPreempted() {
+        return preempted;
+    }
+
+    /**
+     * @return {@code true} if the node of this agent is being terminated or suspended.
+     */
+    boolean isTerminating() {
+        return terminating;
+    }
+
+    void markTerminating() {
+        terminating = true;
+    }
+
+    /**
+     * Records that the node of this agent has already been terminated or suspended by a
+     * {@link BatchTermination}, so that {@link #_terminate} does not contact the provider again.
+     */
+    void setTerminated() {
+        terminated = true;
+    }
+
+    boolean isTerminated() {
+        return terminated;
+    }
+
     @Extension
     public static final class JCloudsSlaveDescriptor extends SlaveDescriptor {
 
@@ -516,34 +597,75 @@ public class JCloudsSlave extends AbstractCloudSlave implements TrackedItem {
      * Destroy the node.
      * If stopOnTerminate is {@code true}, calls {@link ComputeService#suspendNode},
      * otherwise {@link ComputeService#destroyNode}.
+     * If the cloud uses asynchronous termination, the request is sent without waiting for its completion.
      */
     @Override
     protected void _terminate(TaskListener listener) throws IOException, InterruptedException {
-        final ComputeService compute = JCloudsCloud.getByName(cloudName).getCompute();
-        if (compute.getNodeMetadata(nodeId) != null
+        terminating = true;
+        if (terminated) {
+            LOGGER.fine("Node " + getNodeName() + " has been terminated by the cleanup thread.");
+            completed();
+            return;
+        }
+        final JCloudsCloud cloud = JCloudsCloud.getByName(cloudName);
+        if (cloud.getAsyncTermination()) {
+            LOGGER.info("Requesting termination of node: " + getNodeName());
+            if (stopOnTerminate && !preempted) {
+                cloud.terminateAsync(
+                        Collections.singleton(nodeId),
+                        Collections.emptySet(),
+                        Collections.singletonMap(nodeId, jnlpProvisioningNonce));
+            } else {
+                cloud.terminateAsync(Collections.emptySet(), Collections.singleton(nodeId), Collections.emptyMap());
+            }
+            completed();
+            return;
+        }
+        final ComputeService compute = cloud.getCompute();
+        if (preempted) {
+            // The provider has stopped the node, but it still occupies resources.
+            LOGGER.info("Destroying preempted node: " + getNodeName());
+            compute.destroyNode(nodeId);
+            cloud.invalidateNodeInventory();
+        } else if (compute.getNodeMetadata(nodeId) != null
                 && compute.getNodeMetadata(nodeId).getStatus().equals(NodeMetadata.Status.RUNNING)) {
             if (stopOnTerminate) {
                 LOGGER.info("Suspending node: " + getNodeName());
                 compute.suspendNode(nodeId);
+                cloud.getSuspendedTier().suspended(nodeId, jnlpProvisioningNonce);
             } else {
                 LOGGER.info("Terminating node: " + getNodeName());
                 compute.destroyNode(nodeId);
             }
+            cloud.invalidateNodeInventory();
         } else {
             LOGGER.info("Node " + getNodeName() + " is already terminated.");
         }
+        completed();
+    }
+
+    private void completed() {
         ProvisioningActivity activity = CloudStatistics.get().getActivityFor(this);
         if (activity != null) {
             activity.enterIfNotAlready(ProvisioningActivity.Phase.COMPLETED);
         }
     }
 
+    /**
+     * Waits asynchronously until this agent has phoned home.
+     * @param logger An optional PrintStream for progress messages.
+     * @return A future which completes as soon as the agent has phoned home
+     * and fails if the wait has timed out or was interrupted.
+     */
+    public CompletableFuture<Void> whenPhonedHome(PrintStream logger) {
+        return phm.whenPhonedHome(getNodeName(), logger).whenComplete((v, t) -> {
+            if (null != t) {
+                setWaitPhoneHome(false);
+            }
+        });
+    }
+
     public void waitForPhoneHome(PrintStream logger) throws InterruptedException {
-        try {
-            phm.waitForPhoneHome(getNodeName(), logger);
-        } catch (InterruptedException e) {
-            setWaitPhoneHome(false);
-            throw e;
-        }
+        PhoneHomeMonitor.await(whenPhonedHome(logger));
     }
 }
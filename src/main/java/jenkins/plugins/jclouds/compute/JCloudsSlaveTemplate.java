@@ -32,8 +32,6 @@ import com.cloudbees.plugins.credentials.common.StandardUsernameListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
-import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.trilead.ssh2.Connection;
@@ -69,7 +67,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -78,23 +75,27 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
 import jenkins.plugins.jclouds.compute.internal.JCloudsNodeMetadata;
+import jenkins.plugins.jclouds.compute.internal.NodeBatch;
+import jenkins.plugins.jclouds.compute.internal.ProviderCatalog;
+import jenkins.plugins.jclouds.compute.internal.TemplateResolution;
 import jenkins.plugins.jclouds.config.ConfigHelper;
+import jenkins.plugins.jclouds.config.UserDataCache;
 import jenkins.plugins.jclouds.internal.CredentialsHelper;
 import jenkins.plugins.jclouds.internal.SSHPublicKeyExtractor;
 import net.sf.json.JSONObject;
 import org.apache.commons.codec.binary.Base64;
 import org.jclouds.aws.ec2.compute.AWSEC2TemplateOptions;
 import org.jclouds.cloudstack.compute.options.CloudStackTemplateOptions;
+import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.RunNodesException;
 import org.jclouds.compute.domain.Image;
 import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jclouds.compute.domain.OsFamily;
 import org.jclouds.compute.domain.Template;
 import org.jclouds.compute.domain.TemplateBuilder;
 import org.jclouds.compute.options.TemplateOptions;
-import org.jclouds.digitalocean2.DigitalOcean2Api;
 import org.jclouds.digitalocean2.compute.options.DigitalOcean2TemplateOptions;
-import org.jclouds.digitalocean2.domain.Key;
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.googlecomputeengine.compute.options.GoogleComputeEngineTemplateOptions;
 import org.jclouds.openstack.nova.v2_0.compute.options.NovaTemplateOptions;
@@ -105,6 +106,7 @@ import org.jclouds.scriptbuilder.statements.login.AdminAccess;
 import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.HttpRedirect;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.QueryParameter;
@@ -119,6 +121,10 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
 
     private static final Logger LOGGER = Logger.getLogger(JCloudsSlaveTemplate.class.getName());
     private static final char SEPARATOR_CHAR = ',';
+    private static final long RESOLUTION_TTL =
+            CloudInstanceDefaults.DEFAULT_TEMPLATE_RESOLUTION_TTL_IN_MINUTES * 60 * 1000L;
+    private static final long FRESH_CATALOG_AGE = 60 * 1000L;
+    private static final int DEFAULT_LAUNCH_TIMEOUT = 5 * 60;
 
     public final String name;
     public final String imageId;
@@ -179,9 +185,17 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
     private final String preferredAddress;
     private final boolean useJnlp;
     private final boolean jnlpProvision;
+    private int minIdleInstances;
+    private int launchTimeout;
+    private boolean predictiveProvisioning;
+    private int poolWeight;
+    private int poolPriority;
+    private String preemptionFallback;
 
     private transient JCloudsCloud cloud;
     private transient Set<LabelAtom> labelSet;
+    private transient volatile TemplateResolution resolution;
+    private transient volatile UserDataCache userDataCache;
 
     public String getCredentialsId() {
         return credentialsId;
@@ -215,6 +229,83 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
         return jnlpProvision;
     }
 
+    public int getMinIdleInstances() {
+        return minIdleInstances;
+    }
+
+    @DataBoundSetter
+    public void setMinIdleInstances(final int value) {
+        minIdleInstances = Math.max(0, value);
+    }
+
+    /**
+     * Get the launch timeout in seconds or the default value if it is zero.
+     * @return The time in seconds, a new agent may take to come online.
+     */
+    public int getLaunchTimeout() {
+        return launchTimeout <= 0 ? DEFAULT_LAUNCH_TIMEOUT : launchTimeout;
+    }
+
+    @DataBoundSetter
+    public void setLaunchTimeout(final int value) {
+        launchTimeout = Math.max(0, value);
+    }
+
+    /**
+     * Whether agents are provisioned ahead of the demand predicted from the history of this template.
+     * @see JCloudsPredictiveProvisioner
+     */
+    public boolean isPredictiveProvisioning() {
+        return predictiveProvisioning;
+    }
+
+    @DataBoundSetter
+    public void setPredictiveProvisioning(final boolean value) {
+        predictiveProvisioning = value;
+    }
+
+    /**
+     * Get the weight of this template among the templates with the same label and priority.
+     * @return The weight or 1 if it is zero.
+     */
+    public int getPoolWeight() {
+        return poolWeight <= 0 ? 1 : poolWeight;
+    }
+
+    @DataBoundSetter
+    public void setPoolWeight(final int value) {
+        poolWeight = Math.max(0, value);
+    }
+
+    /**
+     * Get the priority of this template among the templates with the same label.
+     * Templates with a lower value are used first, the others only if those are failing.
+     * @return The priority.
+     */
+    public int getPoolPriority() {
+        return poolPriority;
+    }
+
+    @DataBoundSetter
+    public void setPoolPriority(final int value) {
+        poolPriority = Math.max(0, value);
+    }
+
+    /**
+     * Get the name of the template which replaces this one while it is cooling down after a preemption.
+     * @return The template name or {@code null} if replacements use this template as well.
+     * @see JCloudsPreemptionHandler
+     */
+    @CheckForNull
+    public String getPreemptionFallback() {
+        return preemptionFallback;
+    }
+
+    @DataBoundSetter
+    public void setPreemptionFallback(final String value) {
+        preemptionFallback = Util.fixEmptyAndTrim(value);
+    }
+
     public @NonNull String getUrl() {
         return "template/" + Util.rawEncode(name) + "/";
     }
@@ -400,8 +491,21 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
 
     public JCloudsSlave provisionSlave(TaskListener listener, ProvisioningActivity.Id provisioningId)
             throws IOException {
-        JCloudsNodeMetadata nmd = get();
+        return provisionSlave(listener, provisioningId, get());
+    }
 
+    /**
+     * Creates the agent for an already provisioned node.
+     *
+     * @param listener The listener for progress output.
+     * @param provisioningId The cloud-stats id of this provisioning.
+     * @param nmd The metadata of the already created node.
+     * @return The new agent.
+     * @throws IOException if an error occurs.
+     */
+    public JCloudsSlave provisionSlave(
+            TaskListener listener, ProvisioningActivity.Id provisioningId, JCloudsNodeMetadata nmd)
+            throws IOException {
         try {
             return new JCloudsSlave(
                     provisioningId,
@@ -437,6 +541,20 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
         return ret;
     }
 
+    private UserDataCache getUserDataCache() {
+        UserDataCache ret = userDataCache;
+        if (null == ret) {
+            synchronized (this) {
+                ret = userDataCache;
+                if (null == ret) {
+                    ret = new UserDataCache();
+                    userDataCache = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
     private void setUserData(@NonNull final TemplateOptions options, @Nullable final byte[] udata, boolean isZipped) {
         if (null != udata) {
             final String sudata = new String(udata, StandardCharsets.UTF_8);
@@ -469,280 +587,386 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
      */
     @Override
     public JCloudsNodeMetadata get() {
+        return getOnlyElement(createNodes(1).getNodes());
+    }
+
+    /**
+     * Provisions multiple nodes using a single call to the cloud provider.
+     * All nodes of a batch share the same nonce. If only some of the requested nodes
+     * could be created, the failed ones are destroyed and the returned batch contains
+     * the successfully created nodes along with the cause of the failure.
+     *
+     * @param count The number of nodes to create.
+     * @return The batch of created nodes.
+     * @throws RuntimeException if not a single node could be created.
+     */
+    public NodeBatch createNodes(final int count) {
         final String nonce = generateNonce();
+        final String group = getCloud().prependGroupPrefix(name);
         boolean brokenImageCacheHasThrown = false;
-        JCloudsNodeMetadata nmd = null;
-
-        do {
-            LOGGER.info("Provisioning new jclouds node");
-            ImmutableMap<String, String> userMetadata = ImmutableMap.of("Name", name);
-            TemplateBuilder templateBuilder = getCloud().getCompute().templateBuilder();
-            if (!isNullOrEmpty(imageId)) {
-                LOGGER.info("Setting image id to " + imageId);
-                templateBuilder.imageId(imageId);
-            } else if (!isNullOrEmpty(imageNameRegex)) {
-                if (brokenImageCacheHasThrown) {
-                    LOGGER.info("Resolving image name regex " + imageNameRegex);
-                    // We do NOT use templateBuilder.imageNameMatches(imageNameRegex),
-                    // because the corresponding image id gets cached for a LOOONG time
-                    // and we do not want that. Therefore we always search for images
-                    // ourselves and then use the Id of a found image. To work around
-                    // caching, we need to do this using a freshly instantiated
-                    // ComputeService.
-                    // See: https://issues.apache.org/jira/browse/JCLOUDS-570
-                    // and: https://issues.apache.org/jira/browse/JCLOUDS-512
-                    // for some insight.
-                    boolean foundAny = true;
-                    for (Image i : getCloud().newCompute().listImages()) {
-                        if (i.getName().matches(imageNameRegex)) {
-                            LOGGER.info("Setting image id to " + i.getId());
-                            templateBuilder.imageId(i.getId());
-                            foundAny = true;
-                            break;
+        final List<JCloudsNodeMetadata> nodes = new ArrayList<>();
+        Throwable failure = null;
+
+        try {
+            do {
+                final int remaining = count - nodes.size();
+                if (1 < remaining) {
+                    LOGGER.info(String.format("Provisioning %d new jclouds nodes", remaining));
+                } else {
+                    LOGGER.info("Provisioning new jclouds node");
+                }
+                Template template = buildTemplate(nonce, brokenImageCacheHasThrown);
+                try {
+                    for (NodeMetadata nm : getCloud().getCompute().createNodesInGroup(group, remaining, template)) {
+                        nodes.add(JCloudsNodeMetadata.fromNodeMetadata(nm, nonce));
+                    }
+                    brokenImageCacheHasThrown = false;
+                } catch (RunNodesException e) {
+                    invalidateResolvedTemplate();
+                    for (NodeMetadata nm : e.getSuccessfulNodes()) {
+                        nodes.add(JCloudsNodeMetadata.fromNodeMetadata(nm, nonce));
+                    }
+                    boolean throwNow = true;
+                    if (!(isNullOrEmpty(imageNameRegex) || brokenImageCacheHasThrown)) {
+                        Map<?, ? extends Throwable> xmap = e.getExecutionErrors();
+                        for (Throwable t : xmap.values()) {
+                            if (t.getMessage().contains("Image")) {
+                                LOGGER.fine("Exception message MATCHED: '" + t.getMessage() + "'");
+                                brokenImageCacheHasThrown = true;
+                                throwNow = false;
+                                destroyBadNodes(e);
+                                break;
+                            }
+                            LOGGER.fine("Exception message NOT MATCHED: '" + t.getMessage() + "'");
                         }
                     }
-                    if (!foundAny) {
-                        throw new RuntimeException("No matching image available");
+                    if (throwNow) {
+                        destroyBadNodes(e);
+                        if (nodes.isEmpty()) {
+                            throw new RuntimeException(e);
+                        }
+                        LOGGER.warning(String.format(
+                                "Only %d of %d nodes could be created: %s", nodes.size(), count, e.getMessage()));
+                        failure = e;
+                        brokenImageCacheHasThrown = false;
                     }
-                } else {
-                    LOGGER.info("Setting image name regex to " + imageNameRegex);
-                    templateBuilder.imageNameMatches(imageNameRegex);
-                }
-            } else {
-                if (!isNullOrEmpty(osFamily)) {
-                    LOGGER.info("Setting osFamily to " + osFamily);
-                    templateBuilder.osFamily(OsFamily.fromValue(osFamily));
-                }
-                if (!isNullOrEmpty(osVersion)) {
-                    LOGGER.info("Setting osVersion to " + osVersion);
-                    templateBuilder.osVersionMatches(osVersion);
                 }
-            }
-            if (!isNullOrEmpty(hardwareId)) {
-                LOGGER.info("Setting hardware Id to " + hardwareId);
-                templateBuilder.hardwareId(hardwareId);
-            } else {
-                LOGGER.info("Setting minRam " + ram + " and minCores " + cores);
-                templateBuilder.minCores(cores).minRam(ram);
-            }
-            if (!isNullOrEmpty(locationId)) {
-                LOGGER.info("Setting location Id to " + locationId);
-                templateBuilder.locationId(locationId);
-            }
+            } while (brokenImageCacheHasThrown && nodes.size() < count);
+        } finally {
+            getCloud().invalidateNodeInventory();
+        }
 
-            Template template = templateBuilder.build();
-            TemplateOptions options = template.getOptions();
+        return new NodeBatch(count, nodes, failure);
+    }
 
-            if (!isNullOrEmpty(networks)) {
-                if (networks.startsWith("subnet-") && options instanceof AWSEC2TemplateOptions) {
-                    LOGGER.info("Setting AWS EC2 subnetId to " + networks);
-                    options.as(AWSEC2TemplateOptions.class).subnetId(networks);
-                } else {
-                    LOGGER.info("Setting networks to " + networks);
-                    options.networks(csvToArray(networks));
+    /**
+     * Builds a template, reusing a previous resolution of image, hardware and location if possible.
+     */
+    private Template buildTemplate(final String nonce, final boolean brokenImageCacheHasThrown) {
+        final String key = getSelectionKey();
+        Template template = null;
+        TemplateResolution r = resolution;
+        if (!brokenImageCacheHasThrown && null != r && r.isValid(key, RESOLUTION_TTL)) {
+            try {
+                TemplateBuilder templateBuilder = getCloud().getCompute().templateBuilder().imageId(r.getImageId());
+                templateBuilder.hardwareId(r.getHardwareId());
+                if (null != r.getLocationId()) {
+                    templateBuilder.locationId(r.getLocationId());
                 }
+                template = templateBuilder.build();
+                LOGGER.fine("Reusing resolved template of " + name);
+            } catch (RuntimeException e) {
+                LOGGER.info(String.format("Resolved template of %s is not usable anymore: %s", name, e.getMessage()));
+                resolution = null;
             }
+        }
+        if (null == template) {
+            template = resolveTemplate(brokenImageCacheHasThrown);
+            resolution = TemplateResolution.of(key, template);
+        }
+        return applyTemplateOptions(template, nonce);
+    }
 
-            if (!isNullOrEmpty(securityGroups)) {
-                LOGGER.info("Setting security groups to " + securityGroups);
-                options.securityGroups(csvToArray(securityGroups));
-            }
+    /**
+     * Discards a remembered resolution of image, hardware and location,
+     * so that the next provisioning resolves them again.
+     */
+    public void invalidateResolvedTemplate() {
+        resolution = null;
+    }
 
-            if (useConfigDrive && options instanceof NovaTemplateOptions) {
-                options.as(NovaTemplateOptions.class).configDrive(true);
-            }
+    private String getSelectionKey() {
+        return String.join(
+                "|",
+                Util.fixNull(imageId),
+                Util.fixNull(imageNameRegex),
+                Util.fixNull(osFamily),
+                Util.fixNull(osVersion),
+                Util.fixNull(hardwareId),
+                String.valueOf(cores),
+                String.valueOf(ram),
+                Util.fixNull(locationId));
+    }
 
-            if (!isNullOrEmpty(keyPairName)) {
-                if (options instanceof NovaTemplateOptions) {
-                    LOGGER.info("Setting OpenStack keyPairName to: " + keyPairName);
-                    options.as(NovaTemplateOptions.class).keyPairName(keyPairName);
-                } else if (options instanceof CloudStackTemplateOptions) {
-                    LOGGER.info("Setting CloudStack keyPairName to: " + keyPairName);
-                    options.as(CloudStackTemplateOptions.class).keyPair(keyPairName);
-                } else if (options instanceof AWSEC2TemplateOptions) {
-                    LOGGER.info("Setting AWS EC2 keyPairName to: " + keyPairName);
-                    options.as(AWSEC2TemplateOptions.class).keyPair(keyPairName);
-                } else if (options instanceof DigitalOcean2TemplateOptions) {
-                    // DigitalOcean does it different:
-                    // They use key Ids (ints) and provide an api for listing them. So we have
-                    // to find the named key in the list and use its numeric id.
-                    try (DigitalOcean2Api do2api = getCloud().newApi(DigitalOcean2Api.class)) {
-                        Optional<Key> key = do2api.keyApi().list().concat().firstMatch(new Predicate<Key>() {
-                            @Override
-                            public boolean apply(final Key k) {
-                                return null != k && keyPairName.equals(k.name());
-                            }
-                        });
-                        if (key.isPresent()) {
-                            Key k = key.get();
-                            LOGGER.info(
-                                    String.format("Setting DigitalOcean keyPairName to %s (%d)", keyPairName, k.id()));
-                            List<Integer> kids = new ArrayList<>();
-                            kids.add(Integer.valueOf(k.id()));
-                            options.as(DigitalOcean2TemplateOptions.class)
-                                    .sshKeyIds(kids)
-                                    .autoCreateKeyPair(false);
-                        } else {
-                            LOGGER.warning(String.format("The specified keyPairName %s does not exist", keyPairName));
-                        }
-                    } catch (IOException x) {
-                        throw new IllegalArgumentException("Could not fetch list of keys", x);
-                    }
+    private Template resolveTemplate(final boolean brokenImageCacheHasThrown) {
+        TemplateBuilder templateBuilder = getCloud().getCompute().templateBuilder();
+        if (!isNullOrEmpty(imageId)) {
+            LOGGER.info("Setting image id to " + imageId);
+            templateBuilder.imageId(imageId);
+        } else if (!isNullOrEmpty(imageNameRegex)) {
+            if (brokenImageCacheHasThrown) {
+                LOGGER.info("Resolving image name regex " + imageNameRegex);
+                // We do NOT use templateBuilder.imageNameMatches(imageNameRegex),
+                // because the corresponding image id gets cached for a LOOONG time
+                // and we do not want that. Therefore we search for images in the
+                // provider catalog and then use the Id of a found image. The catalog
+                // is fetched using a freshly instantiated ComputeService, so it is
+                // not affected by that caching. It is refreshed, if it is older than a minute.
+                // See: https://issues.apache.org/jira/browse/JCLOUDS-570
+                // and: https://issues.apache.org/jira/browse/JCLOUDS-512
+                // for some insight.
+                List<Image> matches = getCloud()
+                        .getProviderCatalog()
+                        .getNotOlderThan(FRESH_CATALOG_AGE)
+                        .findImages(imageNameRegex);
+                if (matches.isEmpty()) {
+                    throw new RuntimeException("No matching image available");
                 }
+                LOGGER.info("Setting image id to " + matches.get(0).getId());
+                templateBuilder.imageId(matches.get(0).getId());
+            } else {
+                LOGGER.info("Setting image name regex to " + imageNameRegex);
+                templateBuilder.imageNameMatches(imageNameRegex);
             }
-
-            if (options instanceof GoogleComputeEngineTemplateOptions) {
-                // Always use our own credentials and let creation fail
-                // if no keys are provided.
-                options.as(GoogleComputeEngineTemplateOptions.class).autoCreateKeyPair(false);
-                options.as(GoogleComputeEngineTemplateOptions.class).preemptible(isPreemptible);
-                // On GCE, public IPs are default.
-                options.as(GoogleComputeEngineTemplateOptions.class).assignExternalIp(assignPublicIp);
-            }
-
-            if (assignPublicIp && options instanceof NovaTemplateOptions) {
-                LOGGER.info("Setting autoAssignFloatingIp to true");
-                options.as(NovaTemplateOptions.class).autoAssignFloatingIp(true);
+        } else {
+            if (!isNullOrEmpty(osFamily)) {
+                LOGGER.info("Setting osFamily to " + osFamily);
+                templateBuilder.osFamily(OsFamily.fromValue(osFamily));
             }
-            if (options instanceof CloudStackTemplateOptions) {
-                LOGGER.info(String.format("Setting CloudStack setupStaticNat to %b", assignPublicIp));
-                options.as(CloudStackTemplateOptions.class).setupStaticNat(assignPublicIp);
+            if (!isNullOrEmpty(osVersion)) {
+                LOGGER.info("Setting osVersion to " + osVersion);
+                templateBuilder.osVersionMatches(osVersion);
             }
+        }
+        if (!isNullOrEmpty(hardwareId)) {
+            LOGGER.info("Setting hardware Id to " + hardwareId);
+            templateBuilder.hardwareId(hardwareId);
+        } else {
+            LOGGER.info("Setting minRam " + ram + " and minCores " + cores);
+            templateBuilder.minCores(cores).minRam(ram);
+        }
+        if (!isNullOrEmpty(locationId)) {
+            LOGGER.info("Setting location Id to " + locationId);
+            templateBuilder.locationId(locationId);
+        }
 
-            if (null != adminCredentialsId) {
-                LOGGER.info("Setting adminCredentialsId to " + adminCredentialsId);
-                String adminUser = getAdminUser();
-                StandardUsernameCredentials c = CredentialsHelper.getCredentialsById(adminCredentialsId);
-                if (null != c) {
-                    if (c instanceof StandardUsernamePasswordCredentials) {
-                        LOGGER.info("Using username/password as adminCredentials");
-                        String password =
-                                CredentialsHelper.getPassword(((StandardUsernamePasswordCredentials) c).getPassword());
-                        LoginCredentials lc = LoginCredentials.builder()
-                                .user(adminUser)
-                                .password(password)
-                                .build();
-                        options.overrideLoginCredentials(lc);
-                    } else {
-                        LOGGER.info("Using username/privatekey as adminCredentials");
-                        String privateKey = CredentialsHelper.getPrivateKey((SSHUserPrivateKey) c);
-                        LoginCredentials lc = LoginCredentials.builder()
-                                .user(adminUser)
-                                .privateKey(privateKey)
-                                .build();
-                        options.overrideLoginCredentials(lc);
-                    }
-                }
-            }
+        return templateBuilder.build();
+    }
 
-            if (spoolDelayMs > 0) {
-                // (JENKINS-15970) Add optional delay before spooling. Author: Adam Rofer
-                synchronized (delayLockObject) {
-                    LOGGER.info(
-                            "Delaying " + spoolDelayMs + " milliseconds. Current ms -> " + System.currentTimeMillis());
-                    try {
-                        delayLockObject.wait(spoolDelayMs);
-                    } catch (InterruptedException e) {
-                        LOGGER.warning(e.getMessage());
-                    }
-                }
+    private Template applyTemplateOptions(final Template template, final String nonce) {
+        ImmutableMap<String, String> userMetadata = ImmutableMap.of("Name", name);
+        TemplateOptions options = template.getOptions();
+
+        if (!isNullOrEmpty(networks)) {
+            if (networks.startsWith("subnet-") && options instanceof AWSEC2TemplateOptions) {
+                LOGGER.info("Setting AWS EC2 subnetId to " + networks);
+                options.as(AWSEC2TemplateOptions.class).subnetId(networks);
+            } else {
+                LOGGER.info("Setting networks to " + networks);
+                options.networks(csvToArray(networks));
             }
+        }
+
+        if (!isNullOrEmpty(securityGroups)) {
+            LOGGER.info("Setting security groups to " + securityGroups);
+            options.securityGroups(csvToArray(securityGroups));
+        }
 
-            Statement initStatement = null;
+        if (useConfigDrive && options instanceof NovaTemplateOptions) {
+            options.as(NovaTemplateOptions.class).configDrive(true);
+        }
 
-            final String initscript = ConfigHelper.getConfig(initScriptId);
-            if (this.preExistingJenkinsUser) {
-                if (!initscript.isEmpty()) {
-                    initStatement = Statements.exec(initscript);
+        if (!isNullOrEmpty(keyPairName)) {
+            if (options instanceof NovaTemplateOptions) {
+                LOGGER.info("Setting OpenStack keyPairName to: " + keyPairName);
+                options.as(NovaTemplateOptions.class).keyPairName(keyPairName);
+            } else if (options instanceof CloudStackTemplateOptions) {
+                LOGGER.info("Setting CloudStack keyPairName to: " + keyPairName);
+                options.as(CloudStackTemplateOptions.class).keyPair(keyPairName);
+            } else if (options instanceof AWSEC2TemplateOptions) {
+                LOGGER.info("Setting AWS EC2 keyPairName to: " + keyPairName);
+                options.as(AWSEC2TemplateOptions.class).keyPair(keyPairName);
+            } else if (options instanceof DigitalOcean2TemplateOptions) {
+                // DigitalOcean does it different:
+                // They use key Ids (ints) and provide an api for listing them. So we have
+                // to find the named key in the list and use its numeric id.
+                // The list of keys is part of the provider catalog. If the key is not found,
+                // it might have been created recently, so the catalog is refreshed once.
+                final ProviderCatalog catalog = getCloud().getProviderCatalog();
+                Integer kid = catalog.get().getKeyId(keyPairName);
+                if (null == kid) {
+                    kid = catalog.getNotOlderThan(FRESH_CATALOG_AGE).getKeyId(keyPairName);
+                }
+                if (null != kid) {
+                    LOGGER.info(String.format("Setting DigitalOcean keyPairName to %s (%d)", keyPairName, kid));
+                    List<Integer> kids = new ArrayList<>();
+                    kids.add(kid);
+                    options.as(DigitalOcean2TemplateOptions.class)
+                            .sshKeyIds(kids)
+                            .autoCreateKeyPair(false);
+                } else {
+                    LOGGER.warning(String.format("The specified keyPairName %s does not exist", keyPairName));
                 }
-            } else {
-                // provision jenkins user
-                AdminAccess adminAccess = AdminAccess.builder()
-                        .adminUsername(getJenkinsUser())
-                        .installAdminPrivateKey(installPrivateKey) // some VCS such as Git use SSH authentication
-                        .grantSudoToAdminUser(allowSudo) // no need
-                        .adminPrivateKey(getJenkinsPrivateKey()) // temporary due to jclouds bug
-                        .authorizeAdminPublicKey(true)
-                        .adminPublicKey(getJenkinsPublicKey())
-                        .adminHome(getFsRoot())
-                        .build();
-                // Jenkins needs /jenkins dir.
-                Statement jenkinsDirStatement = newStatementList(
-                        Statements.exec("mkdir -p " + getFsRoot()),
-                        Statements.exec("chown " + getJenkinsUser() + " " + getFsRoot()));
-                initStatement = newStatementList(adminAccess, jenkinsDirStatement, Statements.exec(initscript));
             }
-            options.inboundPorts(22).userMetadata(userMetadata);
+        }
 
-            if (null != initStatement) {
-                if (!options.hasLoginPrivateKey()) {
-                    LOGGER.info("Init script without private admin key. Falling back to jenkins user credentials");
+        if (options instanceof GoogleComputeEngineTemplateOptions) {
+            // Always use our own credentials and let creation fail
+            // if no keys are provided.
+            options.as(GoogleComputeEngineTemplateOptions.class).autoCreateKeyPair(false);
+            options.as(GoogleComputeEngineTemplateOptions.class).preemptible(isPreemptible);
+            // On GCE, public IPs are default.
+            options.as(GoogleComputeEngineTemplateOptions.class).assignExternalIp(assignPublicIp);
+        }
+
+        if (assignPublicIp && options instanceof NovaTemplateOptions) {
+            LOGGER.info("Setting autoAssignFloatingIp to true");
+            options.as(NovaTemplateOptions.class).autoAssignFloatingIp(true);
+        }
+        if (options instanceof CloudStackTemplateOptions) {
+            LOGGER.info(String.format("Setting CloudStack setupStaticNat to %b", assignPublicIp));
+            options.as(CloudStackTemplateOptions.class).setupStaticNat(assignPublicIp);
+        }
+
+        if (null != adminCredentialsId) {
+            LOGGER.info("Setting adminCredentialsId to " + adminCredentialsId);
+            String adminUser = getAdminUser();
+            StandardUsernameCredentials c = CredentialsHelper.getCredentialsById(adminCredentialsId);
+            if (null != c) {
+                if (c instanceof StandardUsernamePasswordCredentials) {
+                    LOGGER.info("Using username/password as adminCredentials");
+                    String password =
+                            CredentialsHelper.getPassword(((StandardUsernamePasswordCredentials) c).getPassword());
+                    LoginCredentials lc = LoginCredentials.builder()
+                            .user(adminUser)
+                            .password(password)
+                            .build();
+                    options.overrideLoginCredentials(lc);
+                } else {
+                    LOGGER.info("Using username/privatekey as adminCredentials");
+                    String privateKey = CredentialsHelper.getPrivateKey((SSHUserPrivateKey) c);
                     LoginCredentials lc = LoginCredentials.builder()
-                            .user(getJenkinsUser())
-                            .privateKey(getJenkinsPrivateKey())
+                            .user(adminUser)
+                            .privateKey(privateKey)
                             .build();
                     options.overrideLoginCredentials(lc);
                 }
-                options.runScript(initStatement);
             }
+        }
 
-            if (null != userDataEntries) {
-                Map<String, String> replacements = null;
-                if (jnlpProvision) {
-                    String rootUrl = Jenkins.get().getRootUrl();
-                    if (null == rootUrl) {
-                        rootUrl = "";
-                    }
-                    replacements = new HashMap<>();
-                    replacements.put("JNLP_NONCE", nonce);
-                    replacements.put("JENKINS_ROOTURL", rootUrl);
-                }
+        if (spoolDelayMs > 0) {
+            // (JENKINS-15970) Add optional delay before spooling. Author: Adam Rofer
+            synchronized (delayLockObject) {
+                LOGGER.info(
+                        "Delaying " + spoolDelayMs + " milliseconds. Current ms -> " + System.currentTimeMillis());
                 try {
-                    boolean isZipped = false;
-                    byte[] udata = ConfigHelper.buildUserData(getUserDataIds(), replacements, false);
-                    if (null != udata && getCloud().allowGzippedUserData()) {
-                        byte[] zipped = ConfigHelper.buildUserData(getUserDataIds(), replacements, true);
-                        if (null != zipped && zipped.length < udata.length) {
-                            udata = zipped;
-                            isZipped = true;
-                        }
-                    }
-                    setUserData(options, udata, isZipped);
-                } catch (IOException x) {
-                    LOGGER.log(Level.SEVERE, "Unable to build userData", x);
+                    delayLockObject.wait(spoolDelayMs);
+                } catch (InterruptedException e) {
+                    LOGGER.warning(e.getMessage());
                 }
             }
+        }
 
-            try {
-                nmd = JCloudsNodeMetadata.fromNodeMetadata(
-                        getOnlyElement(getCloud()
-                                .getCompute()
-                                .createNodesInGroup(getCloud().prependGroupPrefix(name), 1, template)),
-                        nonce);
-                brokenImageCacheHasThrown = false;
-            } catch (RunNodesException e) {
-                boolean throwNow = true;
-                if (!(isNullOrEmpty(imageNameRegex) || brokenImageCacheHasThrown)) {
-                    Map<?, ? extends Throwable> xmap = e.getExecutionErrors();
-                    for (Throwable t : xmap.values()) {
-                        if (t.getMessage().contains("Image")) {
-                            LOGGER.fine("Exception message MATCHED: '" + t.getMessage() + "'");
-                            brokenImageCacheHasThrown = true;
-                            throwNow = false;
-                            destroyBadNodes(e);
-                            break;
-                        }
-                        LOGGER.fine("Exception message NOT MATCHED: '" + t.getMessage() + "'");
-                    }
+        Statement initStatement = null;
+
+        final String initscript = ConfigHelper.getConfig(initScriptId);
+        if (this.preExistingJenkinsUser) {
+            if (!initscript.isEmpty()) {
+                initStatement = Statements.exec(initscript);
+            }
+        } else {
+            // provision jenkins user
+            AdminAccess adminAccess = AdminAccess.builder()
+                    .adminUsername(getJenkinsUser())
+                    .installAdminPrivateKey(installPrivateKey) // some VCS such as Git use SSH authentication
+                    .grantSudoToAdminUser(allowSudo) // no need
+                    .adminPrivateKey(getJenkinsPrivateKey()) // temporary due to jclouds bug
+                    .authorizeAdminPublicKey(true)
+                    .adminPublicKey(getJenkinsPublicKey())
+                    .adminHome(getFsRoot())
+                    .build();
+            // Jenkins needs /jenkins dir.
+            Statement jenkinsDirStatement = newStatementList(
+                    Statements.exec("mkdir -p " + getFsRoot()),
+                    Statements.exec("chown " + getJenkinsUser() + " " + getFsRoot()));
+            initStatement = newStatementList(adminAccess, jenkinsDirStatement, Statements.exec(initscript));
+        }
+        options.inboundPorts(22).userMetadata(userMetadata);
+
+        if (null != initStatement) {
+            if (!options.hasLoginPrivateKey()) {
+                LOGGER.info("Init script without private admin key. Falling back to jenkins user credentials");
+                LoginCredentials lc = LoginCredentials.builder()
+                        .user(getJenkinsUser())
+                        .privateKey(getJenkinsPrivateKey())
+                        .build();
+                options.overrideLoginCredentials(lc);
+            }
+            options.runScript(initStatement);
+        }
+
+        if (null != userDataEntries) {
+            String rootUrl = null;
+            if (jnlpProvision) {
+                rootUrl = Jenkins.get().getRootUrl();
+                if (null == rootUrl) {
+                    rootUrl = "";
                 }
-                if (throwNow) {
-                    destroyBadNodesAndPropagate(e);
+            }
+            try {
+                final UserDataCache.Result udata =
+                        getUserDataCache().get(getUserDataIds(), rootUrl, nonce, getCloud().allowGzippedUserData());
+                if (null == udata) {
+                    setUserData(options, null, false);
+                } else {
+                    setUserData(options, udata.getData(), udata.isZipped());
                 }
+            } catch (IOException x) {
+                LOGGER.log(Level.SEVERE, "Unable to build userData", x);
             }
-        } while (brokenImageCacheHasThrown);
+        }
+
+        return template;
+    }
 
-        // Check if nodeMetadata is null and throw
-        return nmd;
+    /**
+     * Resumes a previously suspended node of this template.
+     *
+     * @param nodeId The id of the suspended node.
+     * @param nonce The JNLP provisioning nonce of the node or {@code null} if unknown.
+     * @return The metadata of the resumed node.
+     */
+    JCloudsNodeMetadata resumeNode(final String nodeId, @Nullable final String nonce) {
+        LOGGER.info("Resuming suspended jclouds node " + nodeId);
+        final ComputeService compute = getCloud().getCompute();
+        try {
+            compute.resumeNode(nodeId);
+        } finally {
+            getCloud().invalidateNodeInventory();
+        }
+        NodeMetadata nm = compute.getNodeMetadata(nodeId);
+        if (null == nm) {
+            throw new IllegalStateException("Resumed node " + nodeId + " does not exist anymore");
+        }
+        if (null == nm.getCredentials()) {
+            // Credentials of nodes created before a restart of Jenkins are not known to jclouds.
+            LoginCredentials lc = LoginCredentials.builder()
+                    .user(getJenkinsUser())
+                    .privateKey(getJenkinsPrivateKey())
+                    .build();
+            nm = NodeMetadataBuilder.fromNodeMetadata(nm).credentials(lc).build();
+        }
+        return JCloudsNodeMetadata.fromNodeMetadata(nm, null == nonce ? generateNonce() : nonce);
     }
 
     private void destroyBadNodes(RunNodesException e) {
@@ -752,11 +976,6 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
         }
     }
 
-    private void destroyBadNodesAndPropagate(RunNodesException e) {
-        destroyBadNodes(e);
-        throw new RuntimeException(e);
-    }
-
     private static String[] csvToArray(final String csv) {
         try {
             final CSVReader reader = new CSVReader(new StringReader(csv), SEPARATOR_CHAR);
@@ -1070,6 +1289,22 @@ public class JCloudsSlaveTemplate extends AbstractDescribableImpl<JCloudsSlaveTe
             return m;
         }
 
+        @POST
+        public ListBoxModel doFillPreemptionFallbackItems(@QueryParameter("cloudName") String cloudName) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            ListBoxModel m = new ListBoxModel();
+            m.add("None specified", "");
+            JCloudsCloud c = JCloudsCloud.getByName(cloudName);
+            if (null != c) {
+                for (JCloudsSlaveTemplate tpl : c.getTemplates()) {
+                    if (!tpl.isPreemptible) {
+                        m.add(tpl.name, tpl.name);
+                    }
+                }
+            }
+            return m;
+        }
+
         @POST
         public ListBoxModel doFillLocationIdItems(@QueryParameter("cloudName") String cloudName) {
             Jenkins.get().checkPermission(Jenkins.ADMINISTER);
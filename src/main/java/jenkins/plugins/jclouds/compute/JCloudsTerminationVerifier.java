@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.internal.PendingTerminations;
+
+/**
+ * Confirms asynchronous terminations of all JClouds clouds in the background.
+ * Requests which failed or did not take effect are sent again and nodes which
+ * could not be terminated are reported by {@link JCloudsLeakedNodesMonitor}.
+ * <p>
+ * The pending terminations of all clouds are persisted in the Jenkins home directory
+ * and restored after a restart, so that no request gets lost.
+ */
+@Extension
+public final class JCloudsTerminationVerifier extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsTerminationVerifier.class.getName());
+
+    private static final String PENDING_FILE = "jclouds-pending-terminations.xml";
+
+    private static boolean restored;
+
+    public JCloudsTerminationVerifier() {
+        super("JClouds termination verification");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return 30 * 1000L;
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINEST;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        restore();
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                try {
+                    ((JCloudsCloud) c).verifyTerminations();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to verify terminations of " + c.name + ": " + e.getMessage());
+                }
+            }
+        }
+        persist();
+    }
+
+    private static XmlFile getPendingFile() {
+        return new XmlFile(new File(Jenkins.get().getRootDir(), PENDING_FILE));
+    }
+
+    /**
+     * Hands the pending terminations, which have been persisted before the last restart, over to their clouds.
+     * Happens only once and before anything is persisted, so that no pending termination gets overwritten.
+     */
+    @SuppressWarnings("unchecked")
+    static synchronized void restore() {
+        if (restored) {
+            return;
+        }
+        restored = true;
+        final XmlFile xf = getPendingFile();
+        if (!xf.exists()) {
+            return;
+        }
+        try {
+            final Map<String, PendingTerminations> saved = (Map<String, PendingTerminations>) xf.read();
+            for (Map.Entry<String, PendingTerminations> e : saved.entrySet()) {
+                final JCloudsCloud cloud = JCloudsCloud.getByName(e.getKey());
+                if (null == cloud) {
+                    LOGGER.warning(String.format(
+                            "Dropping pending terminations of cloud %s, which does not exist anymore", e.getKey()));
+                } else {
+                    cloud.getPendingTerminations().restore(e.getValue());
+                }
+            }
+        } catch (IOException | ClassCastException x) {
+            LOGGER.warning(String.format("Failed to read %s: %s", xf.getFile(), x.getMessage()));
+        }
+    }
+
+    /**
+     * Persists the pending terminations of all clouds.
+     */
+    static synchronized void persist() {
+        restore();
+        final Map<String, PendingTerminations> pending = new TreeMap<>();
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                final PendingTerminations pt = ((JCloudsCloud) c).getPendingTerminations();
+                if (!pt.isEmpty()) {
+                    pending.put(c.name, pt.copy());
+                }
+            }
+        }
+        final XmlFile xf = getPendingFile();
+        try {
+            if (pending.isEmpty()) {
+                Files.deleteIfExists(xf.getFile().toPath());
+            } else {
+                xf.write(pending);
+            }
+        } catch (IOException x) {
+            LOGGER.warning(String.format("Failed to persist %s: %s", xf.getFile(), x.getMessage()));
+        }
+    }
+}
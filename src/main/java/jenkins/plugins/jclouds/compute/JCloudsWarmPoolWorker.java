@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * Periodically refills the warm pools of all JClouds clouds.
+ */
+@Extension
+public final class JCloudsWarmPoolWorker extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(JCloudsWarmPoolWorker.class.getName());
+
+    public JCloudsWarmPoolWorker() {
+        super("JClouds warm pool refill");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected Level getNormalLoggingLevel() {
+        return Level.FINE;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud c : Jenkins.get().clouds) {
+            if (c instanceof JCloudsCloud) {
+                try {
+                    ((JCloudsCloud) c).getWarmPool().refill();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to refill warm pool of " + c.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -16,163 +16,227 @@
 package jenkins.plugins.jclouds.compute;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
+import jenkins.util.Timer;
 
 /**
  * Phone home management.
+ * <p>
+ * A wait for phone home is represented by a {@link CompletableFuture}, which gets completed
+ * by a ring from the phone-home webhook, or fails on timeout or interruption. Timeouts and
+ * progress messages are handled by the shared Jenkins {@link Timer}, so no thread is
+ * blocked while waiting unless a caller explicitly chooses to do so.
  */
 final class PhoneHomeMonitor {
 
     private static final Logger LOGGER = Logger.getLogger(PhoneHomeMonitor.class.getName());
 
-    private final Lock phoneHomeLock = new ReentrantLock();
-    private final Condition doneWaitPhoneHome = phoneHomeLock.newCondition();
+    /**
+     * Interval in seconds between progress messages.
+     */
+    private static final long PROGRESS_INTERVAL = 30L;
 
-    private boolean isWaiting = false;
+    private final int waitTimeout;
+    private boolean isWaiting;
     private boolean isInterrupted = false;
-    private int waitTimeout = 0;
-    private List<String> targets;
-    private Thread waitThread = null;
+    private Set<String> targets = new LinkedHashSet<>();
+    private CompletableFuture<Void> future;
+    private volatile PrintStream logger;
+    private long deadline;
+    private ScheduledFuture<?> timeoutTask;
+    private ScheduledFuture<?> progressTask;
 
     PhoneHomeMonitor(final boolean activate, final int timeout) {
         isWaiting = activate;
         waitTimeout = timeout;
     }
 
-    void join() throws InterruptedException {
-        if (null != waitThread) {
-            waitThread.join();
-        }
-    }
-
-    synchronized boolean ring(final String who) {
-        boolean ret = targets.remove(who);
-        if (targets.isEmpty()) {
+    /**
+     * Removes a single target from the set of waited-for hosts.
+     * @param who The name of the host which has phoned home.
+     * @return {@code true} if this monitor was waiting for the given host.
+     */
+    boolean ring(final String who) {
+        final CompletableFuture<Void> f;
+        synchronized (this) {
+            if (!targets.remove(who)) {
+                return false;
+            }
+            if (!targets.isEmpty()) {
+                return true;
+            }
             isWaiting = false;
+            f = detach();
         }
-        signalCondition();
-        return ret;
+        finish(f);
+        return true;
     }
 
     void ring() {
-        isWaiting = false;
-        signalCondition();
+        final CompletableFuture<Void> f;
+        synchronized (this) {
+            isWaiting = false;
+            f = detach();
+        }
+        finish(f);
     }
 
     void interrupt() {
-        isInterrupted = true;
-        signalCondition();
+        final CompletableFuture<Void> f;
+        synchronized (this) {
+            isInterrupted = true;
+            f = detach();
+        }
+        if (null != f) {
+            f.completeExceptionally(new InterruptedException("wait for phone home interrupted"));
+        }
     }
 
-    private synchronized String getTargetString() {
-        return null == targets ? "" : String.join(" and ", targets);
+    /**
+     * Starts waiting for a single host to phone home.
+     * @param who The name of the host.
+     * @param logger An optional PrintStream for progress messages.
+     * @return A future which completes when the host has phoned home.
+     */
+    CompletableFuture<Void> whenPhonedHome(final String who, final PrintStream logger) {
+        if (null == who || who.isEmpty()) {
+            throw new IllegalArgumentException("who may not me null or empty");
+        }
+        return start(Collections.singletonList(who), logger);
     }
 
-    private void signalCondition() {
-        phoneHomeLock.lock();
-        try {
-            doneWaitPhoneHome.signal();
-        } finally {
-            phoneHomeLock.unlock();
+    /**
+     * Starts waiting for multiple hosts to phone home.
+     * @param who The names of the hosts.
+     * @param logger An optional PrintStream for progress messages.
+     * @return A future which completes when all hosts have phoned home.
+     */
+    CompletableFuture<Void> whenPhonedHomeMultiple(final List<String> who, final PrintStream logger) {
+        if (null == who || who.isEmpty()) {
+            throw new IllegalArgumentException("who may not be null or empty");
         }
+        if (who.contains(null) || who.contains("")) {
+            throw new IllegalArgumentException("who may not contain empty targets");
+        }
+        return start(who, logger);
     }
 
-    private synchronized void setTargets(final List<String> t) {
-        targets = t;
+    void waitForPhoneHome(final String who, final PrintStream logger) throws InterruptedException {
+        await(whenPhonedHome(who, logger));
     }
 
-    private void waitCondition(final long millis) throws InterruptedException {
-        phoneHomeLock.lock();
+    /**
+     * Blocks until a phone-home future has completed.
+     * @param f The future to wait for.
+     * @throws InterruptedException if the wait timed out or was interrupted.
+     */
+    static void await(final CompletableFuture<?> f) throws InterruptedException {
         try {
-            doneWaitPhoneHome.await(millis, TimeUnit.MILLISECONDS);
-        } finally {
-            phoneHomeLock.unlock();
+            f.get();
+        } catch (ExecutionException x) {
+            final Throwable cause = x.getCause();
+            final InterruptedException ie = new InterruptedException(cause.getMessage());
+            ie.initCause(cause);
+            throw ie;
         }
     }
 
-    private long getWaitPhoneHomeTimeoutMs() {
-        if (0 < waitTimeout) {
-            return 60000L * waitTimeout;
+    private synchronized CompletableFuture<Void> start(final List<String> who, final PrintStream logger) {
+        if (isInterrupted) {
+            return CompletableFuture.failedFuture(new InterruptedException("wait for phone home interrupted"));
         }
-        return 0;
+        if (!isWaiting) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (null != future) {
+            // Already waiting, so just join the current wait.
+            targets.addAll(who);
+            return future;
+        }
+        targets = new LinkedHashSet<>(who);
+        this.logger = logger;
+        final CompletableFuture<Void> f = new CompletableFuture<>();
+        future = f;
+        final long timeout = getWaitPhoneHomeTimeoutMs();
+        deadline = System.currentTimeMillis() + timeout;
+        timeoutTask = Timer.get().schedule(() -> timedOut(f), timeout, TimeUnit.MILLISECONDS);
+        progressTask = Timer.get().scheduleAtFixedRate(this::logProgress, 0, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+        return f;
     }
 
-    void waitForPhoneHome(final String who, final PrintStream logger) throws InterruptedException {
-        if (null == who || who.isEmpty()) {
-            throw new IllegalArgumentException("who may not me null or empty");
+    private void timedOut(final CompletableFuture<Void> f) {
+        synchronized (this) {
+            if (future != f) {
+                return;
+            }
+            isWaiting = false;
+            detach();
         }
-        List<String> tmp = new ArrayList<>();
-        tmp.add(who);
-        setTargets(tmp);
-        waitForPhoneHome(logger);
+        f.completeExceptionally(new TimeoutException("wait for phone home timed out"));
     }
 
-    void waitForPhoneHomeMultiple(final List<String> who, final PrintStream logger) {
-        if (null == who || who.isEmpty()) {
-            throw new IllegalArgumentException("who may not be null or empty");
+    /**
+     * Detaches the current wait from this monitor. Must be called while holding the monitor's lock.
+     * The returned future is completed by the caller after releasing the lock, so that
+     * dependent actions never run while holding it.
+     * @return The current future or {@code null} if there is no pending wait.
+     */
+    private CompletableFuture<Void> detach() {
+        final CompletableFuture<Void> ret = future;
+        future = null;
+        if (null != timeoutTask) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
         }
-        if (who.contains(null) || who.contains("")) {
-            throw new IllegalArgumentException("who may not contain empty targets");
+        if (null != progressTask) {
+            progressTask.cancel(false);
+            progressTask = null;
         }
-        setTargets(who);
-        waitThread = new Thread() {
-            @Override
-            public void run() {
-                try {
-                    waitForPhoneHome(logger);
-                } catch (InterruptedException x) {
-                    LOGGER.info(x.toString());
-                }
-            }
-        };
-        waitThread.start();
+        return ret;
     }
 
-    private void waitForPhoneHome(PrintStream logger) throws InterruptedException {
-        long timeout = System.currentTimeMillis() + getWaitPhoneHomeTimeoutMs();
-        boolean hasWaitedAtAll = false;
-        while (true) {
-            long tdif = timeout - System.currentTimeMillis();
-            if (tdif < 0) {
-                ring();
-                throw new InterruptedException("wait for phone home timed out");
-            }
-            if (isInterrupted) {
-                ring();
-                throw new InterruptedException("wait for phone home interrupted");
-            }
-            if (isWaiting) {
-                hasWaitedAtAll = true;
-                final String tgs = getTargetString();
-                if (!tgs.isEmpty()) {
-                    final String msg =
-                            "Waiting for " + tgs + " to phone home. " + tdif / 1000 + " seconds until timeout.";
-                    LOGGER.info(msg);
-                    if (null != logger) {
-                        logger.println(msg);
-                    }
-                    if (tdif > 30000L) {
-                        // Wait exactly, but still log a message every 30sec.
-                        tdif = 30000L;
-                    }
-                    waitCondition(tdif);
-                }
-            } else {
-                if (hasWaitedAtAll) {
-                    final String msg = "Finished waiting for phone home";
-                    LOGGER.info(msg);
-                    if (null != logger) {
-                        logger.println(msg);
-                    }
-                }
-                break;
+    private void finish(final CompletableFuture<Void> f) {
+        if (null != f) {
+            log("Finished waiting for phone home", logger);
+            f.complete(null);
+        }
+    }
+
+    private void logProgress() {
+        final String tgs;
+        final long tdif;
+        final PrintStream out;
+        synchronized (this) {
+            if (null == future || targets.isEmpty()) {
+                return;
             }
+            tgs = String.join(" and ", targets);
+            tdif = Math.max(0, deadline - System.currentTimeMillis());
+            out = logger;
         }
+        log("Waiting for " + tgs + " to phone home. " + tdif / 1000 + " seconds until timeout.", out);
+    }
+
+    private static void log(final String msg, final PrintStream out) {
+        LOGGER.info(msg);
+        if (null != out) {
+            out.println(msg);
+        }
+    }
+
+    private long getWaitPhoneHomeTimeoutMs() {
+        if (0 < waitTimeout) {
+            return 60000L * waitTimeout;
+        }
+        return 0;
     }
 }
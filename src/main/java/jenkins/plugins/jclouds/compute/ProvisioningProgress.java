@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.PhaseExecutionAttachment;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+
+/**
+ * Records the timestamped steps of a single provisioning attempt.
+ * <p>
+ * Every step is logged and attached to the {@link ProvisioningActivity} of the attempt, so the cloud statistics
+ * show, where the time of a slow boot has been spent. NodeProvisioner creates the activity only after
+ * {@link JCloudsCloud#provision} has returned, therefore steps are buffered until the activity exists.
+ */
+public final class ProvisioningProgress {
+
+    private static final Logger LOGGER = Logger.getLogger(ProvisioningProgress.class.getName());
+
+    /**
+     * Attempts which did not finish within this period are forgotten.
+     */
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(2);
+
+    private static final ConcurrentMap<ProvisioningActivity.Id, ProvisioningProgress> ACTIVE =
+            new ConcurrentHashMap<>();
+
+    public enum Step {
+        TEMPLATE_RESOLVED("Template resolved"),
+        CREATE_REQUESTED("Create requested"),
+        RUNNING("Node running"),
+        SSH_REACHABLE("SSH reachable"),
+        PHONED_HOME("Phoned home"),
+        ONLINE("Agent online"),
+        FAILED("Provisioning failed");
+
+        private final String title;
+
+        Step(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private final ProvisioningActivity.Id id;
+    private final long started = System.currentTimeMillis();
+    private final List<PhaseExecutionAttachment> pending = new ArrayList<>();
+
+    private ProvisioningProgress(@CheckForNull ProvisioningActivity.Id id) {
+        this.id = id;
+    }
+
+    /**
+     * Starts recording the progress of a provisioning attempt.
+     * @param id The cloud-stats id of the attempt or {@code null} if it is not tracked by cloud-stats.
+     * @return The new progress.
+     */
+    public static ProvisioningProgress start(@CheckForNull ProvisioningActivity.Id id) {
+        ProvisioningProgress ret = new ProvisioningProgress(id);
+        if (null != id) {
+            ACTIVE.values().removeIf(p -> ret.started - p.started > MAX_AGE);
+            ACTIVE.put(id, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Records a step of a running attempt, if its progress is recorded.
+     * @param id The cloud-stats id of the attempt.
+     * @param step The step which has been reached.
+     * @param detail Additional information or {@code null}.
+     */
+    public static void record(@CheckForNull ProvisioningActivity.Id id, Step step, @CheckForNull String detail) {
+        if (null != id) {
+            ProvisioningProgress p = ACTIVE.get(id);
+            if (null != p) {
+                p.record(step, detail);
+            }
+        }
+    }
+
+    /**
+     * @return The time in milliseconds since this attempt has been started.
+     */
+    public long getElapsed() {
+        return System.currentTimeMillis() - started;
+    }
+
+    /**
+     * Records a step of this attempt.
+     * @param step The step which has been reached.
+     * @param detail Additional information or {@code null}.
+     */
+    public void record(Step step, @CheckForNull String detail) {
+        final String title = String.format(
+                "%s after %.1f s%s", step.getTitle(), getElapsed() / 1000.0, null == detail ? "" : ": " + detail);
+        LOGGER.fine(() -> null == id
+                ? title
+                : String.format("Template %s of cloud %s: %s", id.getTemplateName(), id.getCloudName(), title));
+        if (null != id) {
+            final ProvisioningActivity.Status status =
+                    Step.FAILED == step ? ProvisioningActivity.Status.WARN : ProvisioningActivity.Status.OK;
+            synchronized (pending) {
+                pending.add(new PhaseExecutionAttachment(status, title));
+                flush();
+            }
+        }
+        if (Step.ONLINE == step || Step.FAILED == step) {
+            finish();
+        }
+    }
+
+    /**
+     * Stops recording. Steps which could not be attached yet, are dropped.
+     */
+    public void finish() {
+        if (null != id) {
+            ACTIVE.remove(id, this);
+        }
+    }
+
+    private void flush() {
+        final ProvisioningActivity activity = CloudStatistics.get().getActivityFor(id);
+        if (null != activity) {
+            final ProvisioningActivity.Phase phase = activity.getCurrentPhase();
+            for (PhaseExecutionAttachment a : pending) {
+                CloudStatistics.get().attach(activity, phase, a);
+            }
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Node;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.internal.NodeInventory;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * Tracks the suspended nodes of a cloud per template.
+ * <p>
+ * Suspended nodes are resumed by {@link JCloudsCloud#provision} before new ones are created.
+ * If a cloud has a suspended retention time, nodes which stayed suspended longer than that
+ * are destroyed by {@link #expire()}.
+ */
+final class SuspendedTier {
+
+    private static final Logger LOGGER = Logger.getLogger(SuspendedTier.class.getName());
+
+    /**
+     * A suspended node.
+     */
+    static final class Entry {
+        final String nodeId;
+        final long since;
+        final String nonce;
+
+        Entry(final String nodeId, final long since, @CheckForNull final String nonce) {
+            this.nodeId = nodeId;
+            this.since = since;
+            this.nonce = nonce;
+        }
+    }
+
+    private volatile JCloudsCloud cloud;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Long> resumed = new ConcurrentHashMap<>();
+
+    SuspendedTier(final JCloudsCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Hands the suspended nodes over to a reconfigured instance of the cloud.
+     * @param cloud The new instance of the cloud.
+     */
+    void setCloud(final JCloudsCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Records that a node has been suspended.
+     * @param nodeId The id of the suspended node.
+     * @param nonce The JNLP provisioning nonce of the node, if any.
+     */
+    void suspended(final String nodeId, @CheckForNull final String nonce) {
+        entries.put(nodeId, new Entry(nodeId, System.currentTimeMillis(), nonce));
+    }
+
+    /**
+     * Claims a suspended node of the given template for resuming.
+     * Nodes of templates using JNLP provisioning can only be resumed if their nonce is known,
+     * because it is baked into their user data. To keep provisioning fast, the latest node inventory
+     * is used even if it is outdated. A node which turns out to be gone fails to resume and is replaced.
+     *
+     * @param tpl The template.
+     * @return The claimed node or {@code null} if there is no suitable suspended node.
+     */
+    @CheckForNull
+    synchronized Entry claim(final JCloudsSlaveTemplate tpl) {
+        final NodeInventory.Snapshot snapshot = cloud.getNodeInventory().getLatest();
+        // Nodes resumed after the snapshot was taken still show up as suspended in it.
+        resumed.values().removeIf(t -> t < snapshot.getTimestamp());
+        final Set<String> inUse = getAgentNodeIds();
+        for (NodeMetadata nm : snapshot.getNodes(tpl.name)) {
+            final String id = nm.getId();
+            if (nm.getStatus().equals(NodeMetadata.Status.SUSPENDED)
+                    && !inUse.contains(id)
+                    && !claimed.contains(id)
+                    && !resumed.containsKey(id)) {
+                Entry e = entries.get(id);
+                if (tpl.getJnlpProvision() && (null == e || null == e.nonce)) {
+                    continue;
+                }
+                claimed.add(id);
+                return null == e ? new Entry(id, snapshot.getTimestamp(), null) : e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases a claimed node after resuming it failed.
+     * @param e The claimed node.
+     */
+    void release(final Entry e) {
+        claimed.remove(e.nodeId);
+    }
+
+    /**
+     * Forgets about a claimed node after it has been resumed.
+     * @param e The claimed node.
+     */
+    void resumed(final Entry e) {
+        resumed.put(e.nodeId, System.currentTimeMillis());
+        entries.remove(e.nodeId);
+        claimed.remove(e.nodeId);
+    }
+
+    private Set<String> getAgentNodeIds() {
+        final Set<String> ret = new HashSet<>();
+        for (Node n : Jenkins.get().getNodes()) {
+            if (n instanceof JCloudsSlave && cloud.name.equals(((JCloudsSlave) n).getCloudName())) {
+                ret.add(((JCloudsSlave) n).getNodeId());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Destroys nodes which have been suspended longer than the suspended retention time of the cloud.
+     */
+    void expire() {
+        final int minutes = cloud.getSuspendedRetentionTime();
+        if (0 >= minutes) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final NodeInventory.Snapshot snapshot = cloud.getNodeInventory().get();
+        final Set<String> seen = new HashSet<>();
+        boolean destroyed = false;
+        for (String group : snapshot.getGroups()) {
+            if (null == cloud.getTemplate(group)) {
+                continue;
+            }
+            for (NodeMetadata nm : snapshot.getNodes(group)) {
+                if (!nm.getStatus().equals(NodeMetadata.Status.SUSPENDED)) {
+                    continue;
+                }
+                final String id = nm.getId();
+                seen.add(id);
+                // Nodes we did not suspend ourselves (e.g. after a restart) are timed from their first sighting.
+                final Entry e = entries.computeIfAbsent(id, k -> new Entry(k, now, null));
+                if (now - e.since > TimeUnit.MINUTES.toMillis(minutes) && claimed.add(id)) {
+                    LOGGER.info(String.format(
+                            "Suspended retention time of %d min for node %s has expired.", minutes, nm.getName()));
+                    try {
+                        cloud.getCompute().destroyNode(id);
+                        entries.remove(id);
+                        destroyed = true;
+                    } catch (RuntimeException x) {
+                        LOGGER.warning(String.format("Failed to destroy suspended node %s: %s", id, x.getMessage()));
+                    } finally {
+                        claimed.remove(id);
+                    }
+                }
+            }
+        }
+        entries.keySet().retainAll(seen);
+        if (destroyed) {
+            cloud.invalidateNodeInventory();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Label;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable index of the templates of a cloud.
+ * <p>
+ * NodeProvisioner asks every cloud for a matching template of every queued label on each tick.
+ * Evaluating a label expression against all templates is expensive with many templates,
+ * so the matching templates of a label are computed once and remembered. A new index is
+ * built whenever the list of templates changes.
+ */
+final class TemplateIndex {
+
+    /**
+     * Upper bound for the number of remembered label expressions.
+     */
+    private static final int MAX_LABELS = 1000;
+
+    private final List<JCloudsSlaveTemplate> templates;
+    private final Map<String, JCloudsSlaveTemplate> byName;
+    private final ConcurrentMap<Label, List<JCloudsSlaveTemplate>> byLabel = new ConcurrentHashMap<>();
+
+    TemplateIndex(List<JCloudsSlaveTemplate> templates) {
+        this.templates = ImmutableList.copyOf(templates);
+        Map<String, JCloudsSlaveTemplate> names = new LinkedHashMap<>();
+        for (JCloudsSlaveTemplate t : this.templates) {
+            names.putIfAbsent(t.name, t);
+        }
+        this.byName = ImmutableMap.copyOf(names);
+    }
+
+    @CheckForNull
+    JCloudsSlaveTemplate get(String name) {
+        return null == name ? null : byName.get(name);
+    }
+
+    /**
+     * Gets the first template that matches a label.
+     * @param label The label to be matched or {@code null} for any template.
+     * @return The first matching template or {@code null} if no template matches.
+     */
+    @CheckForNull
+    JCloudsSlaveTemplate get(@CheckForNull Label label) {
+        if (null == label) {
+            return templates.isEmpty() ? null : templates.get(0);
+        }
+        List<JCloudsSlaveTemplate> matching = getAll(label);
+        return matching.isEmpty() ? null : matching.get(0);
+    }
+
+    /**
+     * Gets the pool of templates that may provide nodes for a label.
+     * @param label The label to be matched or {@code null} for any template.
+     * @return All matching templates or just the first template if label is {@code null}.
+     */
+    List<JCloudsSlaveTemplate> getPool(@CheckForNull Label label) {
+        if (null == label) {
+            return templates.isEmpty() ? ImmutableList.of() : ImmutableList.of(templates.get(0));
+        }
+        return getAll(label);
+    }
+
+    /**
+     * Gets the names of all templates.
+     * @return The template names.
+     */
+    List<String> getNames() {
+        return ImmutableList.copyOf(byName.keySet());
+    }
+
+    /**
+     * Gets all templates that match a label in configuration order.
+     * @param label The label to be matched.
+     * @return The matching templates.
+     */
+    List<JCloudsSlaveTemplate> getAll(Label label) {
+        List<JCloudsSlaveTemplate> ret = byLabel.get(label);
+        if (null == ret) {
+            ret = match(label);
+            if (byLabel.size() >= MAX_LABELS) {
+                byLabel.clear();
+            }
+            byLabel.putIfAbsent(label, ret);
+        }
+        return ret;
+    }
+
+    private List<JCloudsSlaveTemplate> match(Label label) {
+        List<JCloudsSlaveTemplate> ret = new ArrayList<>();
+        for (JCloudsSlaveTemplate t : templates) {
+            if (label.matches(t.getLabelSet())) {
+                ret.add(t);
+            }
+        }
+        return ImmutableList.copyOf(ret);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.slaves.OfflineCause;
+import hudson.util.StreamTaskListener;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.internal.CircuitBreaker;
+import jenkins.plugins.jclouds.compute.internal.JCloudsNodeMetadata;
+import jenkins.plugins.jclouds.compute.internal.RetryPolicy;
+import jenkins.plugins.jclouds.compute.internal.TemplatePool;
+import org.jenkinsci.plugins.cloudstats.CloudStatistics;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+
+/**
+ * Keeps a minimum number of idle agents per template ready.
+ * <p>
+ * Idle agents are picked up by the build queue before the NodeProvisioner asks the cloud for
+ * new capacity, so jobs of a label with a warm pool do not have to wait for a VM to boot.
+ * The pool is refilled asynchronously, either periodically or whenever the cloud has to provision.
+ * Besides the configured minimum, the pool also holds the number of agents predicted by
+ * {@link JCloudsPredictiveProvisioner}.
+ */
+final class WarmPool {
+
+    private static final Logger LOGGER = Logger.getLogger(WarmPool.class.getName());
+
+    private volatile JCloudsCloud cloud;
+    private final ConcurrentMap<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean refillRequested = new AtomicBoolean();
+    private final ConcurrentMap<String, Integer> forecast = new ConcurrentHashMap<>();
+
+    WarmPool(final JCloudsCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Hands the pool over to a reconfigured instance of the cloud.
+     * @param cloud The new instance of the cloud.
+     */
+    void setCloud(final JCloudsCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    private AtomicInteger getPending(final String templateName) {
+        return pending.computeIfAbsent(templateName, k -> new AtomicInteger());
+    }
+
+    /**
+     * Sets the number of idle agents which are predicted to be needed soon.
+     * @param tpl The template.
+     * @param count The predicted number of agents.
+     */
+    void setForecast(final JCloudsSlaveTemplate tpl, final int count) {
+        if (0 < count) {
+            forecast.put(tpl.name, count);
+        } else {
+            forecast.remove(tpl.name);
+        }
+    }
+
+    /**
+     * Gets the number of idle agents to keep for a template.
+     * This is the configured minimum or the predicted number, whichever is larger.
+     */
+    int getTarget(final JCloudsSlaveTemplate tpl) {
+        return Math.max(tpl.getMinIdleInstances(), forecast.getOrDefault(tpl.name, 0));
+    }
+
+    /**
+     * Counts the agents of a template which are available for new builds.
+     * These are the idle agents (including the ones still being launched) and the agents still being provisioned.
+     */
+    int countAvailable(final JCloudsSlaveTemplate tpl) {
+        int ret = getPending(tpl.name).get();
+        for (Node n : Jenkins.get().getNodes()) {
+            if (n instanceof JCloudsSlave) {
+                final JCloudsSlave s = (JCloudsSlave) n;
+                if (cloud.name.equals(s.getCloudName())
+                        && tpl.name.equals(s.getTemplateName())
+                        && !s.isPendingDelete()) {
+                    final Computer c = s.toComputer();
+                    if (null == c || (c.isIdle() && !(c.getOfflineCause() instanceof OfflineCause.LaunchFailed))) {
+                        ret++;
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Selects the agents whose retention time has expired and which are not needed for the warm pool.
+     * @param expired The agents whose retention time has expired.
+     * @return The agents which may be deleted.
+     */
+    List<JCloudsSlave> selectSurplus(final Collection<JCloudsSlave> expired) {
+        final List<JCloudsSlave> ret = new ArrayList<>();
+        final Map<String, Integer> available = new HashMap<>();
+        for (JCloudsSlave node : expired) {
+            final JCloudsSlaveTemplate tpl = cloud.getTemplate(node.getTemplateName());
+            if (null == tpl || 0 >= getTarget(tpl)) {
+                ret.add(node);
+                continue;
+            }
+            final int count = available.computeIfAbsent(tpl.name, k -> countAvailable(tpl));
+            if (count > getTarget(tpl)) {
+                available.put(tpl.name, count - 1);
+                ret.add(node);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Marks the agents which are not needed for the warm pool for deletion.
+     * Selecting and marking happens while holding the lock, so that concurrent
+     * retention checks do not shrink the pool below its minimum.
+     *
+     * @param expired The agents whose retention time has expired.
+     * @return The agents which have been marked for deletion.
+     */
+    synchronized List<JCloudsSlave> release(final Collection<JCloudsSlave> expired) {
+        final List<JCloudsSlave> ret = selectSurplus(expired);
+        for (JCloudsSlave node : ret) {
+            node.setPendingDelete(true);
+        }
+        return ret;
+    }
+
+    /**
+     * Schedules an asynchronous refill, unless one is already pending.
+     */
+    void requestRefill() {
+        if (refillRequested.compareAndSet(false, true)) {
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                public void run() {
+                    refillRequested.set(false);
+                    refill();
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts provisioning of agents for all templates whose pool is below its minimum.
+     * Nothing is started while the provider keeps failing, templates which are cooling down are skipped.
+     */
+    synchronized void refill() {
+        if (Jenkins.get().isQuietingDown() || Jenkins.get().isTerminating()) {
+            return;
+        }
+        if (cloud.getCircuitBreaker().isOpen()) {
+            return;
+        }
+        for (final JCloudsSlaveTemplate tpl : cloud.getTemplates()) {
+            final int min = getTarget(tpl);
+            if (0 < min && cloud.getTemplatePool().isAvailable(tpl)) {
+                int missing = min - countAvailable(tpl);
+                while (0 < missing--) {
+                    if (!cloud.reserveInstances(1)) {
+                        LOGGER.info(String.format(
+                                "Instance cap of %s reached while refilling warm pool of %s", cloud.name, tpl.name));
+                        return;
+                    }
+                    start(tpl);
+                }
+            }
+        }
+    }
+
+    private void start(final JCloudsSlaveTemplate tpl) {
+        final AtomicInteger p = getPending(tpl.name);
+        final ProvisioningActivity.Id provisioningId = new ProvisioningActivity.Id(cloud.name, tpl.name);
+        p.incrementAndGet();
+        LOGGER.info(String.format("Provisioning warm pool agent for template %s", tpl.name));
+        CloudStatistics.ProvisioningListener.get().onStarted(provisioningId);
+        final ProvisioningProgress progress = ProvisioningProgress.start(provisioningId);
+        progress.record(ProvisioningProgress.Step.TEMPLATE_RESOLVED, tpl.name);
+        cloud.getProvisioningExecutor().getService().submit(new Runnable() {
+            public void run() {
+                final StringWriter sw = new StringWriter();
+                final TemplatePool<JCloudsSlaveTemplate> tp = cloud.getTemplatePool();
+                boolean created = false;
+                try {
+                    progress.record(ProvisioningProgress.Step.CREATE_REQUESTED, tpl.name);
+                    final JCloudsNodeMetadata nmd;
+                    try {
+                        nmd = RetryPolicy.DEFAULT.call(
+                                tpl::get,
+                                cloud.getCircuitBreaker(),
+                                "Creating a warm pool node from template " + tpl.name);
+                    } catch (CircuitBreaker.OpenException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        tp.failed(tpl, TemplatePool.isCapacityError(e));
+                        throw e;
+                    }
+                    tp.succeeded(tpl);
+                    JCloudsSlave s = tpl.provisionSlave(new StreamTaskListener(sw), provisioningId, nmd);
+                    created = true;
+                    progress.record(ProvisioningProgress.Step.RUNNING, s.getNodeId());
+                    Jenkins.get().addNode(s);
+                    CloudStatistics.ProvisioningListener.get().onComplete(provisioningId, s);
+                    LOGGER.fine(() -> "Provisioning output of warm pool agent " + s.getNodeName() + ":\n" + sw);
+                } catch (Exception e) {
+                    progress.record(ProvisioningProgress.Step.FAILED, e.getMessage());
+                    LOGGER.log(
+                            Level.WARNING,
+                            "Failed to provision warm pool agent for template " + tpl.name + ":\n" + sw,
+                            e);
+                    CloudStatistics.ProvisioningListener.get().onFailure(provisioningId, e);
+                } finally {
+                    p.decrementAndGet();
+                    if (created) {
+                        cloud.getReservationLedger().commit(1);
+                    } else {
+                        cloud.getReservationLedger().release(1);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.collect.ImmutableSet;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.jclouds.compute.RunNodesException;
+import org.jclouds.http.HttpResponseException;
+
+/**
+ * Limits the rate of calls to a cloud provider's API.
+ * <p>
+ * Read calls (listing, getting or describing something) and mutating calls (creating, destroying,
+ * suspending nodes etc.) have separate token buckets. If the provider responds with a throttling
+ * error, the rate of the affected bucket is halved. Afterwards, it slowly recovers to the configured
+ * rate (AIMD). Bursts are therefore smoothed out instead of failing entire provisioning rounds.
+ */
+public final class ApiRateLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiRateLimiter.class.getName());
+
+    /**
+     * Methods that do not call the provider.
+     */
+    private static final Set<String> LOCAL_METHODS = ImmutableSet.of(
+            "templateBuilder", "templateOptions", "getContext", "close", "imageExtension", "securityGroupExtension");
+
+    private static final String[] READ_PREFIXES = {
+        "list", "get", "describe", "is", "find", "exists", "show", "search", "contains"
+    };
+
+    private static final String[] THROTTLING_MARKERS = {
+        "RequestLimitExceeded",
+        "Throttling",
+        "Rate exceeded",
+        "Too Many Requests",
+        "TooManyRequests",
+        "rateLimitExceeded"
+    };
+
+    public enum Kind {
+        READ,
+        MUTATE
+    }
+
+    private final Bucket read;
+    private final Bucket mutate;
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * Creates a new limiter.
+     * @param readRate The maximum number of read calls per second. Zero or less means unlimited.
+     * @param mutateRate The maximum number of mutating calls per second. Zero or less means unlimited.
+     */
+    public ApiRateLimiter(double readRate, double mutateRate) {
+        this.read = new Bucket(Kind.READ, readRate);
+        this.mutate = new Bucket(Kind.MUTATE, mutateRate);
+    }
+
+    public void setRates(double readRate, double mutateRate) {
+        read.setConfiguredRate(readRate);
+        mutate.setConfiguredRate(mutateRate);
+    }
+
+    private Bucket bucket(Kind kind) {
+        return Kind.READ == kind ? read : mutate;
+    }
+
+    /**
+     * Waits until a call of the given kind is permitted.
+     * @param kind The kind of call.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire(Kind kind) throws InterruptedException {
+        bucket(kind).acquire();
+    }
+
+    /**
+     * Must be called, if the provider has throttled a call.
+     * @param kind The kind of the throttled call.
+     */
+    public void onThrottle(Kind kind) {
+        throttled.incrementAndGet();
+        bucket(kind).backOff();
+    }
+
+    /**
+     * @param kind The kind of calls.
+     * @return The currently effective rate in calls per second or zero, if unlimited.
+     */
+    double getCurrentRate(Kind kind) {
+        return bucket(kind).getRate();
+    }
+
+    /**
+     * @param kind The kind of calls.
+     * @return The number of calls that have been permitted so far.
+     */
+    long getPermitCount(Kind kind) {
+        return bucket(kind).permits.get();
+    }
+
+    /**
+     * @return The number of calls which have been throttled by the provider.
+     */
+    long getThrottleCount() {
+        return throttled.get();
+    }
+
+    /**
+     * Determines the kind of an API method by its name.
+     * @param methodName The name of the method.
+     * @return The kind of the method or {@code null} if it does not call the provider.
+     */
+    public static Kind classify(String methodName) {
+        if (LOCAL_METHODS.contains(methodName)) {
+            return null;
+        }
+        for (String prefix : READ_PREFIXES) {
+            if (methodName.startsWith(prefix)) {
+                return Kind.READ;
+            }
+        }
+        return Kind.MUTATE;
+    }
+
+    /**
+     * Checks, whether an exception (or any of its causes) signals throttling by the provider.
+     * @param t The exception to check.
+     * @return {@code true} if the provider has throttled the request.
+     */
+    public static boolean isThrottling(Throwable t) {
+        for (Throwable c = t; null != c; c = c.getCause()) {
+            if (c instanceof HttpResponseException) {
+                HttpResponseException hre = (HttpResponseException) c;
+                if (null != hre.getResponse() && 429 == hre.getResponse().getStatusCode()) {
+                    return true;
+                }
+            }
+            if (c instanceof RunNodesException) {
+                for (Throwable e : ((RunNodesException) c).getExecutionErrors().values()) {
+                    if (isThrottling(e)) {
+                        return true;
+                    }
+                }
+            }
+            String msg = c.getMessage();
+            if (null != msg) {
+                for (String marker : THROTTLING_MARKERS) {
+                    if (msg.contains(marker)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps an API object, so that all calls through it are rate limited.
+     * Methods returning another API interface (e.g. {@code keyApi()}) return a wrapped object as well.
+     * @param target The API object to wrap.
+     * @param iface The interface of the API object.
+     * @return The wrapped API object or the target itself, if iface is not an interface.
+     */
+    public <T> T wrap(final T target, final Class<T> iface) {
+        if (null == target || !iface.isInterface()) {
+            return target;
+        }
+        return iface.cast(Proxy.newProxyInstance(
+                iface.getClassLoader(), new Class<?>[] {iface}, new LimitingHandler(target)));
+    }
+
+    private final class LimitingHandler implements InvocationHandler {
+        private final Object target;
+
+        LimitingHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final Class<?> rt = method.getReturnType();
+            final boolean subApi = rt.isInterface() && rt.getSimpleName().endsWith("Api");
+            final Kind kind = method.getDeclaringClass() == Object.class || subApi ? null : classify(method.getName());
+            if (null != kind) {
+                try {
+                    acquire(kind);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for API rate limit", e);
+                }
+            }
+            final Object ret;
+            try {
+                ret = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (null != kind && isThrottling(cause)) {
+                    onThrottle(kind);
+                }
+                throw cause;
+            }
+            if (subApi && null != ret) {
+                return Proxy.newProxyInstance(rt.getClassLoader(), new Class<?>[] {rt}, new LimitingHandler(ret));
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * A token bucket with a capacity of one second worth of calls.
+     * Callers reserve a token and then wait outside of the lock, until their token is due.
+     */
+    private static final class Bucket {
+        /**
+         * Interval for additive increase of the rate after backing off.
+         */
+        private static final long RECOVERY_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+        private final Kind kind;
+        private final AtomicLong permits = new AtomicLong();
+        private double configuredRate;
+        private double rate;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long lastAdjust = System.nanoTime();
+
+        Bucket(Kind kind, double configuredRate) {
+            this.kind = kind;
+            setConfiguredRate(configuredRate);
+        }
+
+        synchronized void setConfiguredRate(double value) {
+            configuredRate = value;
+            rate = value;
+            tokens = Math.max(1.0, value);
+        }
+
+        synchronized double getRate() {
+            return configuredRate > 0 ? rate : 0.0;
+        }
+
+        void acquire() throws InterruptedException {
+            permits.incrementAndGet();
+            final long delay = reserve();
+            if (0 < delay) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+
+        /**
+         * Takes a token.
+         * @return The time in nanoseconds to wait until the token is due.
+         */
+        private synchronized long reserve() {
+            if (configuredRate <= 0) {
+                return 0L;
+            }
+            final long now = System.nanoTime();
+            if (rate < configuredRate && now - lastAdjust >= RECOVERY_INTERVAL) {
+                rate = Math.min(configuredRate, rate + configuredRate / 10.0);
+                lastAdjust = now;
+            }
+            tokens = Math.min(Math.max(1.0, rate), tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+            tokens -= 1.0;
+            return tokens >= 0 ? 0L : (long) (-tokens / rate * 1e9);
+        }
+
+        synchronized void backOff() {
+            if (configuredRate <= 0) {
+                return;
+            }
+            rate = Math.max(configuredRate / 20.0, rate / 2.0);
+            tokens = Math.min(tokens, 0.0);
+            lastAdjust = System.nanoTime();
+            LOGGER.info(String.format("Provider throttled %s calls, reducing rate to %.2f/s", kind, rate));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Stops calls to a cloud provider which keeps failing.
+ * <p>
+ * After a number of consecutive failures the breaker opens and rejects all calls for a while.
+ * Then a single trial call is permitted. If it succeeds, the breaker closes again, otherwise it
+ * stays open twice as long as before, up to a maximum. Only errors which tell about the health of the
+ * provider count: transient errors, exceeded quotas and rejected credentials. Capacity shortages and
+ * fatal errors like an unknown image affect a single template only and are handled by {@link TemplatePool}.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Thrown if a call is rejected, because the breaker is open.
+     */
+    public static final class OpenException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openPeriod;
+    private final long maxOpenPeriod;
+    private final AtomicLong trips = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private State state = State.CLOSED;
+    private int failures;
+    private long currentOpenPeriod;
+    private long openUntil;
+    private boolean trialRunning;
+
+    /**
+     * Creates a new breaker.
+     * @param name The name of the guarded cloud, used in messages.
+     * @param failureThreshold The number of consecutive failures which open the breaker.
+     * @param openPeriod The time in milliseconds the breaker stays open initially.
+     * @param maxOpenPeriod The maximum time in milliseconds the breaker stays open.
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openPeriod, long maxOpenPeriod) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openPeriod = openPeriod;
+        this.maxOpenPeriod = Math.max(openPeriod, maxOpenPeriod);
+        this.currentOpenPeriod = openPeriod;
+    }
+
+    /**
+     * Checks, whether calls are rejected right now. This is a quick check without side effects
+     * and becomes {@code false} as soon as a trial call is due.
+     * @return {@code true} if the breaker is open.
+     */
+    public boolean isOpen() {
+        return isOpen(System.currentTimeMillis());
+    }
+
+    synchronized boolean isOpen(long now) {
+        switch (state) {
+            case OPEN:
+                return now < openUntil;
+            case HALF_OPEN:
+                return trialRunning;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The number of times, the breaker has opened.
+     */
+    public long getTripCount() {
+        return trips.get();
+    }
+
+    /**
+     * @return The number of calls which have been rejected.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Must be called before a call to the provider.
+     * @throws OpenException if the call is not permitted.
+     */
+    public void acquire() {
+        acquire(System.currentTimeMillis());
+    }
+
+    synchronized void acquire(long now) {
+        if (State.OPEN == state && now >= openUntil) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (State.OPEN == state || (State.HALF_OPEN == state && trialRunning)) {
+            rejected.incrementAndGet();
+            throw new OpenException(String.format(
+                    "Cloud %s is failing repeatedly, provisioning is paused for %d seconds",
+                    name, Math.max(1L, (openUntil - now) / 1000L)));
+        }
+        if (State.HALF_OPEN == state) {
+            trialRunning = true;
+        }
+    }
+
+    /**
+     * Must be called, if a permitted call has been abandoned without a result.
+     */
+    public synchronized void release() {
+        trialRunning = false;
+    }
+
+    /**
+     * Must be called after a permitted call has succeeded.
+     */
+    public synchronized void succeeded() {
+        if (State.CLOSED != state) {
+            LOGGER.info(String.format("Cloud %s has recovered, resuming provisioning", name));
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialRunning = false;
+        currentOpenPeriod = openPeriod;
+    }
+
+    /**
+     * Must be called after a permitted call has failed.
+     * @param ec The class of the error.
+     */
+    public void failed(RetryPolicy.ErrorClass ec) {
+        failed(ec, System.currentTimeMillis());
+    }
+
+    synchronized void failed(RetryPolicy.ErrorClass ec, long now) {
+        if (RetryPolicy.ErrorClass.CAPACITY == ec || RetryPolicy.ErrorClass.FATAL == ec) {
+            if (State.HALF_OPEN == state) {
+                // The provider itself responded, so it is healthy again.
+                trialRunning = false;
+                state = State.CLOSED;
+                failures = 0;
+                currentOpenPeriod = openPeriod;
+            }
+            return;
+        }
+        failures++;
+        if (State.HALF_OPEN == state) {
+            currentOpenPeriod = Math.min(maxOpenPeriod, currentOpenPeriod * 2);
+            open(now);
+        } else if (State.CLOSED == state && failures >= failureThreshold) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        trialRunning = false;
+        openUntil = now + currentOpenPeriod;
+        trips.incrementAndGet();
+        LOGGER.warning(String.format(
+                "Cloud %s failed %d times in a row, pausing provisioning for %d seconds",
+                name, failures, currentOpenPeriod / 1000L));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Records the demand for agents over time and predicts the demand of the near future.
+ * <p>
+ * The day is divided into slots of 15 minutes. For each slot, the peak demand is kept as an
+ * exponentially weighted moving average over the days, with separate profiles for workdays and
+ * weekends. Additionally, a short and a long moving average of the recent samples capture the
+ * current trend. The forecast is the maximum of the time-of-day profile and the trend.
+ * Instances are persisted by XStream, so the model only uses plain fields.
+ */
+public final class DemandHistory {
+
+    public static final long SLOT_MILLIS = 15 * 60 * 1000L;
+    static final int SLOTS_PER_DAY = 96;
+
+    /**
+     * Weight of the newest day in the time-of-day profile.
+     */
+    private static final double DAY_WEIGHT = 0.3;
+
+    private static final double SHORT_WEIGHT = 0.5;
+    private static final double LONG_WEIGHT = 0.05;
+
+    private final Map<String, Series> series = new HashMap<>();
+
+    static final class Series {
+        private final double[] profile = new double[2 * SLOTS_PER_DAY];
+        private final int[] observations = new int[2 * SLOTS_PER_DAY];
+        private int slot = -1;
+        private double peak;
+        private double shortAvg;
+        private double longAvg;
+
+        private void record(final double demand, final int idx) {
+            if (slot != idx) {
+                if (0 <= slot) {
+                    profile[slot] = 0 == observations[slot]
+                            ? peak
+                            : DAY_WEIGHT * peak + (1 - DAY_WEIGHT) * profile[slot];
+                    observations[slot]++;
+                }
+                slot = idx;
+                peak = 0;
+            }
+            peak = Math.max(peak, demand);
+            shortAvg = SHORT_WEIGHT * demand + (1 - SHORT_WEIGHT) * shortAvg;
+            longAvg = LONG_WEIGHT * demand + (1 - LONG_WEIGHT) * longAvg;
+        }
+
+        private double forecast(final int idx) {
+            final double tod = 0 == observations[idx] ? 0 : profile[idx];
+            final double trend = shortAvg + Math.max(0, shortAvg - longAvg);
+            return Math.max(tod, trend);
+        }
+    }
+
+    /**
+     * Records a demand sample.
+     * @param key The key identifying the template.
+     * @param demand The number of executors demanded at the given time.
+     * @param time The time of the sample.
+     */
+    public synchronized void record(final String key, final double demand, final long time) {
+        series.computeIfAbsent(key, k -> new Series()).record(demand, slotOf(time));
+    }
+
+    /**
+     * Predicts the demand.
+     * @param key The key identifying the template.
+     * @param time The time at which the demand is predicted.
+     * @return The predicted number of executors or zero if nothing has been recorded yet.
+     */
+    public synchronized double forecast(final String key, final long time) {
+        final Series s = series.get(key);
+        return null == s ? 0 : s.forecast(slotOf(time));
+    }
+
+    /**
+     * Removes the history of all keys which are not contained in the given set.
+     * @param keys The keys to retain.
+     * @return {@code true} if any history has been removed.
+     */
+    public synchronized boolean retainAll(final Set<String> keys) {
+        return series.keySet().retainAll(keys);
+    }
+
+    /**
+     * Maps a time to the slot index of its profile.
+     * Weekend slots follow the workday slots.
+     */
+    static int slotOf(final long time) {
+        final Calendar c = Calendar.getInstance(TimeZone.getDefault());
+        c.setTimeInMillis(time);
+        final int minutes = c.get(Calendar.HOUR_OF_DAY) * 60 + c.get(Calendar.MINUTE);
+        final int dow = c.get(Calendar.DAY_OF_WEEK);
+        final int base = Calendar.SATURDAY == dow || Calendar.SUNDAY == dow ? SLOTS_PER_DAY : 0;
+        return base + (int) (minutes * 60 * 1000L / SLOT_MILLIS);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.collect.ImmutableList;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The result of a single multi-node create call.
+ * Holds the nodes that were created successfully and - in case of a partial
+ * failure - the exception that prevented the remaining nodes from being created.
+ * Each planned node claims its node by index, so nodes beyond the number
+ * of successfully created ones fail individually.
+ */
+public final class NodeBatch {
+
+    private final int requested;
+    private final List<JCloudsNodeMetadata> nodes;
+    private final Throwable failure;
+
+    public NodeBatch(int requested, List<JCloudsNodeMetadata> nodes, @Nullable Throwable failure) {
+        this.requested = requested;
+        this.nodes = ImmutableList.copyOf(nodes);
+        this.failure = failure;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public List<JCloudsNodeMetadata> getNodes() {
+        return nodes;
+    }
+
+    @Nullable
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Retrieves the node for a specific planned node.
+     * @param index The index of the planned node within the batch.
+     * @return The node metadata of the created node.
+     * @throws ExecutionException if no node was created for the given index.
+     */
+    public JCloudsNodeMetadata get(int index) throws ExecutionException {
+        if (index < nodes.size()) {
+            return nodes.get(index);
+        }
+        String msg = String.format("Node %d of %d could not be created", index + 1, requested);
+        throw new ExecutionException(msg, failure);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * A cached inventory of the nodes of a cloud, indexed by group.
+ * <p>
+ * Listing all nodes of a large account is expensive, so a snapshot is kept for a limited time.
+ * Whenever the plugin creates or destroys nodes, the snapshot is invalidated and the next
+ * access fetches a new one. {@link #refreshIfDue()} is intended to be called periodically
+ * by a background task, so that regular readers rarely have to wait for a refresh.
+ */
+public final class NodeInventory {
+
+    private static final Logger LOGGER = Logger.getLogger(NodeInventory.class.getName());
+
+    /**
+     * A background refresh happens only if the inventory has been accessed within this period.
+     */
+    private static final long IDLE_PERIOD = 10 * 60 * 1000L;
+
+    private final Supplier<Set<? extends ComputeMetadata>> lister;
+    private final Function<String, String> groupMapper;
+    private final AtomicLong generation = new AtomicLong();
+    private final Object refreshLock = new Object();
+    private volatile Snapshot snapshot;
+    private volatile long lastAccess;
+    private volatile long ttl;
+
+    /**
+     * Creates a new inventory.
+     * @param lister Lists all nodes of the cloud.
+     * @param groupMapper Maps the group of a node to the key used for indexing (e.g. the template name).
+     * @param ttl The time to live of a snapshot in milliseconds.
+     */
+    public NodeInventory(
+            Supplier<Set<? extends ComputeMetadata>> lister, Function<String, String> groupMapper, long ttl) {
+        this.lister = lister;
+        this.groupMapper = groupMapper;
+        this.ttl = ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Retrieves the current snapshot, fetching a new one if it is invalid or expired.
+     * @return The current snapshot.
+     */
+    @NonNull
+    public Snapshot get() {
+        lastAccess = System.currentTimeMillis();
+        Snapshot s = snapshot;
+        if (isValid(s, ttl)) {
+            return s;
+        }
+        return refresh(false);
+    }
+
+    /**
+     * Retrieves the last snapshot without waiting for a refresh, even if it is outdated.
+     * Only the very first access has to fetch one. Outdated snapshots are replaced by {@link #refreshIfDue()}.
+     * @return The last snapshot.
+     */
+    @NonNull
+    public Snapshot getLatest() {
+        lastAccess = System.currentTimeMillis();
+        Snapshot s = snapshot;
+        return null == s ? refresh(false) : s;
+    }
+
+    /**
+     * Marks the current snapshot as outdated. Must be called after creating or destroying nodes.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Refreshes the snapshot in advance if it has been used recently and half of its ttl has passed.
+     * @return {@code true} if a refresh took place.
+     */
+    public boolean refreshIfDue() {
+        Snapshot s = snapshot;
+        if (null == s || System.currentTimeMillis() - lastAccess > IDLE_PERIOD || isValid(s, ttl / 2)) {
+            return false;
+        }
+        refresh(true);
+        return true;
+    }
+
+    private boolean isValid(Snapshot s, long maxAge) {
+        return null != s
+                && s.generation == generation.get()
+                && System.currentTimeMillis() - s.timestamp < maxAge;
+    }
+
+    private Snapshot refresh(boolean force) {
+        synchronized (refreshLock) {
+            // Another thread might have refreshed while we were waiting for the lock.
+            Snapshot s = snapshot;
+            if (!force && isValid(s, ttl)) {
+                return s;
+            }
+            final long gen = generation.get();
+            final long start = System.currentTimeMillis();
+            s = new Snapshot(lister.get(), groupMapper, start, gen);
+            LOGGER.fine(String.format(
+                    "Refreshed node inventory (%d nodes) in %d ms",
+                    s.byId.size(), System.currentTimeMillis() - start));
+            snapshot = s;
+            return s;
+        }
+    }
+
+    /**
+     * An immutable view of the nodes at a specific time.
+     */
+    public static final class Snapshot {
+        private final long timestamp;
+        private final long generation;
+        private final Map<String, List<NodeMetadata>> byGroup;
+        private final Map<String, NodeMetadata> byId;
+
+        Snapshot(
+                Iterable<? extends ComputeMetadata> nodes,
+                Function<String, String> groupMapper,
+                long timestamp,
+                long generation) {
+            this.timestamp = timestamp;
+            this.generation = generation;
+            Map<String, List<NodeMetadata>> groups = new HashMap<>();
+            Map<String, NodeMetadata> ids = new HashMap<>();
+            for (ComputeMetadata cm : nodes) {
+                if (cm instanceof NodeMetadata) {
+                    NodeMetadata nm = (NodeMetadata) cm;
+                    ids.put(nm.getId(), nm);
+                    String group = null == nm.getGroup() ? null : groupMapper.apply(nm.getGroup());
+                    if (null != group) {
+                        groups.computeIfAbsent(group, k -> new ArrayList<>()).add(nm);
+                    }
+                }
+            }
+            ImmutableMap.Builder<String, List<NodeMetadata>> b = ImmutableMap.builder();
+            for (Map.Entry<String, List<NodeMetadata>> e : groups.entrySet()) {
+                b.put(e.getKey(), ImmutableList.copyOf(e.getValue()));
+            }
+            this.byGroup = b.build();
+            this.byId = ImmutableMap.copyOf(ids);
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Set<String> getGroups() {
+            return byGroup.keySet();
+        }
+
+        @NonNull
+        public List<NodeMetadata> getNodes(String group) {
+            List<NodeMetadata> ret = byGroup.get(group);
+            return null == ret ? ImmutableList.of() : ret;
+        }
+
+        @CheckForNull
+        public NodeMetadata getNode(String id) {
+            return byId.get(id);
+        }
+
+        /**
+         * Counts the nodes of a group which are neither suspended nor terminated.
+         * @param group The group (as mapped by the group mapper).
+         * @return The number of active nodes.
+         */
+        public int getActiveCount(String group) {
+            int ret = 0;
+            for (NodeMetadata nm : getNodes(group)) {
+                if (isActive(nm)) {
+                    ret++;
+                }
+            }
+            return ret;
+        }
+
+        public static boolean isActive(NodeMetadata nm) {
+            return !nm.getStatus().equals(NodeMetadata.Status.SUSPENDED)
+                    && !nm.getStatus().equals(NodeMetadata.Status.TERMINATED);
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class NodePlan {
     private final int count;
     private final boolean shouldSuspend;
     private final Supplier<JCloudsNodeMetadata> nodeSupplier;
+    private final int maxReplacements;
 
     public NodePlan(
             String cloud,
@@ -30,11 +31,32 @@ public class NodePlan {
             int count,
             boolean shouldSuspend,
             Supplier<JCloudsNodeMetadata> nodeSupplier) {
+        this(cloud, template, count, shouldSuspend, nodeSupplier, 0);
+    }
+
+    /**
+     * Creates a new plan.
+     * @param cloud The name of the cloud.
+     * @param template The name of the template.
+     * @param count The number of nodes to launch.
+     * @param shouldSuspend Whether to suspend the nodes instead of destroying them.
+     * @param nodeSupplier Creates a single node.
+     * @param maxReplacements The number of failed nodes which may be replaced by new ones. If zero,
+     *     a single failed node fails the whole launch.
+     */
+    public NodePlan(
+            String cloud,
+            String template,
+            int count,
+            boolean shouldSuspend,
+            Supplier<JCloudsNodeMetadata> nodeSupplier,
+            int maxReplacements) {
         this.cloudName = cloud;
         this.templateName = template;
         this.count = count;
         this.shouldSuspend = shouldSuspend;
         this.nodeSupplier = nodeSupplier;
+        this.maxReplacements = Math.max(0, maxReplacements);
     }
 
     public String getCloudName() {
@@ -56,4 +78,8 @@ public class NodePlan {
     public Supplier<JCloudsNodeMetadata> getNodeSupplier() {
         return nodeSupplier;
     }
+
+    public int getMaxReplacements() {
+        return maxReplacements;
+    }
 }
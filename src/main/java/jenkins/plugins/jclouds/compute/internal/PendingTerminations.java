@@ -0,0 +1,307 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.collect.ImmutableList;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.jclouds.compute.domain.NodeMetadata;
+
+/**
+ * Keeps track of termination requests which have been sent without waiting for their completion.
+ * <p>
+ * A request is confirmed as soon as the node has vanished from the provider's inventory, is terminated
+ * or (if it was suspended) is suspended. Requests which failed, or whose node is still there after
+ * the confirmation timeout, are sent again. After the maximum number of attempts, the node is
+ * considered leaked and is reported until it is gone or the leaked nodes are forgotten.
+ * <p>
+ * Instances are persisted by {@code JCloudsTerminationVerifier}, so that pending requests
+ * survive a restart of Jenkins.
+ */
+public final class PendingTerminations {
+
+    public enum Action {
+        SUSPEND,
+        DESTROY
+    }
+
+    /**
+     * A node which is being terminated.
+     */
+    public static final class Entry {
+        private final String nodeId;
+        private final Action action;
+        private final String nonce;
+        private final long firstRequest;
+        private int attempts;
+        private long lastCompletion;
+        private boolean inFlight;
+        private boolean failed;
+        private boolean leaked;
+
+        Entry(String nodeId, Action action, @CheckForNull String nonce, long now) {
+            this.nodeId = nodeId;
+            this.action = action;
+            this.nonce = nonce;
+            this.firstRequest = now;
+            this.attempts = 1;
+            this.inFlight = true;
+        }
+
+        private Entry(Entry src) {
+            this.nodeId = src.nodeId;
+            this.action = src.action;
+            this.nonce = src.nonce;
+            this.firstRequest = src.firstRequest;
+            this.attempts = src.attempts;
+            this.lastCompletion = src.lastCompletion;
+            this.inFlight = src.inFlight;
+            this.failed = src.failed;
+            this.leaked = src.leaked;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public long getFirstRequest() {
+            return firstRequest;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * The result of a verification round.
+     */
+    public static final class Verification {
+        private final List<String> confirmed = new ArrayList<>();
+        private final List<String> toSuspend = new ArrayList<>();
+        private final List<String> toDestroy = new ArrayList<>();
+        private final List<Entry> leaked = new ArrayList<>();
+
+        /**
+         * @return The ids of the nodes which are confirmed to be gone (or suspended).
+         */
+        public List<String> getConfirmed() {
+            return confirmed;
+        }
+
+        /**
+         * @return The ids of the nodes whose suspend request must be sent again.
+         */
+        public List<String> getToSuspend() {
+            return toSuspend;
+        }
+
+        /**
+         * @return The ids of the nodes whose destroy request must be sent again.
+         */
+        public List<String> getToDestroy() {
+            return toDestroy;
+        }
+
+        /**
+         * @return The nodes which have been found leaked in this round.
+         */
+        public List<Entry> getLeaked() {
+            return leaked;
+        }
+    }
+
+    private final int maxAttempts;
+    private final long confirmTimeout;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Creates a new instance.
+     * @param maxAttempts The maximum number of requests per node.
+     * @param confirmTimeout The time in milliseconds after a successful request, within which the node must be gone.
+     */
+    public PendingTerminations(int maxAttempts, long confirmTimeout) {
+        this.maxAttempts = maxAttempts;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    /**
+     * Like {@link #requested(Collection, Action, Map, long)}, for nodes without nonces.
+     * @param ids The ids of the nodes.
+     * @param action The requested action.
+     * @param now The current time.
+     * @return The ids of the nodes for which a request must actually be sent.
+     */
+    public List<String> requested(Collection<String> ids, Action action, long now) {
+        return requested(ids, action, Collections.emptyMap(), now);
+    }
+
+    /**
+     * Registers nodes for which a termination request is about to be sent.
+     * Nodes with a request in progress are skipped, leaked nodes start over.
+     * @param ids The ids of the nodes.
+     * @param action The requested action.
+     * @param nonces The JNLP provisioning nonces of agent nodes, which are kept for sending the request again.
+     * @param now The current time.
+     * @return The ids of the nodes for which a request must actually be sent.
+     */
+    public synchronized List<String> requested(
+            Collection<String> ids, Action action, Map<String, String> nonces, long now) {
+        final List<String> ret = new ArrayList<>();
+        for (String id : ids) {
+            final Entry e = entries.get(id);
+            if (null == e || e.leaked) {
+                entries.put(id, new Entry(id, action, nonces.get(id), now));
+                ret.add(id);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Retrieves the JNLP provisioning nonce of a node.
+     * @param id The id of the node.
+     * @return The nonce, which has been registered with the request, or {@code null} if there is none.
+     */
+    @CheckForNull
+    public synchronized String getNonce(String id) {
+        final Entry e = entries.get(id);
+        return null == e ? null : e.nonce;
+    }
+
+    /**
+     * Records that a request for a node has completed.
+     * @param id The id of the node.
+     * @param success {@code true} if the provider accepted the request.
+     * @param now The current time.
+     */
+    public synchronized void completed(String id, boolean success, long now) {
+        final Entry e = entries.get(id);
+        if (null != e) {
+            e.inFlight = false;
+            e.failed = !success;
+            e.lastCompletion = now;
+        }
+    }
+
+    /**
+     * Verifies all nodes without a request in progress.
+     * Nodes which must be requested again are marked as being in progress.
+     * @param lookup Retrieves the current metadata of a node or {@code null} if the node does not exist.
+     * @param now The current time.
+     * @return The confirmed nodes, the nodes to be requested again and the newly leaked nodes.
+     */
+    public synchronized Verification verify(Function<String, NodeMetadata> lookup, long now) {
+        final Verification ret = new Verification();
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry e = it.next();
+            if (e.inFlight) {
+                continue;
+            }
+            if (isDone(lookup.apply(e.nodeId), e.action)) {
+                it.remove();
+                ret.confirmed.add(e.nodeId);
+                continue;
+            }
+            if (e.leaked || (!e.failed && now - e.lastCompletion < confirmTimeout)) {
+                continue;
+            }
+            if (e.attempts >= maxAttempts) {
+                e.leaked = true;
+                ret.leaked.add(e);
+                continue;
+            }
+            e.attempts++;
+            e.inFlight = true;
+            (Action.SUSPEND == e.action ? ret.toSuspend : ret.toDestroy).add(e.nodeId);
+        }
+        return ret;
+    }
+
+    private static boolean isDone(@CheckForNull NodeMetadata nm, Action action) {
+        if (null == nm || NodeMetadata.Status.TERMINATED.equals(nm.getStatus())) {
+            return true;
+        }
+        return Action.SUSPEND == action && NodeMetadata.Status.SUSPENDED.equals(nm.getStatus());
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized boolean isPending(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * @return The nodes which could not be terminated after the maximum number of attempts.
+     */
+    public synchronized List<Entry> getLeaked() {
+        final ImmutableList.Builder<Entry> ret = ImmutableList.builder();
+        for (Entry e : entries.values()) {
+            if (e.leaked) {
+                ret.add(e);
+            }
+        }
+        return ret.build();
+    }
+
+    /**
+     * Stops reporting leaked nodes, e.g. after an administrator has taken care of them.
+     */
+    public synchronized void forgetLeaked() {
+        entries.values().removeIf(e -> e.leaked);
+    }
+
+    /**
+     * Creates a consistent copy, which can be persisted while requests are still in progress.
+     * @return The copy.
+     */
+    public synchronized PendingTerminations copy() {
+        final PendingTerminations ret = new PendingTerminations(maxAttempts, confirmTimeout);
+        for (Entry e : entries.values()) {
+            ret.entries.put(e.nodeId, new Entry(e));
+        }
+        return ret;
+    }
+
+    /**
+     * Takes over the nodes of a persisted instance, which are not known yet.
+     * Requests which were in progress have been lost and are therefore sent again by the next verification.
+     * @param saved The persisted instance.
+     */
+    public synchronized void restore(PendingTerminations saved) {
+        for (Entry e : saved.copy().entries.values()) {
+            if (e.inFlight) {
+                e.inFlight = false;
+                e.failed = true;
+            }
+            entries.putIfAbsent(e.nodeId, e);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.jclouds.compute.domain.Hardware;
+import org.jclouds.compute.domain.Image;
+import org.jclouds.compute.util.ComputeServiceUtils;
+import org.jclouds.domain.Location;
+import org.jclouds.domain.LocationScope;
+
+/**
+ * A cached catalog of the images, hardware profiles and locations offered by a cloud provider.
+ * <p>
+ * Listing the catalog of a large provider can take several seconds, while its content changes
+ * rarely. Therefore, the catalog is fetched once and shared by the configuration UI and the
+ * provisioning code. An expired catalog is still returned while a fresh one is fetched in the background.
+ */
+public final class ProviderCatalog {
+
+    private static final Logger LOGGER = Logger.getLogger(ProviderCatalog.class.getName());
+
+    private final Supplier<Snapshot> loader;
+    private final Executor executor;
+    private final long ttl;
+    private final Object loadLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a new catalog.
+     * @param loader Fetches the catalog from the provider.
+     * @param executor Used for refreshing in the background.
+     * @param ttl The time in milliseconds after which a snapshot is refreshed.
+     */
+    public ProviderCatalog(Supplier<Snapshot> loader, Executor executor, long ttl) {
+        this.loader = loader;
+        this.executor = executor;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Retrieves the catalog. Only the very first call waits for the provider.
+     * If the catalog is expired, a refresh is started in the background.
+     * @return The current snapshot.
+     */
+    @NonNull
+    public Snapshot get() {
+        Snapshot s = snapshot;
+        if (null == s) {
+            return getNotOlderThan(ttl);
+        }
+        if (System.currentTimeMillis() - s.timestamp >= ttl && refreshing.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    load(0L);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not refresh provider catalog", e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return s;
+    }
+
+    /**
+     * Retrieves the catalog, fetching it synchronously if the current snapshot is too old.
+     * @param maxAge The maximum age of the returned snapshot in milliseconds.
+     * @return A snapshot which is not older than maxAge.
+     */
+    @NonNull
+    public Snapshot getNotOlderThan(long maxAge) {
+        Snapshot s = snapshot;
+        if (null != s && System.currentTimeMillis() - s.timestamp < maxAge) {
+            return s;
+        }
+        return load(maxAge);
+    }
+
+    /**
+     * Discards the current snapshot.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot load(long maxAge) {
+        synchronized (loadLock) {
+            // Another thread might have fetched the catalog while we were waiting for the lock.
+            Snapshot s = snapshot;
+            if (null != s && System.currentTimeMillis() - s.timestamp < maxAge) {
+                return s;
+            }
+            final long start = System.currentTimeMillis();
+            s = loader.get();
+            LOGGER.fine(String.format(
+                    "Fetched provider catalog (%d images, %d hardware profiles, %d locations) in %d ms",
+                    s.images.size(), s.hardware.size(), s.locations.size(), System.currentTimeMillis() - start));
+            snapshot = s;
+            return s;
+        }
+    }
+
+    /**
+     * An immutable, indexed view of the catalog at a specific time.
+     */
+    public static final class Snapshot {
+        private final long timestamp;
+        private final Map<String, Image> images;
+        private final Map<String, List<Image>> imagesByName;
+        private final Map<String, Hardware> hardware;
+        private final List<Hardware> hardwareBySize;
+        private final Map<String, Location> locations;
+        private final Map<LocationScope, List<Location>> locationsByScope;
+        private final Map<String, Integer> keys;
+        private final ConcurrentMap<String, List<Image>> regexMatches = new ConcurrentHashMap<>();
+
+        /**
+         * Creates a new snapshot.
+         * @param images The available images.
+         * @param hardware The available hardware profiles.
+         * @param locations The assignable locations.
+         * @param keys The ids of ssh keys by name (Only used by DigitalOcean).
+         * @param timestamp The time of retrieval in milliseconds.
+         */
+        public Snapshot(
+                Set<? extends Image> images,
+                Set<? extends Hardware> hardware,
+                Set<? extends Location> locations,
+                Map<String, Integer> keys,
+                long timestamp) {
+            this.timestamp = timestamp;
+            Map<String, Image> imgs = new HashMap<>();
+            Map<String, List<Image>> names = new HashMap<>();
+            for (Image i : images) {
+                imgs.put(i.getId(), i);
+                if (null != i.getName()) {
+                    names.computeIfAbsent(i.getName(), k -> new ArrayList<>()).add(i);
+                }
+            }
+            this.images = ImmutableMap.copyOf(imgs);
+            this.imagesByName = copyOfLists(names);
+            Map<String, Hardware> hws = new HashMap<>();
+            for (Hardware h : hardware) {
+                hws.put(h.getId(), h);
+            }
+            this.hardware = ImmutableMap.copyOf(hws);
+            List<Hardware> sorted = new ArrayList<>(hws.values());
+            sorted.sort(Comparator.comparingDouble(ComputeServiceUtils::getCores)
+                    .thenComparingInt(Hardware::getRam)
+                    .thenComparing(Hardware::getId));
+            this.hardwareBySize = ImmutableList.copyOf(sorted);
+            Map<String, Location> locs = new HashMap<>();
+            Map<LocationScope, List<Location>> scopes = new HashMap<>();
+            for (Location l : locations) {
+                locs.put(l.getId(), l);
+                scopes.computeIfAbsent(l.getScope(), k -> new ArrayList<>()).add(l);
+            }
+            this.locations = ImmutableMap.copyOf(locs);
+            this.locationsByScope = copyOfLists(scopes);
+            this.keys = ImmutableMap.copyOf(keys);
+        }
+
+        private static <K, V> Map<K, List<V>> copyOfLists(Map<K, List<V>> src) {
+            Map<K, List<V>> ret = new HashMap<>();
+            for (Map.Entry<K, List<V>> e : src.entrySet()) {
+                ret.put(e.getKey(), ImmutableList.copyOf(e.getValue()));
+            }
+            return ImmutableMap.copyOf(ret);
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public List<Image> getImages() {
+            return ImmutableList.copyOf(images.values());
+        }
+
+        @CheckForNull
+        public Image getImage(String id) {
+            return images.get(id);
+        }
+
+        @NonNull
+        public List<Image> getImagesByName(String name) {
+            List<Image> ret = imagesByName.get(name);
+            return null == ret ? ImmutableList.of() : ret;
+        }
+
+        /**
+         * Finds all images whose name matches a regular expression. Results are remembered per snapshot.
+         * @param regex The regular expression.
+         * @return The matching images, sorted by name and id, so that the first one does not depend on hash order.
+         * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+         */
+        @NonNull
+        public List<Image> findImages(String regex) {
+            return regexMatches.computeIfAbsent(regex, r -> {
+                Pattern p = Pattern.compile(r);
+                List<Image> ret = new ArrayList<>();
+                for (Map.Entry<String, List<Image>> e : imagesByName.entrySet()) {
+                    if (p.matcher(e.getKey()).matches()) {
+                        ret.addAll(e.getValue());
+                    }
+                }
+                ret.sort(Comparator.comparing(Image::getName).thenComparing(Image::getId));
+                return ImmutableList.copyOf(ret);
+            });
+        }
+
+        /**
+         * @return All hardware profiles, sorted by cores, ram and id.
+         */
+        public List<Hardware> getHardware() {
+            return hardwareBySize;
+        }
+
+        @CheckForNull
+        public Hardware getHardware(String id) {
+            return hardware.get(id);
+        }
+
+        /**
+         * Finds the smallest hardware profile which satisfies the given requirements.
+         * @param minCores The minimum number of cores.
+         * @param minRam The minimum amount of RAM in MB.
+         * @return The smallest matching hardware profile or {@code null}, if there is none.
+         */
+        @CheckForNull
+        public Hardware getSmallestHardware(double minCores, int minRam) {
+            for (Hardware h : hardwareBySize) {
+                if (ComputeServiceUtils.getCores(h) >= minCores && h.getRam() >= minRam) {
+                    return h;
+                }
+            }
+            return null;
+        }
+
+        public List<Location> getLocations() {
+            return ImmutableList.copyOf(locations.values());
+        }
+
+        @CheckForNull
+        public Location getLocation(String id) {
+            return locations.get(id);
+        }
+
+        @NonNull
+        public List<Location> getLocations(LocationScope scope) {
+            List<Location> ret = locationsByScope.get(scope);
+            return null == ret ? ImmutableList.of() : ret;
+        }
+
+        @CheckForNull
+        public Integer getKeyId(String name) {
+            return keys.get(name);
+        }
+    }
+}
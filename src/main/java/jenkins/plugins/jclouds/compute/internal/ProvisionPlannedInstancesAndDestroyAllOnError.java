@@ -16,123 +16,245 @@
 package jenkins.plugins.jclouds.compute.internal;
 
 import com.google.common.base.Function;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
-import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import org.jclouds.logging.Logger;
 
+/**
+ * Launches supplemental nodes and waits until all of them have either started or failed.
+ * <p>
+ * By default, all started nodes are terminated if a single node fails. If a {@link NodePlan} allows replacements,
+ * failed nodes of that plan are replaced by new ones until its budget is used up instead.
+ */
 public class ProvisionPlannedInstancesAndDestroyAllOnError
         implements Function<Iterable<NodePlan>, Iterable<RunningNode>> {
 
     static final java.util.logging.Logger LOGGER =
             java.util.logging.Logger.getLogger(ProvisionPlannedInstancesAndDestroyAllOnError.class.getName());
 
-    private final ListeningExecutorService executor;
+    private final Function<String, ListeningExecutorService> executors;
+    private final Function<String, CircuitBreaker> breakers;
     private final Logger logger;
     private final Function<Iterable<RunningNode>, Void> terminateNodes;
 
     public ProvisionPlannedInstancesAndDestroyAllOnError(
             ListeningExecutorService executor, Logger logger, Function<Iterable<RunningNode>, Void> terminateNodes) {
-        this.executor = executor;
+        this(cloudName -> executor, logger, terminateNodes);
+    }
+
+    /**
+     * Creates a new instance which runs the nodes of each cloud on its own executor.
+     * @param executors Maps the name of a cloud to the executor used for provisioning its nodes.
+     * @param logger The logger for progress messages.
+     * @param terminateNodes Used for terminating all nodes if any of them fails.
+     */
+    public ProvisionPlannedInstancesAndDestroyAllOnError(
+            Function<String, ListeningExecutorService> executors,
+            Logger logger,
+            Function<Iterable<RunningNode>, Void> terminateNodes) {
+        this(executors, cloudName -> null, logger, terminateNodes);
+    }
+
+    /**
+     * Creates a new instance which runs the nodes of each cloud on its own executor
+     * and stops retrying, while the circuit breaker of the cloud is open.
+     * @param executors Maps the name of a cloud to the executor used for provisioning its nodes.
+     * @param breakers Maps the name of a cloud to its circuit breaker.
+     * @param logger The logger for progress messages.
+     * @param terminateNodes Used for terminating all nodes if any of them fails.
+     */
+    public ProvisionPlannedInstancesAndDestroyAllOnError(
+            Function<String, ListeningExecutorService> executors,
+            Function<String, CircuitBreaker> breakers,
+            Logger logger,
+            Function<Iterable<RunningNode>, Void> terminateNodes) {
+        this.executors = executors;
+        this.breakers = breakers;
         this.logger = logger;
         this.terminateNodes = terminateNodes;
     }
 
     public Iterable<RunningNode> apply(Iterable<NodePlan> nodePlans) {
-        final ImmutableList.Builder<RunningNode> nodeBuilder = ImmutableList.<RunningNode>builder();
-
-        if (null != nodePlans) {
-
-            final AtomicInteger failedCount = new AtomicInteger();
-            final AtomicInteger successCount = new AtomicInteger();
-            final AtomicInteger totalCount = new AtomicInteger();
-
-            for (final NodePlan nodePlan : nodePlans) {
-                if (nodePlan.getCount() > 0) {
-                    totalCount.addAndGet(nodePlan.getCount());
-                    String plural = nodePlan.getCount() > 1 ? "s" : "";
-                    LOGGER.info(String.format(
-                            "Launching %d supplemental node%s from template %s in cloud %s",
-                            nodePlan.getCount(), plural, nodePlan.getTemplateName(), nodePlan.getCloudName()));
-                    logger.info(
-                            "Launching %d supplemental node%s from template %s in cloud %s",
-                            nodePlan.getCount(), plural, nodePlan.getTemplateName(), nodePlan.getCloudName());
-                    for (int i = 0; i < nodePlan.getCount(); i++) {
-                        final int index = i;
-                        ListenableFuture<JCloudsNodeMetadata> provisionTemplate =
-                                executor.submit(new RetryOnExceptionSupplier(nodePlan.getNodeSupplier(), logger));
-
-                        Futures.addCallback(
-                                provisionTemplate,
-                                new FutureCallback<JCloudsNodeMetadata>() {
-                                    public void onSuccess(JCloudsNodeMetadata result) {
-                                        if (result != null) {
-                                            synchronized (nodeBuilder) {
-                                                RunningNode rn = new RunningNode(
-                                                        nodePlan.getCloudName(),
-                                                        nodePlan.getTemplateName(),
-                                                        nodePlan.getShouldSuspend(),
-                                                        result);
-                                                nodeBuilder.add(rn);
-                                                successCount.incrementAndGet();
-                                            }
-                                        } else {
-                                            failedCount.incrementAndGet();
-                                        }
-                                    }
-
-                                    public void onFailure(Throwable t) {
-                                        failedCount.incrementAndGet();
-                                        LOGGER.log(
-                                                java.util.logging.Level.WARNING,
-                                                String.format(
-                                                        "Error launching supplemental node #%d of %d from template %s in cloud %s",
-                                                        index,
-                                                        nodePlan.getCount(),
-                                                        plural,
-                                                        nodePlan.getTemplateName(),
-                                                        nodePlan.getCloudName()),
-                                                t);
-                                        logger.warn(
-                                                t,
-                                                "Error launching supplemental node #%d of %d from template %s in cloud %s",
-                                                index,
-                                                nodePlan.getCount(),
-                                                plural,
-                                                nodePlan.getTemplateName(),
-                                                nodePlan.getCloudName());
-                                    }
-                                },
-                                executor);
-                    }
+        try {
+            return provision(nodePlans);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while launching supplemental nodes", e);
+        }
+    }
+
+    /**
+     * Launches the nodes of all plans.
+     * @param nodePlans The plans to launch.
+     * @return The started nodes.
+     * @throws IllegalStateException if one or more nodes could not be started. All started nodes have been terminated.
+     * @throws InterruptedException if interrupted (e.g. because the build has been aborted) while waiting.
+     *     All nodes which have been started so far or will be started later are terminated.
+     */
+    public Iterable<RunningNode> provision(Iterable<NodePlan> nodePlans) throws InterruptedException {
+        if (null == nodePlans) {
+            return ImmutableList.of();
+        }
+        final Launch launch = new Launch();
+        final List<ListenableFuture<RunningNode>> futures = new ArrayList<>();
+        for (final NodePlan nodePlan : nodePlans) {
+            if (nodePlan.getCount() > 0) {
+                String plural = nodePlan.getCount() > 1 ? "s" : "";
+                LOGGER.info(String.format(
+                        "Launching %d supplemental node%s from template %s in cloud %s",
+                        nodePlan.getCount(), plural, nodePlan.getTemplateName(), nodePlan.getCloudName()));
+                logger.info(
+                        "Launching %d supplemental node%s from template %s in cloud %s",
+                        nodePlan.getCount(), plural, nodePlan.getTemplateName(), nodePlan.getCloudName());
+                final ListeningExecutorService executor = executors.apply(nodePlan.getCloudName());
+                final CircuitBreaker breaker = breakers.apply(nodePlan.getCloudName());
+                final AtomicInteger budget = new AtomicInteger(nodePlan.getMaxReplacements());
+                for (int i = 1; i <= nodePlan.getCount(); i++) {
+                    futures.add(launchNode(nodePlan, i, executor, breaker, budget, launch));
                 }
             }
+        }
+        if (futures.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        try {
+            Futures.whenAllComplete(futures)
+                    .call(() -> null, MoreExecutors.directExecutor())
+                    .get();
+        } catch (InterruptedException e) {
+            final List<RunningNode> started = launch.abort();
+            LOGGER.info(String.format("Launch of supplemental nodes aborted, terminating %d nodes", started.size()));
+            logger.info("Launch of supplemental nodes aborted, terminating %d nodes", started.size());
+            terminateNodes.apply(started);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
 
-            if (0 < totalCount.get()) {
-                // REALLY block until all complete
-                while (successCount.get() + failedCount.get() < totalCount.get()) {
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException e) {
-                        LOGGER.warning("Interrupt while waiting for node launch");
+        final ImmutableList.Builder<RunningNode> nodeBuilder = ImmutableList.builder();
+        int failed = 0;
+        for (ListenableFuture<RunningNode> f : futures) {
+            try {
+                nodeBuilder.add(Futures.getDone(f));
+            } catch (ExecutionException | CancellationException e) {
+                failed++;
+            }
+        }
+        final ImmutableList<RunningNode> runningNodes = nodeBuilder.build();
+        if (failed > 0) {
+            terminateNodes.apply(runningNodes);
+            throw new IllegalStateException(
+                    String.format("%d of %d supplemental nodes failed to launch.", failed, futures.size()));
+        }
+        LOGGER.info(String.format("launched %d supplemental nodes", runningNodes.size()));
+        logger.info("launched %d supplemental nodes", runningNodes.size());
+        return runningNodes;
+    }
+
+    /**
+     * Launches a single node. If that fails and the budget of the plan permits, a replacement is launched.
+     * @return A future which completes, as soon as the node or its last replacement has started or failed.
+     */
+    private ListenableFuture<RunningNode> launchNode(
+            final NodePlan nodePlan,
+            final int index,
+            final ListeningExecutorService executor,
+            final CircuitBreaker breaker,
+            final AtomicInteger budget,
+            final Launch launch) {
+        // Nodes which have not been requested yet, are not created anymore after an abort.
+        final Supplier<JCloudsNodeMetadata> supplier = () -> {
+            if (launch.isAborted()) {
+                throw new CancellationException("Launch of supplemental nodes has been aborted");
+            }
+            step(launch, nodePlan, index, "create requested");
+            return nodePlan.getNodeSupplier().get();
+        };
+        final ListenableFuture<JCloudsNodeMetadata> created =
+                executor.submit(new RetryOnExceptionSupplier(supplier, logger, RetryPolicy.DEFAULT, breaker));
+        final ListenableFuture<RunningNode> ret = Futures.transform(
+                created,
+                nmd -> {
+                    if (null == nmd) {
+                        throw new IllegalStateException("No node has been created");
                     }
-                }
+                    step(launch, nodePlan, index, "node " + nmd.getId() + " running");
+                    return launch.started(new RunningNode(
+                            nodePlan.getCloudName(), nodePlan.getTemplateName(), nodePlan.getShouldSuspend(), nmd));
+                },
+                MoreExecutors.directExecutor());
+        return Futures.catchingAsync(
+                ret,
+                Throwable.class,
+                t -> {
+                    if (t instanceof CancellationException) {
+                        return Futures.immediateFailedFuture(t);
+                    }
+                    final String msg = String.format(
+                            "Error launching supplemental node #%d of %d from template %s in cloud %s",
+                            index, nodePlan.getCount(), nodePlan.getTemplateName(), nodePlan.getCloudName());
+                    LOGGER.log(Level.WARNING, msg, t);
+                    logger.warn(t, "%s", msg);
+                    if (launch.isAborted() || budget.getAndUpdate(b -> b > 0 ? b - 1 : 0) <= 0) {
+                        return Futures.immediateFailedFuture(t);
+                    }
+                    LOGGER.info(String.format("Replacing failed supplemental node #%d", index));
+                    logger.info("Replacing failed supplemental node #%d", index);
+                    return launchNode(nodePlan, index, executor, breaker, budget, launch);
+                },
+                MoreExecutors.directExecutor());
+    }
 
-                final ImmutableList<RunningNode> runningNodes = nodeBuilder.build();
-                if (failedCount.get() > 0) {
-                    terminateNodes.apply(runningNodes);
-                    throw new IllegalStateException("One or more nodes failed to launch.");
-                }
+    /**
+     * Logs a timestamped step of a single node into the build log.
+     */
+    private void step(final Launch launch, final NodePlan nodePlan, final int index, final String what) {
+        logger.info(
+                "Supplemental node #%d from template %s in cloud %s: %s after %.1f s",
+                index,
+                nodePlan.getTemplateName(),
+                nodePlan.getCloudName(),
+                what,
+                (System.currentTimeMillis() - launch.startTime) / 1000.0);
+    }
+
+    /**
+     * Tracks the started nodes of a launch, so that they can be terminated if the launch is aborted.
+     */
+    private final class Launch {
+        private final long startTime = System.currentTimeMillis();
+        private final List<RunningNode> running = new ArrayList<>();
+        private boolean aborted;
 
-                LOGGER.info(String.format("launched %d supplemental nodes", successCount.get()));
-                logger.info("launched %d supplemental nodes", successCount.get());
+        synchronized boolean isAborted() {
+            return aborted;
+        }
 
-                return runningNodes;
+        RunningNode started(RunningNode rn) {
+            synchronized (this) {
+                if (!aborted) {
+                    running.add(rn);
+                    return rn;
+                }
             }
+            terminateNodes.apply(ImmutableList.of(rn));
+            throw new CancellationException("Launch of supplemental nodes has been aborted");
+        }
+
+        synchronized List<RunningNode> abort() {
+            aborted = true;
+            return new ArrayList<>(running);
         }
-        return nodeBuilder.build();
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import hudson.security.ACL;
+import java.lang.reflect.Method;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.security.ImpersonatingExecutorService;
+
+/**
+ * A bounded executor for the long running tasks of a cloud (creating, launching and deleting nodes).
+ * <p>
+ * These tasks block for minutes in calls to the cloud provider and while waiting for agents to connect.
+ * Running them on {@code Computer.threadPoolForRemoting} would compete with remoting work, so every
+ * cloud uses its own executor with a configurable number of concurrent tasks. Excess tasks are queued.
+ * Optionally, the tasks run on virtual threads, if the JVM supports them.
+ */
+public final class ProvisioningExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(ProvisioningExecutor.class.getName());
+
+    private final ThreadPoolExecutor pool;
+    private final ListeningExecutorService service;
+    private final boolean virtual;
+
+    /**
+     * Creates a new executor.
+     * @param name The name used for the threads of this executor.
+     * @param concurrency The maximum number of concurrently running tasks.
+     * @param useVirtualThreads Whether to run tasks on virtual threads (ignored if unsupported by the JVM).
+     */
+    public ProvisioningExecutor(String name, int concurrency, boolean useVirtualThreads) {
+        ThreadFactory tf = useVirtualThreads ? virtualThreadFactory(name) : null;
+        this.virtual = null != tf;
+        if (null == tf) {
+            tf = platformThreadFactory(name);
+        }
+        this.pool = new ThreadPoolExecutor(
+                concurrency, concurrency, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), tf);
+        pool.allowCoreThreadTimeOut(true);
+        this.service = MoreExecutors.listeningDecorator(new ImpersonatingExecutorService(pool, ACL.SYSTEM2));
+    }
+
+    private static ThreadFactory platformThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " #" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Creates a factory for virtual threads using reflection, because
+     * the plugin must still run on JVMs without virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory(final String name) {
+        try {
+            // Methods must be looked up on the public interface, because the implementation is not accessible.
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            final Method factoryMethod = builderClass.getMethod("factory");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = nameMethod.invoke(builder, name + " #", 1L);
+            return (ThreadFactory) factoryMethod.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.INFO, "Virtual threads are not available, using platform threads for " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The executor service to be used for submitting tasks.
+     */
+    public ListeningExecutorService getService() {
+        return service;
+    }
+
+    /**
+     * Changes the maximum number of concurrently running tasks.
+     * @param concurrency The new maximum.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        if (concurrency > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(concurrency);
+            pool.setCorePoolSize(concurrency);
+        } else {
+            pool.setCorePoolSize(concurrency);
+            pool.setMaximumPoolSize(concurrency);
+        }
+    }
+
+    public int getConcurrency() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Initiates an orderly shutdown. Already submitted tasks are still executed.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Keeps track of the instance cap of a cloud.
+ * <p>
+ * Every code path that creates nodes reserves its slots here first. Reserving and releasing happens
+ * atomically and without calling the provider. A reserved slot is either committed (when the node
+ * has been created) or released (when provisioning failed). The number of running nodes is reconciled
+ * periodically with snapshots of the provider's node inventory. Nodes committed after a snapshot
+ * was taken are added to the snapshot's count, so a reconciliation never loses fresh nodes.
+ */
+public final class ReservationLedger {
+
+    private int cap;
+    private int running;
+    private int reserved;
+    private long reconciledAt;
+    private long lastUse;
+    private final Deque<Long> commits = new ArrayDeque<>();
+
+    /**
+     * Creates a new ledger.
+     * @param cap The maximum number of nodes.
+     */
+    public ReservationLedger(int cap) {
+        this.cap = cap;
+    }
+
+    public synchronized void setCap(int cap) {
+        this.cap = cap;
+    }
+
+    public synchronized int getCap() {
+        return cap;
+    }
+
+    /**
+     * Reserves slots, if all of them are available.
+     * @param count The number of slots to reserve.
+     * @return {@code true} if the slots have been reserved.
+     */
+    public synchronized boolean tryReserve(int count) {
+        lastUse = System.currentTimeMillis();
+        if (running + reserved + count > cap) {
+            return false;
+        }
+        reserved += count;
+        return true;
+    }
+
+    /**
+     * Reserves as many slots as available, up to the given number.
+     * @param count The maximum number of slots to reserve.
+     * @return The number of slots actually reserved.
+     */
+    public synchronized int reserveUpTo(int count) {
+        lastUse = System.currentTimeMillis();
+        int ret = Math.max(0, Math.min(count, cap - running - reserved));
+        reserved += ret;
+        return ret;
+    }
+
+    /**
+     * Converts reserved slots into running nodes.
+     * @param count The number of nodes which have been created.
+     */
+    public synchronized void commit(int count) {
+        final int n = Math.min(count, reserved);
+        reserved -= n;
+        running += n;
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            commits.add(now);
+        }
+    }
+
+    /**
+     * Releases reserved slots which did not result in a node.
+     * @param count The number of slots to release.
+     */
+    public synchronized void release(int count) {
+        reserved = Math.max(0, reserved - count);
+    }
+
+    /**
+     * Reconciles the number of running nodes with a snapshot of the provider's inventory.
+     * Snapshots older than the last reconciled one are ignored.
+     * @param actual The number of running nodes in the snapshot.
+     * @param timestamp The time when the snapshot was taken.
+     */
+    public synchronized void reconcile(int actual, long timestamp) {
+        if (timestamp < reconciledAt) {
+            return;
+        }
+        final Iterator<Long> it = commits.iterator();
+        while (it.hasNext() && it.next().longValue() < timestamp) {
+            it.remove();
+        }
+        running = actual + commits.size();
+        reconciledAt = timestamp;
+    }
+
+    /**
+     * Checks, if the ledger has been reconciled recently.
+     * @param maxAge The maximum age of the last reconciled snapshot in milliseconds.
+     * @return {@code true} if a snapshot not older than maxAge has been reconciled.
+     */
+    public synchronized boolean isReconciledWithin(long maxAge) {
+        return 0 < reconciledAt && System.currentTimeMillis() - reconciledAt < maxAge;
+    }
+
+    /**
+     * Checks, if the ledger is in use.
+     * @param idlePeriod The period in milliseconds after which an unused ledger is considered idle.
+     * @return {@code true} if there are outstanding reservations or slots have been reserved recently.
+     */
+    public synchronized boolean isActive(long idlePeriod) {
+        return 0 < reserved || System.currentTimeMillis() - lastUse < idlePeriod;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getReserved() {
+        return reserved;
+    }
+
+    public synchronized int getAvailable() {
+        return Math.max(0, cap - running - reserved);
+    }
+}
@@ -16,36 +16,45 @@
 package jenkins.plugins.jclouds.compute.internal;
 
 import com.google.common.base.Supplier;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import java.util.concurrent.Callable;
 import org.jclouds.logging.Logger;
 
+/**
+ * Creates a node, retrying transient errors according to a {@link RetryPolicy}.
+ */
 class RetryOnExceptionSupplier implements Callable<JCloudsNodeMetadata> {
-    private static final int MAX_ATTEMPTS = 5;
     private final Logger logger;
     private final Supplier<JCloudsNodeMetadata> supplier;
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
 
     RetryOnExceptionSupplier(Supplier<JCloudsNodeMetadata> supplier, Logger logger) {
+        this(supplier, logger, RetryPolicy.DEFAULT, null);
+    }
+
+    RetryOnExceptionSupplier(
+            Supplier<JCloudsNodeMetadata> supplier,
+            Logger logger,
+            RetryPolicy policy,
+            @CheckForNull CircuitBreaker breaker) {
         this.supplier = supplier;
         this.logger = logger;
+        this.policy = policy;
+        this.breaker = breaker;
     }
 
     public JCloudsNodeMetadata call() throws Exception {
-        int attempts = 0;
-
-        while (attempts < MAX_ATTEMPTS) {
-            attempts++;
-            try {
-                JCloudsNodeMetadata n = supplier.get();
-                if (n != null) {
-                    return n;
-                }
-            } catch (RuntimeException e) {
-                logger.warn("Exception creating a node: " + e.getMessage());
-                // Something to log the e.getCause() which should be a
-                // RunNodesException
-            }
-        }
-
-        return null;
+        return policy.call(
+                () -> {
+                    try {
+                        return supplier.get();
+                    } catch (RuntimeException e) {
+                        logger.warn("Exception creating a node (%s): %s", RetryPolicy.classify(e), e.getMessage());
+                        throw e;
+                    }
+                },
+                breaker,
+                "Creating a node");
     }
 }
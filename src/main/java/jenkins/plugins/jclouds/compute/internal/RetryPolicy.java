@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jclouds.compute.RunNodesException;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.rest.AuthorizationException;
+import org.jclouds.rest.ResourceNotFoundException;
+
+/**
+ * Retries calls to a cloud provider, depending on the kind of error.
+ * <p>
+ * Only transient errors are retried, with an exponentially growing, jittered delay between attempts.
+ * Capacity shortages are left to the failover of {@link TemplatePool}, exceeded quotas, rejected credentials
+ * and fatal errors (e.g. a missing image) would just fail again. The final outcome of every call is reported
+ * to an optional {@link CircuitBreaker}, which rejects calls right away while the provider keeps failing.
+ */
+public final class RetryPolicy {
+
+    private static final Logger LOGGER = Logger.getLogger(RetryPolicy.class.getName());
+
+    /**
+     * Messages of provider errors which indicate that an account limit has been reached.
+     */
+    private static final String[] QUOTA_MARKERS = {
+        "InstanceLimitExceeded",
+        "VcpuLimitExceeded",
+        "QuotaExceeded",
+        "QUOTA_EXCEEDED",
+        "Quota exceeded",
+        "quota exceeded",
+        "OperationNotAllowed",
+        "OverQuota"
+    };
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 2000L, 30000L);
+
+    public enum ErrorClass {
+        /** Might succeed if tried again shortly, e.g. throttling, server errors or timeouts. */
+        TRANSIENT,
+        /** The provider has not enough resources for the requested node right now. */
+        CAPACITY,
+        /** An account limit has been reached. */
+        QUOTA,
+        /** The provider rejected the credentials of the cloud. */
+        AUTH,
+        /** Fails again no matter how often it is tried, e.g. a missing image or hardware profile. */
+        FATAL
+    }
+
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    /**
+     * Creates a new policy.
+     * @param maxAttempts The maximum number of attempts, including the first one.
+     * @param baseDelay The delay in milliseconds before the first retry.
+     * @param maxDelay The upper bound of the delay in milliseconds.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(0L, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Calculates the delay before a retry. The nominal delay doubles with every attempt,
+     * the actual delay is randomly chosen between half and all of it, so that concurrent
+     * callers do not retry in lockstep.
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    public long getDelay(int attempt) {
+        final long nominal = baseDelay << Math.min(Math.max(0, attempt - 1), 20);
+        final long delay = Math.min(maxDelay, nominal < 0 ? maxDelay : nominal);
+        if (delay < 2) {
+            return delay;
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Calls a provider until it succeeds, a non-transient error occurs or all attempts are used up.
+     * The breaker is acquired once and learns about the final outcome only, so a single call
+     * never counts as more than one failure. Retries stop as soon as the breaker is open.
+     * @param call The call to perform.
+     * @param breaker The circuit breaker of the cloud or {@code null}.
+     * @param what A description of the call for log messages.
+     * @return The result of the call.
+     * @throws CircuitBreaker.OpenException if the circuit breaker rejected the call.
+     * @throws InterruptedException if interrupted while waiting for a retry.
+     * @throws java.util.concurrent.CancellationException if the call has been cancelled. It is not retried.
+     * @throws Exception The last error of the call.
+     */
+    public <T> T call(Callable<T> call, @CheckForNull CircuitBreaker breaker, String what) throws Exception {
+        if (null == breaker) {
+            return retry(call, null, what);
+        }
+        breaker.acquire();
+        try {
+            T ret = retry(call, breaker, what);
+            breaker.succeeded();
+            return ret;
+        } catch (InterruptedException | CancellationException e) {
+            breaker.release();
+            throw e;
+        } catch (Exception e) {
+            breaker.failed(classify(e));
+            throw e;
+        }
+    }
+
+    private <T> T retry(Callable<T> call, @CheckForNull CircuitBreaker breaker, String what) throws Exception {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                return call.call();
+            } catch (InterruptedException | CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                if (ErrorClass.TRANSIENT != classify(e)
+                        || attempt >= maxAttempts
+                        || (null != breaker && breaker.isOpen())) {
+                    throw e;
+                }
+                final long delay = getDelay(attempt);
+                LOGGER.warning(String.format(
+                        "%s failed (attempt %d of %d), retrying in %d ms: %s",
+                        what, attempt, maxAttempts, delay, e.getMessage()));
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Classifies an error of a cloud provider.
+     * @param t The error to classify.
+     * @return The class of the error.
+     */
+    public static ErrorClass classify(Throwable t) {
+        if (ApiRateLimiter.isThrottling(t)) {
+            return ErrorClass.TRANSIENT;
+        }
+        if (hasMarker(t, QUOTA_MARKERS)) {
+            return ErrorClass.QUOTA;
+        }
+        if (TemplatePool.isCapacityError(t)) {
+            return ErrorClass.CAPACITY;
+        }
+        if (isAuthError(t)) {
+            return ErrorClass.AUTH;
+        }
+        for (Throwable c = t; null != c; c = c.getCause()) {
+            if (c instanceof ResourceNotFoundException
+                    || c instanceof NoSuchElementException
+                    || c instanceof IllegalArgumentException) {
+                return ErrorClass.FATAL;
+            }
+            if (c instanceof RunNodesException) {
+                for (Throwable e : ((RunNodesException) c).getExecutionErrors().values()) {
+                    if (ErrorClass.FATAL == classify(e)) {
+                        return ErrorClass.FATAL;
+                    }
+                }
+            }
+            if (c instanceof HttpResponseException) {
+                HttpResponseException hre = (HttpResponseException) c;
+                if (null != hre.getResponse()) {
+                    final int status = hre.getResponse().getStatusCode();
+                    // Request timeout and conflicts may go away, other client errors do not.
+                    if (400 <= status && 500 > status && 408 != status && 409 != status) {
+                        return ErrorClass.FATAL;
+                    }
+                }
+            }
+        }
+        return ErrorClass.TRANSIENT;
+    }
+
+    private static boolean isAuthError(Throwable t) {
+        for (Throwable c = t; null != c; c = c.getCause()) {
+            if (c instanceof AuthorizationException) {
+                return true;
+            }
+            if (c instanceof RunNodesException) {
+                for (Throwable e : ((RunNodesException) c).getExecutionErrors().values()) {
+                    if (isAuthError(e)) {
+                        return true;
+                    }
+                }
+            }
+            if (c instanceof HttpResponseException) {
+                HttpResponseException hre = (HttpResponseException) c;
+                if (null != hre.getResponse()) {
+                    final int status = hre.getResponse().getStatusCode();
+                    if (401 == status || 403 == status) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasMarker(Throwable t, String[] markers) {
+        for (Throwable c = t; null != c; c = c.getCause()) {
+            if (c instanceof RunNodesException) {
+                for (Throwable e : ((RunNodesException) c).getExecutionErrors().values()) {
+                    if (hasMarker(e, markers)) {
+                        return true;
+                    }
+                }
+            }
+            String msg = c.getMessage();
+            if (null != msg) {
+                for (String marker : markers) {
+                    if (msg.contains(marker)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the executors which have been routed between the clouds of a spillover chain.
+ * All counts are in executors, since that is the unit of the workload of NodeProvisioner.
+ */
+public final class SpilloverStats {
+
+    private final AtomicLong routedOut = new AtomicLong();
+    private final AtomicLong acceptedIn = new AtomicLong();
+    private final AtomicLong unplaced = new AtomicLong();
+
+    /**
+     * Records workload, which could not be taken by this cloud and has been provisioned by another cloud.
+     * @param executors The number of executors.
+     */
+    public void routedOut(final int executors) {
+        routedOut.addAndGet(executors);
+    }
+
+    /**
+     * Records workload, which has been taken by this cloud on behalf of another cloud.
+     * @param executors The number of executors.
+     */
+    public void acceptedIn(final int executors) {
+        acceptedIn.addAndGet(executors);
+    }
+
+    /**
+     * Records workload, which could not be taken by any cloud of the chain.
+     * @param executors The number of executors.
+     */
+    public void unplaced(final int executors) {
+        unplaced.addAndGet(executors);
+    }
+
+    public long getRoutedOut() {
+        return routedOut.get();
+    }
+
+    public long getAcceptedIn() {
+        return acceptedIn.get();
+    }
+
+    public long getUnplaced() {
+        return unplaced.get();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.jclouds.compute.RunNodesException;
+
+/**
+ * Selects one of several templates which match the same label.
+ * <p>
+ * Only members with the best (lowest) priority are used, as long as at least one of them is healthy.
+ * Within a priority, nodes are spread according to the weights of the members by a smooth weighted
+ * round robin. A member is cooled down immediately when the provider reports insufficient capacity
+ * and after several consecutive failures otherwise. The cooldown doubles with every further failure,
+ * up to a maximum. A single success makes the member healthy again.
+ * @param <T> The type of the members.
+ */
+public final class TemplatePool<T> {
+
+    /**
+     * Messages of provider errors which indicate that the requested resources are not available right now.
+     */
+    private static final String[] CAPACITY_MARKERS = {
+        "InsufficientInstanceCapacity",
+        "InsufficientCapacity",
+        "InsufficientHostCapacity",
+        "No valid host",
+        "ZONE_RESOURCE_POOL_EXHAUSTED",
+        "ResourcePoolExhausted",
+        "SkuNotAvailable",
+        "AllocationFailed",
+        "out of capacity"
+    };
+
+    /**
+     * Upper bound for the number of remembered round robin states.
+     */
+    private static final int MAX_POOLS = 1000;
+
+    private static final class Health {
+        int failures;
+        long cooldownUntil;
+    }
+
+    private final Function<T, String> keyOf;
+    private final ToIntFunction<T> weightOf;
+    private final ToIntFunction<T> priorityOf;
+    private final int failureThreshold;
+    private final long cooldown;
+    private final long maxCooldown;
+    private final Map<String, Health> health = new HashMap<>();
+    private final Map<String, Map<String, Long>> rounds = new HashMap<>();
+
+    /**
+     * Creates a new pool.
+     * @param keyOf Gets the unique key of a member.
+     * @param weightOf Gets the weight of a member. Values below 1 are treated as 1.
+     * @param priorityOf Gets the priority of a member. Lower values are preferred.
+     * @param failureThreshold The number of consecutive failures after which a member is cooled down.
+     * @param cooldown The initial cooldown in milliseconds.
+     * @param maxCooldown The maximum cooldown in milliseconds.
+     */
+    public TemplatePool(
+            final Function<T, String> keyOf,
+            final ToIntFunction<T> weightOf,
+            final ToIntFunction<T> priorityOf,
+            final int failureThreshold,
+            final long cooldown,
+            final long maxCooldown) {
+        this.keyOf = keyOf;
+        this.weightOf = weightOf;
+        this.priorityOf = priorityOf;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.cooldown = cooldown;
+        this.maxCooldown = Math.max(cooldown, maxCooldown);
+    }
+
+    /**
+     * Selects the member which should provide the next node.
+     * If all members are cooling down, the one that recovers first is selected,
+     * so that provisioning never stalls completely.
+     * @param pool The key of the round robin state, e.g. the label expression.
+     * @param members The members of the pool.
+     * @return The selected member or {@code null} if there are no members.
+     */
+    public T select(final String pool, final List<T> members) {
+        return select(pool, members, System.currentTimeMillis());
+    }
+
+    synchronized T select(final String pool, final List<T> members, final long now) {
+        if (members.isEmpty()) {
+            return null;
+        }
+        if (1 == members.size()) {
+            return members.get(0);
+        }
+        int best = Integer.MAX_VALUE;
+        T soonest = null;
+        long soonestEnd = Long.MAX_VALUE;
+        for (T m : members) {
+            final long end = cooldownEnd(m);
+            if (end <= now) {
+                best = Math.min(best, priorityOf.applyAsInt(m));
+            } else if (end < soonestEnd) {
+                soonestEnd = end;
+                soonest = m;
+            }
+        }
+        if (Integer.MAX_VALUE == best) {
+            return soonest;
+        }
+        if (rounds.size() >= MAX_POOLS && !rounds.containsKey(pool)) {
+            rounds.clear();
+        }
+        final Map<String, Long> current = rounds.computeIfAbsent(pool, k -> new LinkedHashMap<>());
+        long total = 0;
+        T ret = null;
+        long max = Long.MIN_VALUE;
+        for (T m : members) {
+            if (cooldownEnd(m) > now || priorityOf.applyAsInt(m) != best) {
+                continue;
+            }
+            final int weight = Math.max(1, weightOf.applyAsInt(m));
+            final long c = current.merge(keyOf.apply(m), (long) weight, Long::sum);
+            total += weight;
+            if (c > max) {
+                max = c;
+                ret = m;
+            }
+        }
+        current.merge(keyOf.apply(ret), -total, Long::sum);
+        return ret;
+    }
+
+    /**
+     * Checks, whether a member is not cooling down.
+     * @param member The member to check.
+     * @return {@code true} if the member may be selected.
+     */
+    public boolean isAvailable(final T member) {
+        return isAvailable(member, System.currentTimeMillis());
+    }
+
+    synchronized boolean isAvailable(final T member, final long now) {
+        return cooldownEnd(member) <= now;
+    }
+
+    /**
+     * Records a successful provisioning, which makes the member healthy again.
+     * @param member The member which has provisioned a node.
+     */
+    public synchronized void succeeded(final T member) {
+        health.remove(keyOf.apply(member));
+    }
+
+    /**
+     * Records a failed provisioning.
+     * @param member The member which has failed.
+     * @param capacity {@code true} if the provider reported insufficient capacity.
+     * @return {@code true} if the member is cooling down now.
+     */
+    public boolean failed(final T member, final boolean capacity) {
+        return failed(member, capacity, System.currentTimeMillis());
+    }
+
+    synchronized boolean failed(final T member, final boolean capacity, final long now) {
+        final Health h = health.computeIfAbsent(keyOf.apply(member), k -> new Health());
+        h.failures++;
+        if (!capacity && h.failures < failureThreshold) {
+            return false;
+        }
+        final int doublings = Math.min(20, Math.max(0, h.failures - failureThreshold));
+        h.cooldownUntil = now + Math.min(maxCooldown, cooldown << doublings);
+        return true;
+    }
+
+    /**
+     * Forgets all members whose keys are not contained in the given list.
+     * @param keys The keys of the current members.
+     */
+    public synchronized void retainAll(final List<String> keys) {
+        health.keySet().retainAll(keys);
+        for (Map<String, Long> current : rounds.values()) {
+            current.keySet().retainAll(keys);
+        }
+    }
+
+    private long cooldownEnd(final T member) {
+        final Health h = health.get(keyOf.apply(member));
+        return null == h ? 0 : h.cooldownUntil;
+    }
+
+    /**
+     * Checks, whether a provider error indicates insufficient capacity for the requested node.
+     * @param t The error to check.
+     * @return {@code true} if another template might succeed.
+     */
+    public static boolean isCapacityError(Throwable t) {
+        for (Throwable c = t; null != c; c = c.getCause()) {
+            if (c instanceof RunNodesException) {
+                for (Throwable e : ((RunNodesException) c).getExecutionErrors().values()) {
+                    if (isCapacityError(e)) {
+                        return true;
+                    }
+                }
+            }
+            String msg = c.getMessage();
+            if (null != msg) {
+                for (String marker : CAPACITY_MARKERS) {
+                    if (msg.contains(marker)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Objects;
+import org.jclouds.compute.domain.Template;
+
+/**
+ * The outcome of resolving image, hardware and location of a template.
+ * <p>
+ * Resolving a template against the provider's catalog (e.g. matching minCores/minRam against
+ * all hardware profiles) can be expensive, while the result rarely changes. Therefore, the ids
+ * of a resolved template are remembered and used for subsequent provisioning, as long as the
+ * selection criteria are unchanged and the resolution has not expired.
+ */
+public final class TemplateResolution {
+
+    private final String key;
+    private final String imageId;
+    private final String hardwareId;
+    private final String locationId;
+    private final long timestamp;
+
+    /**
+     * Creates a new resolution.
+     * @param key The selection criteria which were used for resolving.
+     * @param imageId The id of the resolved image.
+     * @param hardwareId The id of the resolved hardware.
+     * @param locationId The id of the resolved location, or {@code null} if unknown.
+     * @param timestamp The time of resolution in milliseconds.
+     */
+    public TemplateResolution(
+            @NonNull String key,
+            @NonNull String imageId,
+            @NonNull String hardwareId,
+            @CheckForNull String locationId,
+            long timestamp) {
+        this.key = key;
+        this.imageId = imageId;
+        this.hardwareId = hardwareId;
+        this.locationId = locationId;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates a new resolution from a template which was built by a TemplateBuilder.
+     * @param key The selection criteria which were used for building the template.
+     * @param template The template.
+     * @return The new resolution.
+     */
+    public static TemplateResolution of(@NonNull String key, @NonNull Template template) {
+        String loc = null == template.getLocation() ? null : template.getLocation().getId();
+        return new TemplateResolution(
+                key,
+                template.getImage().getId(),
+                template.getHardware().getId(),
+                loc,
+                System.currentTimeMillis());
+    }
+
+    public String getImageId() {
+        return imageId;
+    }
+
+    public String getHardwareId() {
+        return hardwareId;
+    }
+
+    @CheckForNull
+    public String getLocationId() {
+        return locationId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Checks, whether this resolution can be used.
+     * @param currentKey The current selection criteria.
+     * @param ttl The time to live in milliseconds.
+     * @return {@code true} if the selection criteria are unchanged and the resolution has not expired.
+     */
+    public boolean isValid(String currentKey, long ttl) {
+        return Objects.equals(key, currentKey) && System.currentTimeMillis() - timestamp < ttl;
+    }
+}
@@ -20,16 +20,22 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableMultimap.Builder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import hudson.XmlFile;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
 import jenkins.plugins.jclouds.compute.JCloudsCloud;
-import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.domain.NodeMetadata;
 
 public class TerminateNodes implements Function<Iterable<RunningNode>, Void>, Serializable {
@@ -87,8 +93,8 @@ public class TerminateNodes implements Function<Iterable<RunningNode>, Void>, Se
 
     public TerminateNodes() {}
 
-    private static ComputeService getCloudCompute(String cloud) {
-        return ((JCloudsCloud) Jenkins.get().clouds.getByName(cloud)).getCompute();
+    private static JCloudsCloud getCloud(String cloud) {
+        return (JCloudsCloud) Jenkins.get().clouds.getByName(cloud);
     }
 
     public Void apply(Iterable<RunningNode> runningNodes) {
@@ -108,22 +114,54 @@ public class TerminateNodes implements Function<Iterable<RunningNode>, Void>, Se
             Multimap<String, String> toDestroy = cloudNodesToDestroyBuilder.build();
 
             Persistent p = new Persistent(this.toString(), toSuspend, toDestroy);
+            List<ListenableFuture<?>> requests = requestAsync(toSuspend, toDestroy);
             suspendIfSupported(toSuspend);
             destroy(toDestroy);
-            p.remove();
+            if (requests.isEmpty()) {
+                p.remove();
+            } else {
+                // Keep the record for JCloudsStartupHandler until all requests have been carried out.
+                Futures.whenAllSucceed(requests).run(p::remove, MoreExecutors.directExecutor());
+            }
         }
         return null;
     }
 
+    /**
+     * Sends the requests for all clouds which use asynchronous termination.
+     * @return The futures of the requests.
+     */
+    private List<ListenableFuture<?>> requestAsync(
+            Multimap<String, String> cloudNodesToSuspend, Multimap<String, String> cloudNodesToDestroy) {
+        final List<ListenableFuture<?>> ret = new ArrayList<>();
+        final ImmutableSet<String> clouds =
+                ImmutableSet.copyOf(Iterables.concat(cloudNodesToSuspend.keySet(), cloudNodesToDestroy.keySet()));
+        for (final String cloud : clouds) {
+            final JCloudsCloud c = getCloud(cloud);
+            if (c.getAsyncTermination()) {
+                final Collection<String> nodesToSuspend = cloudNodesToSuspend.get(cloud);
+                final Collection<String> nodesToDestroy = cloudNodesToDestroy.get(cloud);
+                LOGGER.info("Requesting termination of supplemental nodes: " + nodesToSuspend + " " + nodesToDestroy);
+                ret.add(c.terminateAsync(nodesToSuspend, nodesToDestroy));
+            }
+        }
+        return ret;
+    }
+
     private void destroy(Multimap<String, String> cloudNodesToDestroy) {
         for (final String cloudToDestroy : cloudNodesToDestroy.keySet()) {
             final Collection<String> nodesToDestroy = cloudNodesToDestroy.get(cloudToDestroy);
+            final JCloudsCloud c = getCloud(cloudToDestroy);
+            if (c.getAsyncTermination()) {
+                continue;
+            }
             LOGGER.info("Destroying supplemental nodes: " + nodesToDestroy);
-            getCloudCompute(cloudToDestroy).destroyNodesMatching(new Predicate<NodeMetadata>() {
+            c.getCompute().destroyNodesMatching(new Predicate<NodeMetadata>() {
                 public boolean apply(NodeMetadata input) {
                     return null != input && nodesToDestroy.contains(input.getId());
                 }
             });
+            c.invalidateNodeInventory();
         }
     }
 
@@ -131,13 +169,18 @@ public class TerminateNodes implements Function<Iterable<RunningNode>, Void>, Se
         for (String cloudToSuspend : cloudNodesToSuspend.keySet()) {
             final Collection<String> nodesToSuspend = cloudNodesToSuspend.get(cloudToSuspend);
             try {
+                final JCloudsCloud c = getCloud(cloudToSuspend);
+                if (c.getAsyncTermination()) {
+                    continue;
+                }
                 LOGGER.info("Suspending supplemental nodes: " + nodesToSuspend);
-                getCloudCompute(cloudToSuspend).suspendNodesMatching(new Predicate<NodeMetadata>() {
+                c.getCompute().suspendNodesMatching(new Predicate<NodeMetadata>() {
 
                     public boolean apply(NodeMetadata input) {
                         return null != input && nodesToSuspend.contains(input.getId());
                     }
                 });
+                c.invalidateNodeInventory();
             } catch (UnsupportedOperationException e) {
                 LOGGER.warning("Suspend unsupported on cloud: " + cloudToSuspend + "; affected nodes: " + nodesToSuspend
                         + ": " + e);
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.config;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the assembled user data of a template.
+ * <p>
+ * Assembling a multipart message from several config files is expensive and the result is the same
+ * for all nodes of a template, except for the JNLP nonce. Therefore, the user data is assembled once
+ * with a placeholder instead of the nonce, and the nonce of a node is filled in afterwards.
+ * The cache is keyed by the content hashes of the config files, so it is rebuilt whenever
+ * one of them is modified. Whether gzipping pays off is remembered as well.
+ * <p>
+ * If the placeholder does not survive the assembly unchanged (e.g. because a part had to be
+ * base64 encoded), the user data is assembled for every node, like before.
+ */
+public final class UserDataCache {
+
+    private static final Logger LOGGER = Logger.getLogger(UserDataCache.class.getName());
+
+    /**
+     * Stands in for the nonce. Plain ASCII with the same length as a nonce,
+     * so that MIME encoding and line lengths are not affected.
+     */
+    static final String NONCE_PLACEHOLDER = "@@jclouds-nonce@";
+
+    private static final byte[] PLACEHOLDER_BYTES = NONCE_PLACEHOLDER.getBytes(StandardCharsets.UTF_8);
+    private static final String NONCE_REFERENCE = "${JNLP_NONCE}";
+
+    /**
+     * User data ready to be passed to a new node.
+     */
+    public static final class Result {
+        private final byte[] data;
+        private final boolean zipped;
+
+        Result(final byte[] data, final boolean zipped) {
+            this.data = data;
+            this.zipped = zipped;
+        }
+
+        @NonNull
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isZipped() {
+            return zipped;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final byte[] data;
+        final boolean zipped;
+        final int[] nonceOffsets;
+        final boolean cacheable;
+
+        Entry(final String key, final byte[] data, final boolean zipped, final int[] offsets, boolean cacheable) {
+            this.key = key;
+            this.data = data;
+            this.zipped = zipped;
+            this.nonceOffsets = offsets;
+            this.cacheable = cacheable;
+        }
+    }
+
+    private volatile Entry entry;
+
+    /**
+     * Gets the user data for a new node.
+     * @param configIds The ids of the config files making up the user data.
+     * @param rootUrl The root URL of Jenkins for JNLP provisioning or {@code null} if no replacements are wanted.
+     * @param nonce The JNLP nonce of the new node.
+     * @param allowGzip {@code true} if the provider accepts gzipped user data.
+     * @return The user data or {@code null} if there is none.
+     * @throws IOException if the user data could not be assembled.
+     */
+    @CheckForNull
+    public Result get(
+            @NonNull final List<String> configIds,
+            @Nullable final String rootUrl,
+            @Nullable final String nonce,
+            final boolean allowGzip)
+            throws IOException {
+        final String key;
+        try {
+            key = buildKey(configIds, rootUrl, allowGzip);
+        } catch (NoSuchAlgorithmException x) {
+            return build(configIds, replacements(rootUrl, nonce), allowGzip);
+        }
+        Entry e = entry;
+        if (null == e || !e.key.equals(key)) {
+            synchronized (this) {
+                e = entry;
+                if (null == e || !e.key.equals(key)) {
+                    e = fill(key, configIds, rootUrl, allowGzip);
+                    entry = e;
+                }
+            }
+        }
+        if (!e.cacheable) {
+            return build(configIds, replacements(rootUrl, nonce), allowGzip);
+        }
+        if (null == e.data) {
+            return null;
+        }
+        if (0 == e.nonceOffsets.length) {
+            return new Result(e.data, e.zipped);
+        }
+        final byte[] data = substitute(e.data, e.nonceOffsets, null == nonce ? "" : nonce);
+        return new Result(e.zipped ? gzip(data) : data, e.zipped);
+    }
+
+    /**
+     * Forgets the cached user data.
+     */
+    public void invalidate() {
+        entry = null;
+    }
+
+    private static String buildKey(final List<String> configIds, final String rootUrl, final boolean allowGzip)
+            throws NoSuchAlgorithmException {
+        final Map<String, String> hashes = ConfigHelper.getUserDataHashes(configIds);
+        final StringBuilder sb = new StringBuilder();
+        for (String id : configIds) {
+            sb.append(id).append('=').append(hashes.get(id)).append(';');
+        }
+        return sb.append(rootUrl).append(';').append(allowGzip).toString();
+    }
+
+    private static Entry fill(
+            final String key, final List<String> configIds, final String rootUrl, final boolean allowGzip)
+            throws IOException {
+        final byte[] data = ConfigHelper.buildUserData(configIds, replacements(rootUrl, NONCE_PLACEHOLDER), false);
+        if (null == data) {
+            return new Entry(key, null, false, new int[0], true);
+        }
+        final int[] offsets = findPlaceholders(data);
+        // Replacements are applied to the parts of a multipart message only.
+        final int expected = null == rootUrl || 2 > configIds.size() ? 0 : countNonceReferences(configIds);
+        if (offsets.length != expected) {
+            LOGGER.fine("Nonce placeholder was altered while assembling user data, caching disabled");
+            return new Entry(key, null, false, offsets, false);
+        }
+        boolean zipped = false;
+        if (allowGzip) {
+            final byte[] gz = gzip(data);
+            zipped = gz.length < data.length;
+            if (zipped && 0 == offsets.length) {
+                return new Entry(key, gz, true, offsets, true);
+            }
+        }
+        return new Entry(key, data, zipped, offsets, true);
+    }
+
+    /**
+     * Assembles the user data without caching, just like it has been done before.
+     */
+    private static Result build(
+            final List<String> configIds, final Map<String, String> replacements, final boolean allowGzip)
+            throws IOException {
+        byte[] udata = ConfigHelper.buildUserData(configIds, replacements, false);
+        if (null == udata) {
+            return null;
+        }
+        if (allowGzip) {
+            byte[] zipped = ConfigHelper.buildUserData(configIds, replacements, true);
+            if (null != zipped && zipped.length < udata.length) {
+                return new Result(zipped, true);
+            }
+        }
+        return new Result(udata, false);
+    }
+
+    private static Map<String, String> replacements(final String rootUrl, final String nonce) {
+        if (null == rootUrl) {
+            return null;
+        }
+        final Map<String, String> ret = new HashMap<>();
+        ret.put("JNLP_NONCE", nonce);
+        ret.put("JENKINS_ROOTURL", rootUrl);
+        return ret;
+    }
+
+    private static int countNonceReferences(final List<String> configIds) {
+        int ret = 0;
+        for (String id : configIds) {
+            final String content = ConfigHelper.getConfig(id);
+            for (int i = content.indexOf(NONCE_REFERENCE); 0 <= i; i = content.indexOf(NONCE_REFERENCE, i + 1)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    static int[] findPlaceholders(final byte[] data) {
+        final List<Integer> ret = new ArrayList<>();
+        outer:
+        for (int i = 0; i <= data.length - PLACEHOLDER_BYTES.length; i++) {
+            for (int j = 0; j < PLACEHOLDER_BYTES.length; j++) {
+                if (data[i + j] != PLACEHOLDER_BYTES[j]) {
+                    continue outer;
+                }
+            }
+            ret.add(i);
+            i += PLACEHOLDER_BYTES.length - 1;
+        }
+        return ret.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static byte[] substitute(final byte[] data, final int[] offsets, final String nonce) {
+        final byte[] value = nonce.getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream ret = new ByteArrayOutputStream(
+                Math.max(32, data.length + offsets.length * (value.length - PLACEHOLDER_BYTES.length)));
+        int pos = 0;
+        for (int off : offsets) {
+            ret.write(data, pos, off - pos);
+            ret.write(value, 0, value.length);
+            pos = off + PLACEHOLDER_BYTES.length;
+        }
+        ret.write(data, pos, data.length - pos);
+        return ret.toByteArray();
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            try (GZIPOutputStream os = new GZIPOutputStream(baos)) {
+                os.write(data);
+            }
+            return baos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of agents which are bootstrapping concurrently.
+ * <p>
+ * An admitted agent holds a slot until it is released (usually when the agent is online)
+ * or the slot times out. If all slots are in use, requests wait for a free slot in a bounded
+ * queue for a short time. Requests which can not be admitted are expected to be retried later.
+ */
+public final class AdmissionGate {
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueWait;
+    private final long slotTimeout;
+    private final Semaphore permits;
+    private final Map<String, Long> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * Creates a new gate.
+     * @param maxConcurrent The maximum number of slots. Zero or less means unlimited.
+     * @param maxQueue The maximum number of requests waiting for a slot.
+     * @param queueWait The maximum time in milliseconds a request waits for a slot.
+     * @param slotTimeout The time in milliseconds after which an unreleased slot is reclaimed.
+     */
+    public AdmissionGate(int maxConcurrent, int maxQueue, long queueWait, long slotTimeout) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueWait = Math.max(0, queueWait);
+        this.slotTimeout = slotTimeout;
+        this.permits = new Semaphore(Math.max(0, maxConcurrent), true);
+    }
+
+    /**
+     * Tries to admit a request.
+     * @param key The key identifying the requester. Repeated requests with the same key share their slot.
+     * @return {@code true} if the request has been admitted.
+     * @throws InterruptedException if the thread was interrupted while waiting for a slot.
+     */
+    public boolean admit(final String key) throws InterruptedException {
+        if (0 >= maxConcurrent) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        expire();
+        if (slots.containsKey(key)) {
+            return true;
+        }
+        if (!permits.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueue) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            boolean ok;
+            try {
+                ok = permits.tryAcquire(queueWait, TimeUnit.MILLISECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+            if (!ok) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+        if (null != slots.putIfAbsent(key, System.currentTimeMillis())) {
+            // A concurrent request with the same key won the race.
+            permits.release();
+        } else {
+            admitted.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Releases the slot of an admitted requester.
+     * @param key The key identifying the requester.
+     */
+    public void release(final String key) {
+        if (null != slots.remove(key)) {
+            permits.release();
+        }
+    }
+
+    private void expire() {
+        if (0 >= slotTimeout) {
+            return;
+        }
+        final long limit = System.currentTimeMillis() - slotTimeout;
+        for (Map.Entry<String, Long> e : slots.entrySet()) {
+            if (e.getValue().longValue() < limit && slots.remove(e.getKey(), e.getValue())) {
+                permits.release();
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return The number of slots currently in use.
+     */
+    public int getActiveCount() {
+        return slots.size();
+    }
+
+    /**
+     * @return The number of requests currently waiting for a slot.
+     */
+    public int getQueueLength() {
+        return queued.get();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The number of slots which have been reclaimed, because they were never released.
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+}
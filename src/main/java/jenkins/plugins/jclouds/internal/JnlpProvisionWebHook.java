@@ -18,20 +18,24 @@ package jenkins.plugins.jclouds.internal;
 import static java.util.logging.Level.*;
 import static org.kohsuke.stapler.StaplerResponse2.SC_BAD_REQUEST;
 import static org.kohsuke.stapler.StaplerResponse2.SC_FORBIDDEN;
+import static org.kohsuke.stapler.StaplerResponse2.SC_SERVICE_UNAVAILABLE;
 import static org.kohsuke.stapler.StaplerResponse2.SC_UNAUTHORIZED;
 
 import hudson.Extension;
 import hudson.model.Computer;
 import hudson.model.RootAction;
+import hudson.model.TaskListener;
 import hudson.model.UnprotectedRootAction;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
+import hudson.slaves.ComputerListener;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
-import jenkins.plugins.jclouds.compute.JCloudsComputer;
+import jenkins.plugins.jclouds.compute.JCloudsAgentRegistry;
 import jenkins.plugins.jclouds.compute.JCloudsSlave;
+import jenkins.util.SystemProperties;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -82,34 +86,88 @@ public class JnlpProvisionWebHook implements UnprotectedRootAction {
         LOGGER.info("Received POST from %s [%s] for %s".format(rHost, rAddr, hostName));
         // run in high privilege to see all the nodes anonymous users don't see.
         try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) { // NOPMD - unused local variable
-            for (final Computer c : Jenkins.get().getComputers()) {
-                if (JCloudsComputer.class.isInstance(c)) {
-                    final JCloudsSlave slave = ((JCloudsComputer) c).getNode();
-                    if (null != slave && slave.getNodeName().equals(hostName)) {
-                        final String result = slave.handleJnlpProvisioning(auth);
-                        if (result.isEmpty()) {
-                            rsp.setStatus(SC_FORBIDDEN);
-                            return;
-                        }
-                        final ByteArrayInputStream str =
-                                new ByteArrayInputStream(result.getBytes(StandardCharsets.UTF_8));
-                        try {
-                            rsp.serveFile(req, str, 0, (long) result.length(), "response.json");
-                        } catch (Exception x) {
-                            LOGGER.log(WARNING, "Could not send response:", x);
-                        }
-                        return;
-                    }
+            final JCloudsSlave slave = JCloudsAgentRegistry.getByName(hostName);
+            if (null != slave) {
+                if (!admit(hostName)) {
+                    LOGGER.info(String.format(
+                            "Deferring JNLP provisioning of %s: %d active, %d queued, %d rejected",
+                            hostName,
+                            GATE.getActiveCount(),
+                            GATE.getQueueLength(),
+                            GATE.getRejectedCount()));
+                    rsp.setStatus(SC_SERVICE_UNAVAILABLE);
+                    rsp.setHeader("Retry-After", String.valueOf(RETRY_AFTER));
+                    return;
                 }
+                final String result = slave.handleJnlpProvisioning(auth);
+                if (result.isEmpty()) {
+                    GATE.release(hostName);
+                    rsp.setStatus(SC_FORBIDDEN);
+                    return;
+                }
+                final ByteArrayInputStream str = new ByteArrayInputStream(result.getBytes(StandardCharsets.UTF_8));
+                try {
+                    rsp.serveFile(req, str, 0, (long) result.length(), "response.json");
+                } catch (Exception x) {
+                    LOGGER.log(WARNING, "Could not send response:", x);
+                }
+                return;
             }
             LOGGER.warning("hostName not found " + hostName);
         }
     }
 
+    private static boolean admit(final String name) {
+        try {
+            return GATE.admit(name);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Retrieves the admission gate which limits the number of concurrently bootstrapping agents.
+     * @return The admission gate.
+     */
+    public static AdmissionGate getAdmissionGate() {
+        return GATE;
+    }
+
+    /**
+     * Releases the admission slot of an agent as soon as its bootstrap has finished.
+     */
+    @Extension
+    public static final class AdmissionReleaser extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            GATE.release(c.getName());
+        }
+
+        @Override
+        public void onLaunchFailure(Computer c, TaskListener listener) {
+            GATE.release(c.getName());
+        }
+    }
+
     public static final String URLNAME = "jclouds-jnlp-provision";
 
     private static final Logger LOGGER = Logger.getLogger(JnlpProvisionWebHook.class.getName());
 
+    private static final String PREFIX = JnlpProvisionWebHook.class.getName();
+
+    /**
+     * Seconds a deferred agent should wait before retrying.
+     */
+    private static final int RETRY_AFTER = SystemProperties.getInteger(PREFIX + ".retryAfter", 10);
+
+    private static final AdmissionGate GATE = new AdmissionGate(
+            SystemProperties.getInteger(PREFIX + ".maxConcurrent", 20),
+            SystemProperties.getInteger(PREFIX + ".maxQueue", 100),
+            SystemProperties.getLong(PREFIX + ".queueWaitMillis", 5000L),
+            SystemProperties.getLong(PREFIX + ".slotTimeoutMillis", 300000L));
+
     public static JnlpProvisionWebHook get() {
         return Jenkins.get().getExtensionList(RootAction.class).get(JnlpProvisionWebHook.class);
     }
@@ -16,7 +16,6 @@
 package jenkins.plugins.jclouds.internal;
 
 import hudson.Extension;
-import hudson.model.Computer;
 import hudson.model.RootAction;
 import hudson.model.UnprotectedRootAction;
 import hudson.security.ACL;
@@ -24,10 +23,10 @@ import hudson.security.ACLContext;
 import hudson.slaves.Cloud;
 import java.util.logging.Logger;
 import jenkins.model.Jenkins;
+import jenkins.plugins.jclouds.compute.JCloudsAgentRegistry;
 import jenkins.plugins.jclouds.compute.JCloudsCloud;
-import jenkins.plugins.jclouds.compute.JCloudsComputer;
+import jenkins.plugins.jclouds.compute.JCloudsPreemptionHandler;
 import jenkins.plugins.jclouds.compute.JCloudsSlave;
-import org.jclouds.compute.domain.NodeMetadata;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -69,17 +68,16 @@ public class PhoneHomeWebHook implements UnprotectedRootAction {
         LOGGER.info("Received POST from " + hostName);
         // run in high privilege to see all the nodes anonymous users don't see.
         try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) { // NOPMD - unused local variable
-            for (final Computer c : Jenkins.get().getComputers()) {
-                if (JCloudsComputer.class.isInstance(c)) {
-                    final JCloudsSlave slave = ((JCloudsComputer) c).getNode();
-                    if (null != slave) {
-                        final NodeMetadata nmd = slave.getNodeMetaData();
-                        if (null != nmd && nmd.getHostname().equals(hostName)) {
-                            slave.setWaitPhoneHome(false);
-                            return;
-                        }
-                    }
+            if ("preempted".equals(req.getParameter("event"))) {
+                if (!JCloudsPreemptionHandler.notifyPreempted(hostName)) {
+                    LOGGER.warning("Ignoring preemption notice from unknown or non-preemptible agent " + hostName);
                 }
+                return;
+            }
+            final JCloudsSlave slave = JCloudsAgentRegistry.getByHostName(hostName);
+            if (null != slave) {
+                slave.setWaitPhoneHome(false);
+                return;
             }
             for (Cloud c : Jenkins.get().clouds) {
                 if (JCloudsCloud.class.isInstance(c) && ((JCloudsCloud) c).phoneHomeNotify(hostName)) {
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.internal;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A content string, split once into literal and placeholder segments.
+ * <p>
+ * Rendering walks the segments in a single pass into a buffer of the exact result size,
+ * instead of rescanning the whole content once per key. Placeholders without a value
+ * are rendered unchanged and values are inserted literally.
+ */
+public final class PlaceholderTemplate {
+
+    /**
+     * Upper bound for the number of remembered compiled contents.
+     */
+    private static final int MAX_CACHED = 256;
+
+    private static final ConcurrentMap<String, PlaceholderTemplate> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * The literal segments. Literal {@code i} precedes placeholder {@code i}, the last literal follows the last
+     * placeholder.
+     */
+    private final String[] literals;
+
+    /**
+     * The placeholder segments, each with the value key and the raw text to be rendered if no value exists.
+     */
+    private final String[] keys;
+
+    private final String[] raw;
+    private final int literalLength;
+
+    private PlaceholderTemplate(List<String> literals, List<String> keys, List<String> raw) {
+        this.literals = literals.toArray(new String[0]);
+        this.keys = keys.toArray(new String[0]);
+        this.raw = raw.toArray(new String[0]);
+        int len = 0;
+        for (String s : this.literals) {
+            len += s.length();
+        }
+        this.literalLength = len;
+    }
+
+    /**
+     * Compiles a content containing shell-like variable references like <code>${KEY}</code>.
+     * The compiled form is remembered, so subsequent calls with the same content are cheap.
+     * @param content The content to compile.
+     * @return The compiled content.
+     */
+    @NonNull
+    public static PlaceholderTemplate compile(@NonNull final String content) {
+        PlaceholderTemplate ret = CACHE.get(content);
+        if (null == ret) {
+            ret = parse(content);
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(content, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Compiles a content where every occurrence of one of the given tokens is a placeholder.
+     * Tokens are matched leftmost first and, if several tokens match at the same position, longest first.
+     * The result is not remembered, because such contents rarely repeat.
+     * @param content The content to compile.
+     * @param tokens The literal tokens to be treated as placeholders. The token itself is the value key.
+     * @return The compiled content.
+     */
+    @NonNull
+    public static PlaceholderTemplate compileTokens(
+            @NonNull final String content, @NonNull final Collection<String> tokens) {
+        Map<Character, List<String>> byFirst = new HashMap<>();
+        for (String t : tokens) {
+            if (null != t && !t.isEmpty()) {
+                List<String> l = byFirst.computeIfAbsent(t.charAt(0), k -> new ArrayList<>());
+                if (!l.contains(t)) {
+                    l.add(t);
+                }
+            }
+        }
+        for (List<String> l : byFirst.values()) {
+            l.sort(Comparator.comparingInt(String::length).reversed());
+        }
+        List<String> lits = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        final int len = content.length();
+        while (i < len) {
+            String match = null;
+            List<String> candidates = byFirst.get(content.charAt(i));
+            if (null != candidates) {
+                for (String t : candidates) {
+                    if (content.startsWith(t, i)) {
+                        match = t;
+                        break;
+                    }
+                }
+            }
+            if (null == match) {
+                i++;
+            } else {
+                lits.add(content.substring(start, i));
+                keys.add(match);
+                i += match.length();
+                start = i;
+            }
+        }
+        lits.add(content.substring(start));
+        return new PlaceholderTemplate(lits, keys, keys);
+    }
+
+    private static PlaceholderTemplate parse(final String content) {
+        List<String> lits = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> raw = new ArrayList<>();
+        int start = 0;
+        int from = 0;
+        while (true) {
+            int open = content.indexOf("${", from);
+            if (open < 0) {
+                break;
+            }
+            int close = content.indexOf('}', open + 2);
+            if (close < 0) {
+                break;
+            }
+            int nested = content.indexOf("${", open + 2);
+            if (nested >= 0 && nested < close) {
+                // Not a reference, but a nested one might be.
+                from = nested;
+                continue;
+            }
+            lits.add(content.substring(start, open));
+            keys.add(content.substring(open + 2, close));
+            raw.add(content.substring(open, close + 1));
+            start = close + 1;
+            from = start;
+        }
+        lits.add(content.substring(start));
+        return new PlaceholderTemplate(lits, keys, raw);
+    }
+
+    /**
+     * Checks, if this content contains any placeholders.
+     * @return {@code true} if at least one placeholder exists.
+     */
+    public boolean hasPlaceholders() {
+        return keys.length > 0;
+    }
+
+    /**
+     * Renders this content.
+     * @param values The values to be inserted, keyed by placeholder name.
+     * @return The rendered content.
+     */
+    @NonNull
+    public String render(@NonNull final Map<String, String> values) {
+        if (keys.length == 0) {
+            return literals[0];
+        }
+        final String[] resolved = new String[keys.length];
+        int size = literalLength;
+        for (int i = 0; i < keys.length; i++) {
+            String v = values.get(keys[i]);
+            resolved[i] = null == v ? raw[i] : v;
+            size += resolved[i].length();
+        }
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]).append(resolved[i]);
+        }
+        return sb.append(literals[keys.length]).toString();
+    }
+}
@@ -18,7 +18,6 @@ package jenkins.plugins.jclouds.internal;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * Utility for replacing shell-like variable references using a map of key/value pairs.
@@ -35,15 +34,9 @@ public class ReplaceHelper {
 
     @NonNull
     public String replace(@NonNull final String content) {
-        String ret = content;
         if (null == rmap) {
-            return ret;
+            return content;
         }
-        for (Map.Entry e : rmap.entrySet()) {
-            final String s = Pattern.quote("${" + e.getKey() + "}");
-            final String r = (String) e.getValue();
-            ret = Pattern.compile(s, Pattern.DOTALL).matcher(ret).replaceAll(r);
-        }
-        return ret;
+        return PlaceholderTemplate.compile(content).render(rmap);
     }
 }
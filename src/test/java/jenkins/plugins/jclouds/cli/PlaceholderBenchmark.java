@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.cli;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.plugins.jclouds.internal.PlaceholderTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link PlaceholderTemplate} and {@link Replacements} with the former regex based replacement
+ * of user data variables and CLI import replacements.
+ */
+@JmhBenchmark
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaceholderBenchmark {
+
+    private final Map<String, String> vars = new LinkedHashMap<>();
+    private final Map<String, String> tokens = new LinkedHashMap<>();
+    private final Replacements replacements = new Replacements();
+    private String userData;
+    private String xml;
+
+    @Setup
+    public void setup() {
+        for (String k : new String[] {"JENKINS_URL", "JNLP_NONCE", "SLAVE_NAME", "SLAVE_JAR_URL", "JNLP_URL"}) {
+            vars.put(k, "value-of-" + k.toLowerCase());
+        }
+        StringBuilder sb = new StringBuilder("#!/bin/sh\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append("echo line ").append(i).append(" ${JENKINS_URL} ${SLAVE_NAME}\n");
+            if (i % 20 == 0) {
+                sb.append("curl -s ${SLAVE_JAR_URL} -o agent.jar && java -jar agent.jar -url ${JNLP_URL}")
+                        .append(" -secret ${JNLP_NONCE}\n");
+            }
+        }
+        userData = sb.toString();
+        for (int i = 0; i < 10; i++) {
+            tokens.put(String.format("%08d-d7c8-4bdf-8cd7-cce2e96c4bfb", i), "00000000-d7c8-4bdf-8cd7-000000004bfb");
+        }
+        tokens.put("/home/jenkins", "/opt/jenkins");
+        for (Map.Entry<String, String> e : tokens.entrySet()) {
+            replacements.add(e.getKey(), e.getValue());
+        }
+        sb = new StringBuilder("<templates>\n");
+        for (int i = 0; i < 100; i++) {
+            sb.append("  <template>\n    <fsRoot>/home/jenkins</fsRoot>\n")
+                    .append(String.format("    <credentialsId sha256=\"%064x\">", i))
+                    .append(String.format("%08d-d7c8-4bdf-8cd7-cce2e96c4bfb</credentialsId>\n", i % 10))
+                    .append("    <numExecutors>1</numExecutors>\n  </template>\n");
+        }
+        xml = sb.append("</templates>\n").toString();
+    }
+
+    @Benchmark
+    public String userDataRegex() {
+        String ret = userData;
+        for (Map.Entry<String, String> e : vars.entrySet()) {
+            final String s = Pattern.quote("${" + e.getKey() + "}");
+            ret = Pattern.compile(s, Pattern.DOTALL).matcher(ret).replaceAll(e.getValue());
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public String userDataTemplate() {
+        return PlaceholderTemplate.compile(userData).render(vars);
+    }
+
+    @Benchmark
+    public String cliRegex() {
+        String ret = xml;
+        for (Map.Entry<String, String> e : tokens.entrySet()) {
+            Pattern p = Pattern.compile(
+                    String.format("^(\\s*<\\w+)\\s+sha256=\"[0-9a-fA-F]+\">%s(<.*)$", Pattern.quote(e.getKey())),
+                    Pattern.MULTILINE);
+            ret = p.matcher(ret)
+                    .replaceAll("$1>" + Matcher.quoteReplacement(e.getValue()) + "$2")
+                    .replace(e.getKey(), e.getValue());
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public String cliTemplate() {
+        return replacements.replace(xml);
+    }
+}
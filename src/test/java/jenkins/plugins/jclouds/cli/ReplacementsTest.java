@@ -2,6 +2,7 @@ package jenkins.plugins.jclouds.cli;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 
 import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
@@ -67,5 +68,6 @@ class ReplacementsTest {
         assertThat(result, containsString("<fsRoot>/opt/jenkins</fsRoot>"));
         assertThat(result, containsString("<credentialsId>00000000-d7c8-4bdf-8cd7-000000004bfb</credentialsId>"));
         assertThat(result, containsString("<fileId>00000000-775e-4240-a3fe-00000000a5d6</fileId>"));
+        assertThat(result, not(containsString("sha256=")));
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import hudson.XmlFile;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import jenkins.plugins.jclouds.compute.internal.JCloudsNodeMetadata;
+import jenkins.plugins.jclouds.compute.internal.PendingTerminations;
+import jenkins.plugins.jclouds.compute.internal.RunningNode;
+import jenkins.plugins.jclouds.compute.internal.TerminateNodes;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class AsyncTerminationTest {
+
+    private static final String CLOUD = "foo";
+    private static final String TEMPLATE = "FooTemplate";
+
+    private final TestHelper.FakeComputeService compute = new TestHelper.FakeComputeService();
+
+    private static NodeMetadata node(String id, NodeMetadata.Status status) {
+        return new NodeMetadataBuilder()
+                .ids(id)
+                .providerId(id)
+                .name(id)
+                .group(TEMPLATE)
+                .status(status)
+                .privateAddresses(ImmutableSet.of("10.0.0.1"))
+                .build();
+    }
+
+    private void running(String... ids) {
+        for (String id : ids) {
+            compute.add(node(id, NodeMetadata.Status.RUNNING));
+        }
+    }
+
+    private JCloudsCloud createCloud(JenkinsRule j) throws Exception {
+        TestHelper.createTestCloudWithTemplate(j, CLOUD);
+        JCloudsCloud cloud = JCloudsCloud.getByName(CLOUD);
+        cloud.setAsyncTermination(true);
+        cloud.setCompute(compute.get());
+        return cloud;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, PendingTerminations> readPersisted(JenkinsRule j) throws Exception {
+        XmlFile xf = new XmlFile(new File(j.jenkins.getRootDir(), "jclouds-pending-terminations.xml"));
+        return xf.exists() ? (Map<String, PendingTerminations>) xf.read() : ImmutableMap.of();
+    }
+
+    @Test
+    void testTerminateAsync(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        running("a", "b");
+        cloud.terminateAsync(ImmutableList.of("a"), ImmutableList.of("b"), ImmutableMap.of("a", "nonce"))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(2, compute.calls.get());
+        assertEquals(NodeMetadata.Status.SUSPENDED, compute.getStatus("a"));
+        assertEquals(NodeMetadata.Status.TERMINATED, compute.getStatus("b"));
+        // The suspended node can be resumed with its nonce.
+        // Claiming uses the latest inventory, which is normally kept current by JCloudsNodeInventoryRefresher.
+        cloud.getNodeInventory().get();
+        SuspendedTier.Entry e = cloud.getSuspendedTier().claim(cloud.getTemplate(TEMPLATE));
+        assertNotNull(e);
+        assertEquals("a", e.nodeId);
+        assertEquals("nonce", e.nonce);
+
+        // The nodes are pending until the verification has confirmed them.
+        PendingTerminations pt = cloud.getPendingTerminations();
+        assertTrue(pt.isPending("a"));
+        assertTrue(readPersisted(j).get(CLOUD).isPending("b"));
+        // A request which is pending already, is not sent again.
+        cloud.terminateAsync(ImmutableList.of(), ImmutableList.of("b")).get(10, TimeUnit.SECONDS);
+        assertEquals(2, compute.calls.get());
+
+        cloud.verifyTerminations().get(10, TimeUnit.SECONDS);
+        assertTrue(pt.isEmpty());
+        JCloudsTerminationVerifier.persist();
+        assertTrue(readPersisted(j).isEmpty());
+    }
+
+    @Test
+    void testFailedSuspendIsRetriedWithNonce(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        running("a");
+        compute.suspendError = new IllegalStateException("provider unavailable");
+        ListenableFuture<?> f =
+                cloud.terminateAsync(ImmutableList.of("a"), ImmutableList.of(), ImmutableMap.of("a", "nonce"));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, x.getCause());
+        assertEquals(NodeMetadata.Status.RUNNING, compute.getStatus("a"));
+
+        compute.suspendError = null;
+        cloud.verifyTerminations().get(10, TimeUnit.SECONDS);
+        assertEquals(2, compute.calls.get());
+        assertEquals(NodeMetadata.Status.SUSPENDED, compute.getStatus("a"));
+        // Claiming uses the latest inventory, which is normally kept current by JCloudsNodeInventoryRefresher.
+        cloud.getNodeInventory().get();
+        SuspendedTier.Entry e = cloud.getSuspendedTier().claim(cloud.getTemplate(TEMPLATE));
+        assertNotNull(e);
+        assertEquals("nonce", e.nonce);
+    }
+
+    @Test
+    void testRejectedRequestIsSentAgain(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        running("a");
+        cloud.getTerminationExecutor().shutdown();
+        ListenableFuture<?> f = cloud.terminateAsync(ImmutableList.of(), ImmutableList.of("a"));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, x.getCause());
+        assertEquals(0, compute.calls.get());
+        // The request is not considered in progress anymore, so the next verification sends it again.
+        PendingTerminations.Verification v =
+                cloud.getPendingTerminations().verify(compute.nodes::get, System.currentTimeMillis());
+        assertEquals(ImmutableList.of("a"), v.getToDestroy());
+    }
+
+    @Test
+    void testTerminateNodesAsync(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        running("a", "b");
+        RunningNode toSuspend = new RunningNode(
+                CLOUD, TEMPLATE, true, JCloudsNodeMetadata.fromNodeMetadata(compute.nodes.get("a"), ""));
+        RunningNode toDestroy = new RunningNode(
+                CLOUD, TEMPLATE, false, JCloudsNodeMetadata.fromNodeMetadata(compute.nodes.get("b"), ""));
+        new TerminateNodes().apply(ImmutableList.of(toSuspend, toDestroy));
+        for (int i = 0; i < 100 && compute.getStatus("b") != NodeMetadata.Status.TERMINATED; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(NodeMetadata.Status.SUSPENDED, compute.getStatus("a"));
+        assertEquals(NodeMetadata.Status.TERMINATED, compute.getStatus("b"));
+        assertTrue(cloud.getPendingTerminations().isPending("a"));
+        assertTrue(cloud.getPendingTerminations().isPending("b"));
+        // The record for JCloudsStartupHandler is removed as soon as all requests have been carried out.
+        File[] records = new File[0];
+        for (int i = 0; i < 100; i++) {
+            records = j.jenkins.getRootDir().listFiles((dir, name) -> name.startsWith(TerminateNodes.class.getName()));
+            if (0 == records.length) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertEquals(0, records.length);
+    }
+}
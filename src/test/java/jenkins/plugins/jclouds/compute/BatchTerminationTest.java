@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.google.common.collect.ImmutableSet;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.junit.jupiter.api.Test;
+
+class BatchTerminationTest {
+
+    private final TestHelper.FakeComputeService compute = new TestHelper.FakeComputeService();
+
+    BatchTerminationTest() {
+        compute.add(
+                node("a", NodeMetadata.Status.RUNNING),
+                node("b", NodeMetadata.Status.RUNNING),
+                node("c", NodeMetadata.Status.SUSPENDED),
+                node("d", NodeMetadata.Status.RUNNING),
+                node("e", NodeMetadata.Status.TERMINATED));
+    }
+
+    private static NodeMetadata node(String id, NodeMetadata.Status status) {
+        return new NodeMetadataBuilder().ids(id).status(status).build();
+    }
+
+    @Test
+    void testOneCallPerAction() {
+        BatchTermination bt = new BatchTermination(compute.get());
+        bt.run(ImmutableSet.of("a", "c"), ImmutableSet.of("b", "e", "x"));
+        assertEquals(2, compute.calls.get());
+        assertEquals(BatchTermination.Outcome.SUSPENDED, bt.getOutcome("a"));
+        assertEquals(BatchTermination.Outcome.ALREADY_GONE, bt.getOutcome("c"));
+        assertEquals(BatchTermination.Outcome.DESTROYED, bt.getOutcome("b"));
+        assertEquals(BatchTermination.Outcome.ALREADY_GONE, bt.getOutcome("e"));
+        assertEquals(BatchTermination.Outcome.ALREADY_GONE, bt.getOutcome("x"));
+        assertNull(bt.getCause("b"));
+    }
+
+    @Test
+    void testDestroyIfSuspendUnsupported() {
+        compute.suspendError = new UnsupportedOperationException("suspend not supported");
+        BatchTermination bt = new BatchTermination(compute.get());
+        bt.run(ImmutableSet.of("a"), ImmutableSet.of("b"));
+        assertEquals(2, compute.calls.get());
+        assertEquals(BatchTermination.Outcome.DESTROYED, bt.getOutcome("a"));
+        assertEquals(BatchTermination.Outcome.DESTROYED, bt.getOutcome("b"));
+    }
+
+    @Test
+    void testFailureIsReportedPerNode() {
+        compute.destroyError = new IllegalStateException("provider unavailable");
+        BatchTermination bt = new BatchTermination(compute.get());
+        bt.run(ImmutableSet.of("a"), ImmutableSet.of("b", "d"));
+        assertEquals(BatchTermination.Outcome.SUSPENDED, bt.getOutcome("a"));
+        assertEquals(BatchTermination.Outcome.FAILED, bt.getOutcome("b"));
+        assertEquals(BatchTermination.Outcome.FAILED, bt.getOutcome("d"));
+        assertNotNull(bt.getCause("d"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.model.Node.Mode;
+import hudson.slaves.NodeProperty;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class JCloudsAgentRegistryTest {
+
+    @Test
+    void testLifecycle(JenkinsRule j) throws Exception {
+        JCloudsSlave node = createNode("foo");
+        assertNull(JCloudsAgentRegistry.getByName("foo"));
+        j.jenkins.addNode(node);
+        assertSame(node, JCloudsAgentRegistry.getByName("foo"));
+        assertTrue(JCloudsAgentRegistry.getAll().contains(node));
+        // Unknown hostnames must not fail, even if the metadata can not be fetched.
+        assertNull(JCloudsAgentRegistry.getByHostName("unknown"));
+        j.jenkins.removeNode(node);
+        assertNull(JCloudsAgentRegistry.getByName("foo"));
+        assertTrue(JCloudsAgentRegistry.getAll().isEmpty());
+    }
+
+    @Test
+    void testReload(JenkinsRule j) throws Exception {
+        JCloudsSlave node = createNode("foo");
+        j.jenkins.addNode(node);
+        assertTrue(JCloudsAgentRegistry.getAll().contains(node));
+        // Reloading replaces all nodes without notifying the listeners.
+        j.jenkins.reload();
+        JCloudsSlave reloaded = (JCloudsSlave) j.jenkins.getNode("foo");
+        assertNotSame(node, reloaded);
+        assertEquals(1, JCloudsAgentRegistry.getAll().size());
+        assertSame(reloaded, JCloudsAgentRegistry.getAll().iterator().next());
+        assertSame(reloaded, JCloudsAgentRegistry.getByName("foo"));
+    }
+
+    private JCloudsSlave createNode(String name) throws Exception {
+        return new JCloudsSlave(
+                "blubb",
+                name,
+                "nodeDescription",
+                "/jenkins",
+                "2",
+                Mode.NORMAL,
+                "labelString",
+                null /* launcher */,
+                null /* retentionStrategy */,
+                Collections.<NodeProperty<?>>emptyList() /* nodeProperties */,
+                false /* stopOnTerminate */,
+                25 /* overrideRetentionTime */,
+                "nobody" /* user */,
+                "nothing" /* password */,
+                null /* privateKey */,
+                false /* authSudo */,
+                null /* jvmOptions */,
+                false /* waitPhoneHome */,
+                0 /* waitPhoneHomeTimeout */,
+                null /* credentialsId */,
+                null /* preferredAddress */,
+                false /* useJnlp */,
+                false /* jnlpProvisioning */,
+                null /* jnlpProvisioningNonce */);
+    }
+}
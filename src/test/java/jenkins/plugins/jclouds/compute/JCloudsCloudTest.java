@@ -438,12 +438,52 @@ class JCloudsCloudTest {
         assertThat(c.getTemplates(), hasSize(0));
     }
 
+    @Test
+    void testTemplateLookup(JenkinsRule j) throws Exception {
+        String cid = TestHelper.createTestCloudWithTemplate(j, "foo");
+        TestHelper.addTemplateToCloud(j, "foo", "BarTemplate", cid);
+        JCloudsCloud c = JCloudsCloud.getByName("foo");
+        JCloudsSlaveTemplate foo = c.getTemplate("FooTemplate");
+        JCloudsSlaveTemplate bar = c.getTemplate("BarTemplate");
+        assertThat(foo, notNullValue());
+        assertThat(bar, notNullValue());
+        assertThat(c.getTemplate("BazTemplate"), nullValue());
+        assertThat(c.getTemplate(j.jenkins.getLabel("jclouds-type2")), equalTo(foo));
+        assertThat(c.getTemplate(j.jenkins.getLabel("unknown-label")), nullValue());
+        c.removeTemplate(foo);
+        assertThat(c.getTemplate("FooTemplate"), nullValue());
+        assertThat(c.getTemplate(j.jenkins.getLabel("jclouds-type2")), equalTo(bar));
+        c.setTemplates(null);
+        assertThat(c.getTemplate(j.jenkins.getLabel("jclouds-type2")), nullValue());
+    }
+
     @Test
     void testAllowGzippedUserData(JenkinsRule j) throws Exception {
         TestHelper.createTestCloud(j, "foo");
         assertTrue(JCloudsCloud.getByName("foo").allowGzippedUserData());
     }
 
+    @Test
+    void testSpilloverChain(JenkinsRule j) throws Exception {
+        TestHelper.createTestCloud(j, "private");
+        TestHelper.createTestCloud(j, "public1");
+        TestHelper.createTestCloud(j, "public2");
+        JCloudsCloud c = JCloudsCloud.getByName("private");
+        JCloudsCloud p1 = JCloudsCloud.getByName("public1");
+        JCloudsCloud p2 = JCloudsCloud.getByName("public2");
+        assertThat(c.getSpilloverChain(), hasSize(0));
+        c.setSpilloverCloud("public1");
+        p1.setSpilloverCloud("public2");
+        assertThat(c.getSpilloverChain(), equalTo(List.of(p1, p2)));
+        // A cycle ends the chain instead of looping forever.
+        p2.setSpilloverCloud("private");
+        assertThat(c.getSpilloverChain(), equalTo(List.of(p1, p2)));
+        assertThat(p1.getSpilloverChain(), equalTo(List.of(p2, c)));
+        // Unknown clouds end the chain as well.
+        p1.setSpilloverCloud("unknown");
+        assertThat(c.getSpilloverChain(), equalTo(List.of(p1)));
+    }
+
     private static void mySelectPresent(final HtmlPage p, final String name) {
         final String xpath = "//select[@name='" + name + "']";
         final List<?> list = p.getByXPath(xpath);
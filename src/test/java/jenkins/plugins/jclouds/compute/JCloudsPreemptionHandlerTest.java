@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import hudson.model.Node.Mode;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.domain.LoginCredentials;
+import org.jenkinsci.plugins.cloudstats.ProvisioningActivity;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class JCloudsPreemptionHandlerTest {
+
+    private static final String CLOUD = "foo";
+
+    private final TestHelper.FakeComputeService compute = new TestHelper.FakeComputeService();
+
+    private JCloudsCloud createCloud(JenkinsRule j) throws Exception {
+        String cid = TestHelper.createTestCloud(j, CLOUD);
+        TestHelper.addTemplateToCloud(j, CLOUD, "spot", cid, true);
+        TestHelper.addTemplateToCloud(j, CLOUD, "regular", cid, false);
+        JCloudsCloud cloud = JCloudsCloud.getByName(CLOUD);
+        cloud.setCompute(compute.get());
+        return cloud;
+    }
+
+    private JCloudsSlave createAgent(JenkinsRule j, String id, String template, NodeMetadata.Status status)
+            throws Exception {
+        NodeMetadata nm = new NodeMetadataBuilder()
+                .ids(id)
+                .providerId(id)
+                .name(id)
+                .group(template)
+                .status(status)
+                .credentials(LoginCredentials.builder().user("nobody").password("nothing").build())
+                .build();
+        compute.add(nm);
+        JCloudsSlave ret = new JCloudsSlave(
+                new ProvisioningActivity.Id(CLOUD, template),
+                CLOUD,
+                "/jenkins",
+                nm,
+                "labelString",
+                "nodeDescription",
+                "1",
+                false /* stopOnTerminate */,
+                25 /* overrideRetentionTime */,
+                null /* jvmOptions */,
+                false /* waitPhoneHome */,
+                0 /* waitPhoneHomeTimeout */,
+                null /* credentialsId */,
+                Mode.NORMAL,
+                null /* preferredAddress */,
+                true /* useJnlp */,
+                false /* jnlpProvisioning */,
+                null /* jnlpProvisioningNonce */);
+        j.jenkins.addNode(ret);
+        return ret;
+    }
+
+    private static void awaitRemoval(JenkinsRule j, JCloudsSlave slave) throws InterruptedException {
+        for (int i = 0; i < 100 && null != j.jenkins.getNode(slave.getNodeName()); i++) {
+            Thread.sleep(100);
+        }
+        assertNull(j.jenkins.getNode(slave.getNodeName()));
+    }
+
+    @Test
+    void testSweepHandlesStoppedPreemptibleAgentsOnly(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        JCloudsSlave stopped = createAgent(j, "n1", "spot", NodeMetadata.Status.SUSPENDED);
+        JCloudsSlave running = createAgent(j, "n2", "spot", NodeMetadata.Status.RUNNING);
+        JCloudsSlave regular = createAgent(j, "n3", "regular", NodeMetadata.Status.SUSPENDED);
+        JCloudsSlave deleting = createAgent(j, "n4", "spot", NodeMetadata.Status.TERMINATED);
+        deleting.setPendingDelete(true);
+
+        JCloudsPreemptionHandler.sweep(cloud);
+
+        assertTrue(stopped.isPreempted());
+        assertFalse(running.isPreempted());
+        assertFalse(regular.isPreempted());
+        assertFalse(deleting.isPreempted());
+        awaitRemoval(j, stopped);
+        assertTrue(compute.destroyed.contains("n1"));
+        assertFalse(compute.destroyed.contains("n2"));
+        assertFalse(compute.destroyed.contains("n3"));
+    }
+
+    @Test
+    void testHandleDestroysPreemptedAgent(JenkinsRule j) throws Exception {
+        JCloudsCloud cloud = createCloud(j);
+        JCloudsSlave slave = createAgent(j, "n1", "spot", NodeMetadata.Status.RUNNING);
+
+        JCloudsPreemptionHandler.handle(cloud, slave, "test");
+
+        assertTrue(slave.isPreempted());
+        awaitRemoval(j, slave);
+        assertTrue(compute.destroyed.contains("n1"));
+        assertFalse(cloud.getTemplatePool().isAvailable(cloud.getTemplate("spot")));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+class PhoneHomeMonitorTest {
+
+    @Test
+    void testRing() throws Exception {
+        PhoneHomeMonitor phm = new PhoneHomeMonitor(true, 10);
+        CompletableFuture<Void> f = phm.whenPhonedHomeMultiple(List.of("a", "b"), null);
+        assertFalse(phm.ring("c"));
+        assertTrue(phm.ring("a"));
+        assertFalse(f.isDone());
+        assertTrue(phm.ring("b"));
+        f.get(1, TimeUnit.SECONDS);
+        // Once rung, subsequent waits complete immediately.
+        assertTrue(phm.whenPhonedHome("a", null).isDone());
+    }
+
+    @Test
+    void testInactive() {
+        PhoneHomeMonitor phm = new PhoneHomeMonitor(false, 10);
+        assertTrue(phm.whenPhonedHome("a", null).isDone());
+    }
+
+    @Test
+    void testInterrupt() {
+        PhoneHomeMonitor phm = new PhoneHomeMonitor(true, 10);
+        CompletableFuture<Void> f = phm.whenPhonedHome("a", null);
+        phm.interrupt();
+        ExecutionException x = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(InterruptedException.class, x.getCause());
+        assertThrows(InterruptedException.class, () -> phm.waitForPhoneHome("a", null));
+    }
+
+    @Test
+    void testTimeout() {
+        PhoneHomeMonitor phm = new PhoneHomeMonitor(true, 0);
+        CompletableFuture<Void> f = phm.whenPhonedHome("a", null);
+        ExecutionException x = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, x.getCause());
+    }
+}
@@ -8,13 +8,25 @@ import com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey.
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.google.common.base.Predicate;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import jenkins.plugins.jclouds.internal.CredentialsHelper;
 import org.htmlunit.WebClientUtil;
 import org.htmlunit.html.HtmlDivision;
 import org.htmlunit.html.HtmlElement;
 import org.htmlunit.html.HtmlPage;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jvnet.hudson.test.JenkinsRule;
 
 class TestHelper {
@@ -84,6 +96,10 @@ class TestHelper {
     }
 
     public static void addTemplateToCloud(JenkinsRule j, String cloud, String name, String cid) {
+        addTemplateToCloud(j, cloud, name, cid, false);
+    }
+
+    public static void addTemplateToCloud(JenkinsRule j, String cloud, String name, String cid, boolean preemptible) {
         JCloudsCloud c = (JCloudsCloud) j.jenkins.clouds.getByName(cloud);
         if (null != c) {
             final JCloudsSlaveTemplate tpl = new JCloudsSlaveTemplate(
@@ -120,7 +136,7 @@ class TestHelper {
                     null /* adminCredentialsId */,
                     "NORMAL" /* mode */,
                     true /* useConfigDrive */,
-                    false /* preemptible */,
+                    preemptible,
                     null /* configDataIds */,
                     "192.168.1.0/24" /* preferredAddress */,
                     false /* useJnlp */,
@@ -190,4 +206,83 @@ class TestHelper {
         }
         return "";
     }
+
+    /**
+     * A stubbed cloud provider, which keeps its nodes in memory.
+     * Only the calls used for listing, suspending and destroying nodes are supported.
+     */
+    static final class FakeComputeService implements InvocationHandler {
+
+        final Map<String, NodeMetadata> nodes = new ConcurrentHashMap<>();
+        final Set<String> destroyed = ConcurrentHashMap.newKeySet();
+        /** Counts the calls of suspendNodesMatching and destroyNodesMatching. */
+        final AtomicInteger calls = new AtomicInteger();
+        /** If set, suspendNodesMatching throws it. */
+        volatile RuntimeException suspendError;
+        /** If set, destroyNodesMatching throws it. */
+        volatile RuntimeException destroyError;
+
+        void add(NodeMetadata... nms) {
+            for (NodeMetadata nm : nms) {
+                nodes.put(nm.getId(), nm);
+            }
+        }
+
+        NodeMetadata.Status getStatus(String id) {
+            return nodes.get(id).getStatus();
+        }
+
+        ComputeService get() {
+            return (ComputeService) Proxy.newProxyInstance(
+                    FakeComputeService.class.getClassLoader(), new Class<?>[] {ComputeService.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "listNodes":
+                    return Set.copyOf(nodes.values());
+                case "getNodeMetadata":
+                    return nodes.get((String) args[0]);
+                case "destroyNode":
+                    destroyed.add((String) args[0]);
+                    setStatus((String) args[0], NodeMetadata.Status.TERMINATED);
+                    return null;
+                case "suspendNodesMatching":
+                    calls.incrementAndGet();
+                    if (null != suspendError) {
+                        throw suspendError;
+                    }
+                    final Set<NodeMetadata> suspended = apply(args[0], NodeMetadata.Status.SUSPENDED);
+                    return method.getReturnType().equals(Void.TYPE) ? null : suspended;
+                case "destroyNodesMatching":
+                    calls.incrementAndGet();
+                    if (null != destroyError) {
+                        throw destroyError;
+                    }
+                    return apply(args[0], NodeMetadata.Status.TERMINATED);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private void setStatus(String id, NodeMetadata.Status status) {
+            nodes.computeIfPresent(id, (k, nm) -> NodeMetadataBuilder.fromNodeMetadata(nm).status(status).build());
+        }
+
+        /**
+         * Matches the nodes, which are not terminated, and changes their status.
+         */
+        @SuppressWarnings("unchecked")
+        private Set<NodeMetadata> apply(Object filter, NodeMetadata.Status status) {
+            final Set<NodeMetadata> ret = new HashSet<>();
+            for (NodeMetadata nm : nodes.values()) {
+                if (nm.getStatus() != NodeMetadata.Status.TERMINATED && ((Predicate<NodeMetadata>) filter).apply(nm)) {
+                    ret.add(nm);
+                    setStatus(nm.getId(), status);
+                }
+            }
+            return ret;
+        }
+    }
 }
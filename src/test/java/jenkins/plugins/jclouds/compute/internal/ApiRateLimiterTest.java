@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Callable;
+import org.junit.jupiter.api.Test;
+
+class ApiRateLimiterTest {
+
+    @Test
+    void testClassify() {
+        assertEquals(ApiRateLimiter.Kind.READ, ApiRateLimiter.classify("listNodes"));
+        assertEquals(ApiRateLimiter.Kind.READ, ApiRateLimiter.classify("getNodeMetadata"));
+        assertEquals(ApiRateLimiter.Kind.MUTATE, ApiRateLimiter.classify("createNodesInGroup"));
+        assertEquals(ApiRateLimiter.Kind.MUTATE, ApiRateLimiter.classify("destroyNodesMatching"));
+        assertNull(ApiRateLimiter.classify("templateBuilder"));
+    }
+
+    @Test
+    void testThrottlingDetection() {
+        assertTrue(ApiRateLimiter.isThrottling(new RuntimeException(new IllegalStateException("Throttling"))));
+        assertFalse(ApiRateLimiter.isThrottling(new RuntimeException("InsufficientInstanceCapacity")));
+    }
+
+    @Test
+    void testBackoff() {
+        ApiRateLimiter rl = new ApiRateLimiter(10, -1);
+        assertEquals(10.0, rl.getCurrentRate(ApiRateLimiter.Kind.READ), 0.001);
+        assertEquals(0.0, rl.getCurrentRate(ApiRateLimiter.Kind.MUTATE), 0.001);
+        rl.onThrottle(ApiRateLimiter.Kind.READ);
+        assertEquals(5.0, rl.getCurrentRate(ApiRateLimiter.Kind.READ), 0.001);
+        rl.onThrottle(ApiRateLimiter.Kind.MUTATE);
+        assertEquals(0.0, rl.getCurrentRate(ApiRateLimiter.Kind.MUTATE), 0.001);
+        assertEquals(2, rl.getThrottleCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWrap() throws Exception {
+        ApiRateLimiter rl = new ApiRateLimiter(1000, 1000);
+        Callable<String> ok = () -> "ok";
+        Callable<String> c = rl.wrap(ok, Callable.class);
+        assertEquals("ok", c.call());
+        assertEquals(1, rl.getPermitCount(ApiRateLimiter.Kind.MUTATE));
+        Callable<String> throttled = () -> {
+            throw new IllegalStateException("Rate exceeded");
+        };
+        Callable<String> failing = rl.wrap(throttled, Callable.class);
+        assertThrows(IllegalStateException.class, failing::call);
+        assertEquals(1, rl.getThrottleCount());
+    }
+}
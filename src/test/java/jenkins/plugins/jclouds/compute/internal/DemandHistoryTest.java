@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Calendar;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class DemandHistoryTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static long monday(int hour, int minute) {
+        Calendar c = Calendar.getInstance();
+        c.set(2024, Calendar.JANUARY, 1, hour, minute, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    void testTimeOfDay() {
+        DemandHistory h = new DemandHistory();
+        long t = monday(8, 0);
+        // A burst in the morning of the previous day
+        h.record("k", 10, t);
+        // Quiet for the rest of the day, so the trend decays
+        for (long m = t + 15 * 60 * 1000L; m < t + DAY - 60 * 60 * 1000L; m += 15 * 60 * 1000L) {
+            h.record("k", 0, m);
+        }
+        // The morning slot on the next day predicts the burst again
+        assertEquals(10.0, h.forecast("k", t + DAY), 0.5);
+        assertTrue(h.forecast("k", t + DAY + 2 * 60 * 60 * 1000L) < 1.0);
+    }
+
+    @Test
+    void testTrend() {
+        DemandHistory h = new DemandHistory();
+        long t = monday(10, 0);
+        for (int i = 0; i < 5; i++) {
+            h.record("k", 4, t + i * 60 * 1000L);
+        }
+        assertTrue(h.forecast("k", t + 15 * 60 * 1000L) >= 4.0);
+        assertEquals(0.0, h.forecast("unknown", t), 0.0);
+    }
+
+    @Test
+    void testSlots() {
+        assertEquals(32, DemandHistory.slotOf(monday(8, 0)));
+        // Saturday uses the weekend profile
+        assertEquals(DemandHistory.SLOTS_PER_DAY + 32, DemandHistory.slotOf(monday(8, 0) + 5 * DAY));
+    }
+
+    @Test
+    void testRetain() {
+        DemandHistory h = new DemandHistory();
+        h.record("a", 1, monday(8, 0));
+        h.record("b", 1, monday(8, 0));
+        assertTrue(h.retainAll(Set.of("a")));
+        assertFalse(h.retainAll(Set.of("a")));
+        assertEquals(0.0, h.forecast("b", monday(8, 0)), 0.0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.junit.jupiter.api.Test;
+
+class NodeInventoryTest {
+
+    private static NodeMetadata node(String id, String group, NodeMetadata.Status status) {
+        return new NodeMetadataBuilder()
+                .providerId(id)
+                .id(id)
+                .name(id)
+                .group(group)
+                .status(status)
+                .build();
+    }
+
+    private static final Set<? extends ComputeMetadata> NODES = ImmutableSet.of(
+            node("1", "pfx-tpl1", NodeMetadata.Status.RUNNING),
+            node("2", "pfx-tpl1", NodeMetadata.Status.PENDING),
+            node("3", "pfx-tpl1", NodeMetadata.Status.SUSPENDED),
+            node("4", "pfx-tpl2", NodeMetadata.Status.TERMINATED),
+            node("5", "other", NodeMetadata.Status.RUNNING));
+
+    private static String mapGroup(String group) {
+        return group.startsWith("pfx-") ? group.substring(4) : null;
+    }
+
+    @Test
+    void testIndexing() {
+        NodeInventory inv = new NodeInventory(() -> NODES, NodeInventoryTest::mapGroup, 60000L);
+        NodeInventory.Snapshot s = inv.get();
+        assertEquals(ImmutableSet.of("tpl1", "tpl2"), s.getGroups());
+        assertEquals(3, s.getNodes("tpl1").size());
+        assertEquals(2, s.getActiveCount("tpl1"));
+        assertEquals(0, s.getActiveCount("tpl2"));
+        assertEquals(0, s.getActiveCount("unknown"));
+        assertNotNull(s.getNode("5"));
+        assertNull(s.getNode("6"));
+    }
+
+    @Test
+    void testCachingAndInvalidation() {
+        final AtomicInteger calls = new AtomicInteger();
+        NodeInventory inv = new NodeInventory(
+                () -> {
+                    calls.incrementAndGet();
+                    return NODES;
+                },
+                NodeInventoryTest::mapGroup,
+                60000L);
+        inv.get();
+        inv.get();
+        assertEquals(1, calls.get());
+        inv.invalidate();
+        inv.get();
+        assertEquals(2, calls.get());
+        inv.setTtl(0L);
+        inv.get();
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testLatestDoesNotWaitForRefresh() {
+        final AtomicInteger calls = new AtomicInteger();
+        NodeInventory inv = new NodeInventory(
+                () -> {
+                    calls.incrementAndGet();
+                    return NODES;
+                },
+                NodeInventoryTest::mapGroup,
+                60000L);
+        NodeInventory.Snapshot s = inv.getLatest();
+        assertEquals(1, calls.get());
+        inv.invalidate();
+        assertSame(s, inv.getLatest());
+        assertEquals(1, calls.get());
+        assertTrue(inv.refreshIfDue());
+        assertEquals(2, calls.get());
+        assertNotSame(s, inv.getLatest());
+    }
+}
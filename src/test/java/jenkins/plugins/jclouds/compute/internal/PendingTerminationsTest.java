@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.junit.jupiter.api.Test;
+
+class PendingTerminationsTest {
+
+    private final Map<String, NodeMetadata> nodes = new HashMap<>();
+
+    private void node(String id, NodeMetadata.Status status) {
+        nodes.put(id, new NodeMetadataBuilder().ids(id).status(status).build());
+    }
+
+    @Test
+    void testConfirmation() {
+        PendingTerminations pt = new PendingTerminations(3, 1000L);
+        node("a", NodeMetadata.Status.RUNNING);
+        node("b", NodeMetadata.Status.RUNNING);
+        assertEquals(ImmutableList.of("a"), pt.requested(ImmutableList.of("a"), PendingTerminations.Action.DESTROY, 0));
+        assertEquals(
+                ImmutableList.of("b"), pt.requested(ImmutableList.of("b"), PendingTerminations.Action.SUSPEND, 0));
+        // A request in progress is not sent twice.
+        assertTrue(pt.requested(ImmutableList.of("a"), PendingTerminations.Action.DESTROY, 0).isEmpty());
+        // Nothing is verified while the requests are in progress.
+        assertTrue(pt.verify(nodes::get, 10).getConfirmed().isEmpty());
+
+        pt.completed("a", true, 100);
+        pt.completed("b", true, 100);
+        node("a", NodeMetadata.Status.TERMINATED);
+        node("b", NodeMetadata.Status.SUSPENDED);
+        PendingTerminations.Verification v = pt.verify(nodes::get, 200);
+        assertEquals(ImmutableList.of("a", "b"), v.getConfirmed());
+        assertTrue(pt.isEmpty());
+    }
+
+    @Test
+    void testRetryAndLeak() {
+        PendingTerminations pt = new PendingTerminations(2, 1000L);
+        node("a", NodeMetadata.Status.RUNNING);
+        node("b", NodeMetadata.Status.RUNNING);
+        pt.requested(ImmutableList.of("a", "b"), PendingTerminations.Action.DESTROY, 0);
+        pt.completed("a", false, 100);
+        pt.completed("b", true, 100);
+
+        // A failed request is sent again immediately, a successful one only after the confirmation timeout.
+        PendingTerminations.Verification v = pt.verify(nodes::get, 200);
+        assertEquals(ImmutableList.of("a"), v.getToDestroy());
+        v = pt.verify(nodes::get, 1200);
+        assertEquals(ImmutableList.of("b"), v.getToDestroy());
+
+        pt.completed("a", false, 1300);
+        pt.completed("b", true, 1300);
+        nodes.remove("b");
+        v = pt.verify(nodes::get, 1400);
+        assertEquals(ImmutableList.of("b"), v.getConfirmed());
+        List<PendingTerminations.Entry> leaked = v.getLeaked();
+        assertEquals(1, leaked.size());
+        assertEquals("a", leaked.get(0).getNodeId());
+        assertEquals(2, leaked.get(0).getAttempts());
+        assertEquals(1, pt.getLeaked().size());
+
+        // Leaked nodes are not retried, but confirmed once they are gone.
+        assertTrue(pt.verify(nodes::get, 5000).getToDestroy().isEmpty());
+        nodes.remove("a");
+        assertEquals(ImmutableList.of("a"), pt.verify(nodes::get, 6000).getConfirmed());
+        assertFalse(pt.isPending("a"));
+    }
+
+    @Test
+    void testForgetLeaked() {
+        PendingTerminations pt = new PendingTerminations(1, 1000L);
+        node("a", NodeMetadata.Status.RUNNING);
+        pt.requested(ImmutableList.of("a"), PendingTerminations.Action.SUSPEND, 0);
+        pt.completed("a", false, 0);
+        assertEquals(1, pt.verify(nodes::get, 100).getLeaked().size());
+        // A leaked node starts over if it is requested again.
+        assertEquals(
+                ImmutableList.of("a"), pt.requested(ImmutableList.of("a"), PendingTerminations.Action.DESTROY, 200));
+        assertTrue(pt.getLeaked().isEmpty());
+        pt.completed("a", false, 300);
+        pt.verify(nodes::get, 400);
+        pt.forgetLeaked();
+        assertTrue(pt.isEmpty());
+    }
+
+    @Test
+    void testNonceIsKeptForRetries() {
+        PendingTerminations pt = new PendingTerminations(3, 1000L);
+        node("a", NodeMetadata.Status.RUNNING);
+        pt.requested(ImmutableList.of("a"), PendingTerminations.Action.SUSPEND, ImmutableMap.of("a", "nonce"), 0);
+        pt.completed("a", false, 100);
+        assertEquals(ImmutableList.of("a"), pt.verify(nodes::get, 200).getToSuspend());
+        assertEquals("nonce", pt.getNonce("a"));
+        assertNull(pt.getNonce("b"));
+    }
+
+    @Test
+    void testRestore() {
+        PendingTerminations pt = new PendingTerminations(3, 1000L);
+        node("a", NodeMetadata.Status.RUNNING);
+        node("b", NodeMetadata.Status.RUNNING);
+        pt.requested(ImmutableList.of("a"), PendingTerminations.Action.SUSPEND, ImmutableMap.of("a", "nonce"), 0);
+        pt.requested(ImmutableList.of("b"), PendingTerminations.Action.DESTROY, 0);
+        pt.completed("b", true, 100);
+        PendingTerminations saved = pt.copy();
+
+        PendingTerminations restored = new PendingTerminations(3, 1000L);
+        restored.restore(saved);
+        assertTrue(restored.isPending("a"));
+        assertEquals("nonce", restored.getNonce("a"));
+        // The request for a was lost, so it is sent again right away. The one for b has completed before.
+        PendingTerminations.Verification v = restored.verify(nodes::get, 200);
+        assertEquals(ImmutableList.of("a"), v.getToSuspend());
+        assertTrue(v.getToDestroy().isEmpty());
+        assertEquals(ImmutableList.of("b"), restored.verify(nodes::get, 1200).getToDestroy());
+        // The copy is not affected by the original.
+        pt.completed("a", false, 300);
+        assertTrue(saved.verify(nodes::get, 400).getToSuspend().isEmpty());
+    }
+}
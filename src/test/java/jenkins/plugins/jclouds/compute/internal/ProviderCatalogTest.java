@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jclouds.compute.domain.Hardware;
+import org.jclouds.compute.domain.HardwareBuilder;
+import org.jclouds.compute.domain.Image;
+import org.jclouds.compute.domain.ImageBuilder;
+import org.jclouds.compute.domain.OperatingSystem;
+import org.jclouds.compute.domain.Processor;
+import org.jclouds.domain.Location;
+import org.junit.jupiter.api.Test;
+
+class ProviderCatalogTest {
+
+    private static Image image(String id, String name) {
+        return new ImageBuilder()
+                .id(id)
+                .providerId(id)
+                .name(name)
+                .operatingSystem(OperatingSystem.builder().description("linux").build())
+                .status(Image.Status.AVAILABLE)
+                .build();
+    }
+
+    private static Hardware hardware(String id, double cores, int ram) {
+        return new HardwareBuilder()
+                .id(id)
+                .providerId(id)
+                .processors(ImmutableList.of(new Processor(cores, 1.0)))
+                .ram(ram)
+                .build();
+    }
+
+    private static ProviderCatalog.Snapshot snapshot() {
+        return new ProviderCatalog.Snapshot(
+                ImmutableSet.of(image("1", "ubuntu-22.04"), image("2", "ubuntu-24.04"), image("3", "debian-12")),
+                ImmutableSet.of(hardware("large", 4, 8192), hardware("small", 1, 1024), hardware("medium", 2, 4096)),
+                ImmutableSet.<Location>of(),
+                ImmutableMap.of("mykey", 42),
+                System.currentTimeMillis());
+    }
+
+    @Test
+    void testImages() {
+        ProviderCatalog.Snapshot s = snapshot();
+        assertEquals("debian-12", s.getImage("3").getName());
+        assertEquals(1, s.getImagesByName("ubuntu-22.04").size());
+        assertEquals(2, s.findImages("ubuntu-.*").size());
+        assertEquals(0, s.findImages("centos.*").size());
+    }
+
+    @Test
+    void testFindImagesIsSorted() {
+        ProviderCatalog.Snapshot s = new ProviderCatalog.Snapshot(
+                ImmutableSet.of(image("9", "img-c"), image("5", "img-a"), image("7", "img-b"), image("4", "img-b")),
+                ImmutableSet.<Hardware>of(),
+                ImmutableSet.<Location>of(),
+                ImmutableMap.<String, Integer>of(),
+                System.currentTimeMillis());
+        assertEquals(
+                ImmutableList.of("5", "4", "7", "9"),
+                ImmutableList.copyOf(Iterables.transform(s.findImages("img-.*"), Image::getId)));
+    }
+
+    @Test
+    void testHardware() {
+        ProviderCatalog.Snapshot s = snapshot();
+        assertEquals("small", s.getHardware().get(0).getId());
+        assertEquals("medium", s.getSmallestHardware(2, 2048).getId());
+        assertEquals("large", s.getSmallestHardware(1, 8000).getId());
+        assertNull(s.getSmallestHardware(8, 1024));
+    }
+
+    @Test
+    void testKeys() {
+        ProviderCatalog.Snapshot s = snapshot();
+        assertEquals(42, s.getKeyId("mykey"));
+        assertNull(s.getKeyId("other"));
+    }
+
+    @Test
+    void testCaching() {
+        AtomicInteger loads = new AtomicInteger();
+        ProviderCatalog catalog = new ProviderCatalog(
+                () -> {
+                    loads.incrementAndGet();
+                    return snapshot();
+                },
+                Runnable::run,
+                60000L);
+        ProviderCatalog.Snapshot s = catalog.get();
+        assertSame(s, catalog.get());
+        assertEquals(1, loads.get());
+        catalog.getNotOlderThan(0L);
+        assertEquals(2, loads.get());
+        catalog.invalidate();
+        catalog.get();
+        assertEquals(3, loads.get());
+    }
+}
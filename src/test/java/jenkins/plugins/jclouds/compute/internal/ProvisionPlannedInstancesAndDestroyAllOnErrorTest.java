@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class ProvisionPlannedInstancesAndDestroyAllOnErrorTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Set<String> terminated = ConcurrentHashMap.newKeySet();
+
+    private static JCloudsNodeMetadata node(int n) {
+        final String id = "node" + n;
+        return JCloudsNodeMetadata.fromNodeMetadata(
+                new NodeMetadataBuilder()
+                        .ids(id)
+                        .providerId(id)
+                        .name(id)
+                        .status(NodeMetadata.Status.RUNNING)
+                        .build(),
+                "");
+    }
+
+    /**
+     * Creates a plan whose node supplier fails on the calls matched by the given predicate.
+     */
+    private NodePlan plan(int count, int maxReplacements, IntPredicate fails) {
+        return new NodePlan(
+                "cloud",
+                "template",
+                count,
+                false,
+                () -> {
+                    final int n = calls.incrementAndGet();
+                    if (fails.test(n)) {
+                        // Not retried by the retry policy.
+                        throw new IllegalArgumentException("Failure #" + n);
+                    }
+                    return node(n);
+                },
+                maxReplacements);
+    }
+
+    private ProvisionPlannedInstancesAndDestroyAllOnError newProvisioner(ListeningExecutorService executor) {
+        return new ProvisionPlannedInstancesAndDestroyAllOnError(executor, Logger.NULL, nodes -> {
+            for (RunningNode rn : nodes) {
+                terminated.add(rn.getNodeId());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void testFailedNodesAreReplacedWithinBudget(JenkinsRule j) throws Exception {
+        final List<RunningNode> nodes = ImmutableList.copyOf(newProvisioner(MoreExecutors.newDirectExecutorService())
+                .provision(ImmutableList.of(plan(3, 2, n -> n <= 2))));
+        assertEquals(3, nodes.size());
+        assertEquals(5, calls.get());
+        assertTrue(terminated.isEmpty());
+    }
+
+    @Test
+    void testAllNodesAreTerminatedIfBudgetIsExhausted(JenkinsRule j) {
+        final ProvisionPlannedInstancesAndDestroyAllOnError p =
+                newProvisioner(MoreExecutors.newDirectExecutorService());
+        // The first node fails twice, but may be replaced only once.
+        assertThrows(IllegalStateException.class, () -> p.provision(ImmutableList.of(plan(3, 1, n -> n <= 2))));
+        assertEquals(4, calls.get());
+        assertEquals(Set.of("node3", "node4"), terminated);
+    }
+
+    @Test
+    void testWithoutBudgetASingleFailureTerminatesAllNodes(JenkinsRule j) {
+        final ProvisionPlannedInstancesAndDestroyAllOnError p =
+                newProvisioner(MoreExecutors.newDirectExecutorService());
+        assertThrows(IllegalStateException.class, () -> p.provision(ImmutableList.of(plan(3, 0, n -> n == 2))));
+        assertEquals(3, calls.get());
+        assertEquals(Set.of("node1", "node3"), terminated);
+    }
+
+    @Test
+    void testAbortTerminatesStartedAndLateNodes(JenkinsRule j) throws Exception {
+        final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        final CountDownLatch entered = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final NodePlan plan = new NodePlan("cloud", "template", 2, false, () -> {
+            final int n = calls.incrementAndGet();
+            entered.countDown();
+            if (2 == n) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return node(n);
+        });
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread t = new Thread(() -> {
+            try {
+                newProvisioner(executor).provision(ImmutableList.of(plan));
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        t.start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        // Simulates the abortion of the build.
+        t.interrupt();
+        t.join(10000);
+        assertInstanceOf(InterruptedException.class, error.get());
+        // The node which is created after the abort, must be terminated as well.
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(Set.of("node1", "node2"), terminated);
+    }
+}
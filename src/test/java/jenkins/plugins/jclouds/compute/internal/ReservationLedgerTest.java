@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ReservationLedgerTest {
+
+    @Test
+    void testReserve() {
+        ReservationLedger l = new ReservationLedger(5);
+        l.reconcile(2, System.currentTimeMillis());
+        assertTrue(l.tryReserve(2));
+        assertFalse(l.tryReserve(2));
+        assertEquals(1, l.reserveUpTo(3));
+        assertEquals(0, l.getAvailable());
+        l.release(1);
+        assertEquals(1, l.getAvailable());
+        l.commit(2);
+        assertEquals(4, l.getRunning());
+        assertEquals(0, l.getReserved());
+    }
+
+    @Test
+    void testReconcile() throws Exception {
+        ReservationLedger l = new ReservationLedger(10);
+        long before = System.currentTimeMillis() - 1000L;
+        assertTrue(l.tryReserve(3));
+        l.commit(3);
+        // A snapshot taken before the commit does not contain the new nodes.
+        l.reconcile(1, before);
+        assertEquals(4, l.getRunning());
+        Thread.sleep(5L);
+        // A later snapshot does.
+        l.reconcile(4, System.currentTimeMillis());
+        assertEquals(4, l.getRunning());
+        // Outdated snapshots are ignored.
+        l.reconcile(0, before);
+        assertEquals(4, l.getRunning());
+    }
+
+    @Test
+    void testReconciledWithin() {
+        ReservationLedger l = new ReservationLedger(10);
+        assertFalse(l.isReconciledWithin(60000L));
+        l.reconcile(0, System.currentTimeMillis());
+        assertTrue(l.isReconciledWithin(60000L));
+        assertFalse(l.isActive(60000L));
+        assertEquals(1, l.reserveUpTo(1));
+        assertTrue(l.isActive(60000L));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jclouds.rest.AuthorizationException;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+    @Test
+    void testClassify() {
+        assertEquals(RetryPolicy.ErrorClass.TRANSIENT, RetryPolicy.classify(new RuntimeException("Throttling")));
+        assertEquals(RetryPolicy.ErrorClass.TRANSIENT, RetryPolicy.classify(new RuntimeException("boom")));
+        assertEquals(
+                RetryPolicy.ErrorClass.CAPACITY,
+                RetryPolicy.classify(new RuntimeException(new IllegalStateException("InsufficientInstanceCapacity"))));
+        assertEquals(RetryPolicy.ErrorClass.QUOTA, RetryPolicy.classify(new RuntimeException("Quota exceeded")));
+        assertEquals(RetryPolicy.ErrorClass.AUTH, RetryPolicy.classify(new AuthorizationException("denied")));
+        assertEquals(RetryPolicy.ErrorClass.FATAL, RetryPolicy.classify(new NoSuchElementException("no image")));
+    }
+
+    @Test
+    void testDelay() {
+        RetryPolicy p = new RetryPolicy(5, 1000L, 3000L);
+        for (int i = 0; i < 100; i++) {
+            long d1 = p.getDelay(1);
+            assertTrue(d1 >= 500L && d1 <= 1000L);
+            long d2 = p.getDelay(2);
+            assertTrue(d2 >= 1000L && d2 <= 2000L);
+            long d5 = p.getDelay(5);
+            assertTrue(d5 >= 1500L && d5 <= 3000L);
+        }
+    }
+
+    @Test
+    void testRetry() throws Exception {
+        RetryPolicy p = new RetryPolicy(3, 0L, 0L);
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", p.call(
+                () -> {
+                    if (calls.incrementAndGet() < 3) {
+                        throw new IllegalStateException("Internal Server Error");
+                    }
+                    return "ok";
+                },
+                null,
+                "test"));
+        assertEquals(3, calls.get());
+        // Fatal errors are not retried
+        calls.set(0);
+        assertThrows(AuthorizationException.class, () -> p.call(
+                () -> {
+                    calls.incrementAndGet();
+                    throw new AuthorizationException("denied");
+                },
+                null,
+                "test"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testCircuitBreaker() {
+        CircuitBreaker cb = new CircuitBreaker("test", 2, 1000L, 4000L);
+        cb.acquire(0L);
+        cb.failed(RetryPolicy.ErrorClass.CAPACITY, 0L);
+        cb.acquire(0L);
+        cb.failed(RetryPolicy.ErrorClass.TRANSIENT, 0L);
+        assertFalse(cb.isOpen(0L));
+        cb.acquire(0L);
+        cb.failed(RetryPolicy.ErrorClass.FATAL, 0L);
+        assertFalse(cb.isOpen(0L));
+        cb.acquire(0L);
+        cb.failed(RetryPolicy.ErrorClass.AUTH, 0L);
+        assertTrue(cb.isOpen(500L));
+        assertThrows(CircuitBreaker.OpenException.class, () -> cb.acquire(500L));
+        assertEquals(1, cb.getRejectedCount());
+        // A single trial is permitted after the open period
+        assertFalse(cb.isOpen(1000L));
+        cb.acquire(1000L);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+        assertThrows(CircuitBreaker.OpenException.class, () -> cb.acquire(1000L));
+        // A failed trial doubles the open period
+        cb.failed(RetryPolicy.ErrorClass.TRANSIENT, 1000L);
+        assertTrue(cb.isOpen(2999L));
+        assertFalse(cb.isOpen(3000L));
+        cb.acquire(3000L);
+        cb.succeeded();
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        assertEquals(2, cb.getTripCount());
+    }
+
+    @Test
+    void testBreakerCountsOneFailurePerCall() throws Exception {
+        RetryPolicy p = new RetryPolicy(5, 0L, 0L);
+        CircuitBreaker cb = new CircuitBreaker("test", 2, 60000L, 60000L);
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> p.call(
+                () -> {
+                    calls.incrementAndGet();
+                    throw new IllegalStateException("Internal Server Error");
+                },
+                cb,
+                "test"));
+        assertEquals(5, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        assertThrows(IllegalStateException.class, () -> p.call(
+                () -> {
+                    throw new IllegalStateException("Internal Server Error");
+                },
+                cb,
+                "test"));
+        assertTrue(cb.isOpen());
+    }
+
+    @Test
+    void testBadTemplateDoesNotOpenBreaker() throws Exception {
+        RetryPolicy p = new RetryPolicy(5, 0L, 0L);
+        CircuitBreaker cb = new CircuitBreaker("test", 2, 60000L, 60000L);
+        for (int i = 0; i < 10; i++) {
+            // What the template builder throws, if the image regex of a template matches no image
+            assertThrows(NoSuchElementException.class, () -> p.call(
+                    () -> {
+                        throw new NoSuchElementException("imageNameMatches(no-such-image.*)");
+                    },
+                    cb,
+                    "test"));
+            assertThrows(IllegalArgumentException.class, () -> p.call(
+                    () -> {
+                        throw new IllegalArgumentException("no hardware profile matches");
+                    },
+                    cb,
+                    "test"));
+        }
+        assertFalse(cb.isOpen());
+        assertEquals(0, cb.getTripCount());
+        assertEquals("ok", p.call(() -> "ok", cb, "test"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TemplatePoolTest {
+
+    private record Member(String name, int weight, int priority) {}
+
+    private static TemplatePool<Member> newPool() {
+        return new TemplatePool<>(Member::name, Member::weight, Member::priority, 3, 1000L, 4000L);
+    }
+
+    @Test
+    void testWeights() {
+        TemplatePool<Member> p = newPool();
+        Member a = new Member("a", 3, 0);
+        Member b = new Member("b", 1, 0);
+        Map<Member, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 8; i++) {
+            counts.merge(p.select("x", List.of(a, b), 0L), 1, Integer::sum);
+        }
+        assertEquals(6, counts.get(a));
+        assertEquals(2, counts.get(b));
+        assertNull(p.select("x", List.of(), 0L));
+    }
+
+    @Test
+    void testPriority() {
+        TemplatePool<Member> p = newPool();
+        Member primary = new Member("primary", 1, 0);
+        Member backup = new Member("backup", 10, 1);
+        List<Member> pool = List.of(backup, primary);
+        assertSame(primary, p.select("x", pool, 0L));
+        assertSame(primary, p.select("x", pool, 0L));
+        // Insufficient capacity cools down immediately.
+        assertTrue(p.failed(primary, true, 0L));
+        assertFalse(p.isAvailable(primary, 999L));
+        assertSame(backup, p.select("x", pool, 999L));
+        assertSame(primary, p.select("x", pool, 1000L));
+    }
+
+    @Test
+    void testCooldown() {
+        TemplatePool<Member> p = newPool();
+        Member a = new Member("a", 1, 0);
+        Member b = new Member("b", 1, 0);
+        assertFalse(p.failed(a, false, 0L));
+        assertFalse(p.failed(a, false, 0L));
+        assertTrue(p.failed(a, false, 0L));
+        assertFalse(p.isAvailable(a, 500L));
+        // Further failures double the cooldown up to the maximum.
+        assertTrue(p.failed(a, false, 1000L));
+        assertFalse(p.isAvailable(a, 2999L));
+        assertTrue(p.isAvailable(a, 3000L));
+        p.failed(a, false, 3000L);
+        p.failed(a, false, 3000L);
+        assertFalse(p.isAvailable(a, 6999L));
+        assertTrue(p.isAvailable(a, 7000L));
+        // If all members are cooling down, the one recovering first is used.
+        p.failed(a, true, 7000L);
+        p.failed(b, true, 8000L);
+        assertSame(b, p.select("x", List.of(a, b), 8500L));
+        // A success makes the member healthy again.
+        p.succeeded(a);
+        assertTrue(p.isAvailable(a, 7000L));
+    }
+
+    @Test
+    void testCapacityError() {
+        assertTrue(TemplatePool.isCapacityError(new RuntimeException(
+                "wrapped", new IllegalStateException("InsufficientInstanceCapacity: no capacity in us-east-1a"))));
+        assertTrue(TemplatePool.isCapacityError(new RuntimeException("No valid host was found.")));
+        assertFalse(TemplatePool.isCapacityError(new RuntimeException("Unauthorized")));
+        assertFalse(TemplatePool.isCapacityError(null));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.compute.internal;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TemplateResolutionTest {
+
+    @Test
+    void testValidity() {
+        long now = System.currentTimeMillis();
+        TemplateResolution r = new TemplateResolution("key", "img", "hw", "loc", now);
+        assertTrue(r.isValid("key", 60000L));
+        assertFalse(r.isValid("other", 60000L));
+        assertFalse(r.isValid(null, 60000L));
+    }
+
+    @Test
+    void testExpiry() {
+        TemplateResolution r = new TemplateResolution("key", "img", "hw", null, System.currentTimeMillis() - 120000L);
+        assertFalse(r.isValid("key", 60000L));
+        assertTrue(r.isValid("key", 180000L));
+    }
+}
@@ -62,6 +62,40 @@ class UserDataTest {
                 "Result contains include part");
     }
 
+    @Test
+    void testCachedUserData(JenkinsRule j) throws Exception {
+        List<String> idlist = new ArrayList<>();
+        idlist.add(createScript("a.sh", "#!/bin/sh\necho first\n"));
+        idlist.add(createScript("b.sh", "#!/bin/sh\necho ${JNLP_NONCE} ${JENKINS_ROOTURL}\n"));
+        UserDataCache cache = new UserDataCache();
+        String first = new String(cache.get(idlist, "http://jenkins/", "abcdefghijklmnop", false).getData());
+        String second = new String(cache.get(idlist, "http://jenkins/", "ponmlkjihgfedcba", false).getData());
+        assertTrue(first.contains("echo abcdefghijklmnop http://jenkins/"), "First nonce substituted");
+        assertTrue(second.contains("echo ponmlkjihgfedcba http://jenkins/"), "Second nonce substituted");
+        // Everything else, including the MIME boundary, is reused.
+        assertEquals(first.replace("abcdefghijklmnop", "ponmlkjihgfedcba"), second);
+        // Modified config files are noticed.
+        GlobalConfigFiles.get()
+                .save(new UserDataScript(idlist.get(1), "b.sh", "", "#!/bin/sh\necho changed ${JNLP_NONCE}\n"));
+        String third = new String(cache.get(idlist, "http://jenkins/", "abcdefghijklmnop", false).getData());
+        assertTrue(third.contains("echo changed abcdefghijklmnop"), "Modified config used");
+    }
+
+    @Test
+    void testNonceSubstitution() {
+        byte[] data = ("x" + UserDataCache.NONCE_PLACEHOLDER + "y" + UserDataCache.NONCE_PLACEHOLDER).getBytes();
+        int[] offsets = UserDataCache.findPlaceholders(data);
+        assertEquals(2, offsets.length);
+        assertEquals("xNyN", new String(UserDataCache.substitute(data, offsets, "N")));
+        assertEquals(0, UserDataCache.findPlaceholders("abc".getBytes()).length);
+    }
+
+    private static String createScript(final String name, final String content) {
+        final String id = UUID.randomUUID().toString();
+        GlobalConfigFiles.get().save(new UserDataScript(id, name, "", content));
+        return id;
+    }
+
     private static void createConfig(final List<String> idlist, final ContentType contentType) {
         for (ConfigProvider cp : ConfigProvider.all()) {
             ContentType ct = ConfigHelper.getRealContentType(cp);
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionGateTest {
+
+    @Test
+    void testLimit() throws Exception {
+        AdmissionGate gate = new AdmissionGate(2, 0, 0L, 0L);
+        assertTrue(gate.admit("a"));
+        assertTrue(gate.admit("b"));
+        // Repeated requests share their slot
+        assertTrue(gate.admit("a"));
+        assertFalse(gate.admit("c"));
+        assertEquals(2, gate.getActiveCount());
+        assertEquals(1, gate.getRejectedCount());
+        gate.release("a");
+        assertTrue(gate.admit("c"));
+        assertEquals(3, gate.getAdmittedCount());
+    }
+
+    @Test
+    void testQueue() throws Exception {
+        AdmissionGate gate = new AdmissionGate(1, 1, 5000L, 0L);
+        assertTrue(gate.admit("a"));
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(200L);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            gate.release("a");
+        });
+        t.start();
+        // Waits in the queue until "a" has been released
+        assertTrue(gate.admit("b"));
+        t.join();
+        assertEquals(0, gate.getQueueLength());
+    }
+
+    @Test
+    void testExpiry() throws Exception {
+        AdmissionGate gate = new AdmissionGate(1, 0, 0L, 1L);
+        assertTrue(gate.admit("a"));
+        Thread.sleep(10L);
+        assertTrue(gate.admit("b"));
+        assertEquals(1, gate.getExpiredCount());
+    }
+
+    @Test
+    void testUnlimited() throws Exception {
+        AdmissionGate gate = new AdmissionGate(0, 0, 0L, 0L);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(gate.admit("a" + i));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2016 Adrian Cole, Andrew Bayer, Fritz Elfert, Marat Mavlyutov, Monty Taylor, Vijay Kiran et. al.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jenkins.plugins.jclouds.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PlaceholderTemplateTest {
+
+    @Test
+    void testRender() throws Exception {
+        PlaceholderTemplate t = PlaceholderTemplate.compile("a=${A} b=${B} c=${C}${A}");
+        assertTrue(t.hasPlaceholders());
+        // Unknown placeholders are kept, values are inserted literally
+        assertEquals("a=x b=$1\\ c=${C}x", t.render(Map.of("A", "x", "B", "$1\\")));
+        assertSame(t, PlaceholderTemplate.compile("a=${A} b=${B} c=${C}${A}"));
+    }
+
+    @Test
+    void testMalformed() throws Exception {
+        assertFalse(PlaceholderTemplate.compile("plain $A {B}").hasPlaceholders());
+        assertEquals("${A", PlaceholderTemplate.compile("${A").render(Map.of("A", "x")));
+        assertEquals("${a x}", PlaceholderTemplate.compile("${a ${B}}").render(Map.of("B", "x")));
+        assertEquals("", PlaceholderTemplate.compile("").render(Map.of()));
+    }
+
+    @Test
+    void testTokens() throws Exception {
+        Map<String, String> m = Map.of("from", "to", "fromage", "cheese", "yes", "no");
+        PlaceholderTemplate t = PlaceholderTemplate.compileTokens("from fromage yes-yes", m.keySet());
+        // Longest token wins
+        assertEquals("to cheese no-no", t.render(m));
+        // Replaced text is not scanned again
+        t = PlaceholderTemplate.compileTokens("a b", List.of("a", "b"));
+        assertEquals("b c", t.render(Map.of("a", "b", "b", "c")));
+    }
+}